@@ -0,0 +1,145 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+/**
+ * The homebrew test program the benchmarks run, assembled in code so that
+ * every commit measures exactly the same bytes and no cartridge dump needs
+ * to be distributed. It only uses instructions the core implements.
+ *
+ * The program fills tile data, a background map and all 40 sprites, turns
+ * the LCD on, and then loops forever scrolling the background, moving a
+ * sprite, mixing a block of ROM into WRAM and calling a subroutine that
+ * works on the stack, so each frame exercises loads, ALU operations,
+ * branches, calls and rendering of a busy screen.
+ */
+final class BenchmarkRom {
+
+    private final byte[] rom = new byte[0x8000];
+    private int pc;
+
+    private BenchmarkRom() {
+    }
+
+    /**
+     * @return A stand-in for the internal DMG ROM that jumps straight to the cartridge.
+     */
+    static byte[] dmgRom() {
+        byte[] dmgRom = new byte[256];
+        dmgRom[0] = (byte) 0xC3; // JP 0x0100
+        dmgRom[2] = (byte) 0x01;
+        return dmgRom;
+    }
+
+    static byte[] romData() {
+        return new BenchmarkRom().assemble();
+    }
+
+    /**
+     * @return A Game Boy that has run the program's setup and is in its main loop.
+     */
+    static GameBoy gameBoy() throws Exception {
+        GameBoy gameBoy = new GameBoy(new GameBoyRom(romData()), dmgRom());
+        gameBoy.runFrame();
+        gameBoy.runFrame();
+        return gameBoy;
+    }
+
+    private byte[] assemble() {
+        byte[] title = "BENCHMARK".getBytes();
+        System.arraycopy(title, 0, rom, 0x134, title.length);
+        // Some data for the main loop to read
+        for (int i = 0; i < 0x100; i++) {
+            rom[0x200 + i] = (byte) (i * 37 + 11);
+        }
+
+        pc = 0x100;
+        emit(0x00, 0xC3, 0x50, 0x01);           // NOP; JP 0x0150
+
+        pc = 0x150;
+        emit(0xF3);                             // DI
+        emit(0x31, 0xFE, 0xFF);                 // LD SP,0xFFFE
+
+        // Tile data 0x8000-0x8FFF
+        emit(0x21, 0x00, 0x80);                 // LD HL,0x8000
+        emit(0x01, 0x00, 0x10);                 // LD BC,0x1000
+        int fillTiles = pc;
+        emit(0x7D, 0xAC, 0x22);                 // LD A,L; XOR H; LD (HL+),A
+        emit(0x0B, 0x78, 0xB1);                 // DEC BC; LD A,B; OR C
+        jrNz(fillTiles);
+
+        // Background map 0x9800-0x9BFF
+        emit(0x21, 0x00, 0x98);                 // LD HL,0x9800
+        emit(0x01, 0x00, 0x04);                 // LD BC,0x0400
+        int fillMap = pc;
+        emit(0x7D, 0x22);                       // LD A,L; LD (HL+),A
+        emit(0x0B, 0x78, 0xB1);                 // DEC BC; LD A,B; OR C
+        jrNz(fillMap);
+
+        // 40 sprites along a diagonal
+        emit(0x21, 0x00, 0xFE);                 // LD HL,0xFE00
+        emit(0x06, 40);                         // LD B,40
+        emit(0x0E, 16);                         // LD C,16
+        int fillOam = pc;
+        emit(0x79, 0x22, 0x22, 0x22);           // LD A,C; LD (HL+),A (y, x, tile)
+        emit(0xAF, 0x22);                       // XOR A; LD (HL+),A (attributes)
+        emit(0x79, 0xC6, 3, 0x4F);              // LD A,C; ADD A,3; LD C,A
+        emit(0x05);                             // DEC B
+        jrNz(fillOam);
+
+        emit(0x3E, 0x93, 0xE0, 0x40);           // LD A,0x93; LDH (LCDC),A
+
+        int main = pc;
+        emit(0xF0, 0x43, 0x3C, 0xE0, 0x43);     // LDH A,(SCX); INC A; LDH (SCX),A
+        emit(0x21, 0x01, 0xFE, 0x34);           // LD HL,0xFE01; INC (HL)
+
+        // Mix 64 bytes of ROM into WRAM
+        emit(0x21, 0x00, 0xC0);                 // LD HL,0xC000
+        emit(0x11, 0x00, 0x02);                 // LD DE,0x0200
+        emit(0x06, 64);                         // LD B,64
+        int mix = pc;
+        emit(0x1A, 0x13, 0xAE, 0x22);           // LD A,(DE); INC DE; XOR (HL); LD (HL+),A
+        emit(0x05);                             // DEC B
+        jrNz(mix);
+
+        int callSite = pc;
+        emit(0xCD, 0x00, 0x00);                 // CALL subroutine
+        emit(0xC3, main & 0xFF, main >>> 8);    // JP main
+
+        int subroutine = pc;
+        rom[callSite + 1] = (byte) subroutine;
+        rom[callSite + 2] = (byte) (subroutine >>> 8);
+        emit(0xC5, 0xD5);                       // PUSH BC; PUSH DE
+        emit(0xFA, 0x00, 0xC0);                 // LD A,(0xC000)
+        emit(0xE6, 0x0F, 0x47);                 // AND 0x0F; LD B,A
+        emit(0x0E, 0x00);                       // LD C,0
+        int sum = pc;
+        emit(0x79, 0x80, 0x4F);                 // LD A,C; ADD A,B; LD C,A
+        emit(0x05);                             // DEC B
+        jrNz(sum);
+        emit(0x79, 0xEA, 0x40, 0xC0);           // LD A,C; LD (0xC040),A
+        emit(0xD1, 0xC1, 0xC9);                 // POP DE; POP BC; RET
+
+        return rom;
+    }
+
+    private void emit(int... bytes) {
+        for (int b : bytes) {
+            rom[pc++] = (byte) b;
+        }
+    }
+
+    /**
+     * JR NZ back to target. The loop bodies above end in an instruction that sets Z.
+     */
+    private void jrNz(int target) {
+        emit(0x20, (target - (pc + 2)) & 0xFF);
+    }
+
+}
@@ -0,0 +1,134 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Cost of GameBoyCpu.processOpcode per instruction over fixed opcode mixes.
+ * Each mix is drawn with a fixed seed from instructions that leave PC, SP
+ * and HL alone, so a sequence can be replayed indefinitely against the same
+ * memory. HL points into WRAM for the (HL) forms.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class CpuDispatchBenchmark {
+
+    private static final int SEQUENCE_LENGTH = 1024;
+    private static final int SEED = 0x4C4642;
+    private static final int WRAM_ADDR = 0xC100;
+    // Immediate operands are read from the benchmark ROM's data block
+    private static final int OPERAND_ADDR = 0x200;
+
+    /**
+     * Loads are register to register, immediate and (HL); ALU is 8-bit
+     * arithmetic and logic including INC/DEC; mixed weights them roughly as
+     * game code does, about half loads.
+     */
+    @Param({"loads", "alu", "mixed"})
+    public String mix;
+
+    private GameBoyCpu cpu;
+    private int[] opcodes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        cpu = BenchmarkRom.gameBoy().getCpu();
+
+        List<Integer> loads = supported(loadOpcodes());
+        List<Integer> alu = supported(aluOpcodes());
+        Random random = new Random(SEED);
+        opcodes = new int[SEQUENCE_LENGTH];
+        for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+            List<Integer> from;
+            if (mix.equals("loads")) {
+                from = loads;
+            } else if (mix.equals("alu")) {
+                from = alu;
+            } else {
+                from = random.nextInt(100) < 55 ? loads : alu;
+            }
+            opcodes[i] = from.get(random.nextInt(from.size()));
+        }
+    }
+
+    private static List<Integer> loadOpcodes() {
+        List<Integer> opcodes = new ArrayList<>();
+        for (int op = 0x40; op < 0x80; op++) {
+            // Skip HALT and anything that loads H or L
+            if (op != 0x76 && (op < 0x60 || op >= 0x70)) {
+                opcodes.add(op);
+            }
+        }
+        for (int op : new int[] {0x06, 0x0E, 0x16, 0x1E, 0x3E, 0x0A, 0x1A, 0x02, 0x12, 0x36}) {
+            opcodes.add(op);
+        }
+        return opcodes;
+    }
+
+    private static List<Integer> aluOpcodes() {
+        List<Integer> opcodes = new ArrayList<>();
+        for (int op = 0x80; op < 0xC0; op++) {
+            opcodes.add(op);
+        }
+        for (int op : new int[] {0x04, 0x05, 0x0C, 0x0D, 0x14, 0x15, 0x1C, 0x1D, 0x3C, 0x3D, 0x34, 0x35,
+                0xC6, 0xCE, 0xD6, 0xDE, 0xE6, 0xEE, 0xF6, 0xFE, 0x07, 0x0F, 0x17, 0x1F, 0x2F, 0x37, 0x3F}) {
+            opcodes.add(op);
+        }
+        return opcodes;
+    }
+
+    /**
+     * Drop opcodes the core does not implement yet, so the mixes stay
+     * runnable while coverage grows. Comparisons are only meaningful
+     * between builds with the same coverage.
+     */
+    private List<Integer> supported(List<Integer> candidates) throws Exception {
+        List<Integer> supported = new ArrayList<>();
+        for (int op : candidates) {
+            GameBoyCpu probe = BenchmarkRom.gameBoy().getCpu();
+            resetPointers(probe);
+            try {
+                probe.processOpcode(op);
+                supported.add(op);
+            } catch (CpuUnimplementedOpcodeException ex) {
+                // Not implemented yet
+            }
+        }
+        return supported;
+    }
+
+    private static void resetPointers(GameBoyCpu cpu) {
+        cpu.reg.setHL(WRAM_ADDR);
+        cpu.reg.setBC(WRAM_ADDR + 1);
+        cpu.reg.setDE(WRAM_ADDR + 2);
+        cpu.reg.setPC(OPERAND_ADDR);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SEQUENCE_LENGTH)
+    public int processOpcode() {
+        GameBoyCpu cpu = this.cpu;
+        resetPointers(cpu);
+        for (int opcode : opcodes) {
+            cpu.processOpcode(opcode);
+        }
+        return cpu.getCycleCounter();
+    }
+
+}
@@ -0,0 +1,85 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The 8-bit register accessors and flag operations of CpuRegisters, which
+ * every instruction goes through.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class CpuRegistersBenchmark {
+
+    private static final int ROUNDS = 256;
+
+    private final GameBoyCpu.CpuRegisters reg = new GameBoyCpu.CpuRegisters();
+
+    /**
+     * Rotate a value through all eight 8-bit registers.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROUNDS * 8)
+    public int eightBitAccessors() {
+        GameBoyCpu.CpuRegisters reg = this.reg;
+        for (int i = 0; i < ROUNDS; i++) {
+            reg.setA(reg.getB() + 1);
+            reg.setB(reg.getC() + 1);
+            reg.setC(reg.getD() + 1);
+            reg.setD(reg.getE() + 1);
+            reg.setE(reg.getH() + 1);
+            reg.setH(reg.getL() + 1);
+            reg.setL(reg.getF() + 1);
+            reg.setF(reg.getA() + 1);
+        }
+        return reg.getAF() ^ reg.getHL();
+    }
+
+    /**
+     * Set, test and clear each flag, as the ALU helpers do.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROUNDS * 4)
+    public int flagOperations() {
+        GameBoyCpu.CpuRegisters reg = this.reg;
+        int set = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            if ((i & 1) != 0) {
+                reg.setFlagZ();
+            } else {
+                reg.clearFlagZ();
+            }
+            if ((i & 2) != 0) {
+                reg.setFlagN();
+            } else {
+                reg.clearFlagN();
+            }
+            if ((i & 4) != 0) {
+                reg.setFlagH();
+            } else {
+                reg.clearFlagH();
+            }
+            if ((i & 8) != 0) {
+                reg.setFlagCy();
+            } else {
+                reg.clearFlagCy();
+            }
+            set += (reg.isSetZ() ? 1 : 0) + (reg.isSetN() ? 1 : 0) + (reg.isSetH() ? 1 : 0) + (reg.isSetCy() ? 1 : 0);
+        }
+        return set;
+    }
+
+}
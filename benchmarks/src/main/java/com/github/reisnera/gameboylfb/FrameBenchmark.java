@@ -0,0 +1,40 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Full-frame emulation of {@link BenchmarkRom}: CPU, memory and scanline
+ * rendering together, as a frontend would drive them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class FrameBenchmark {
+
+    private GameBoy gameBoy;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        gameBoy = BenchmarkRom.gameBoy();
+    }
+
+    @Benchmark
+    public long runFrame() {
+        gameBoy.runFrame();
+        return gameBoy.getCycleCount();
+    }
+
+}
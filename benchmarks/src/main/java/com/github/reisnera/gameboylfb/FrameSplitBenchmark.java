@@ -0,0 +1,86 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Full-frame emulation of {@link BenchmarkRom} like {@link FrameBenchmark},
+ * additionally reporting how each frame's host time splits between scanline
+ * rendering and the rest (CPU, memory and timers). The secondary results
+ * renderNanos and cpuNanos are host nanoseconds summed over all measured
+ * frames; divide them by the frames result for the per-frame split. JMH
+ * sums these counters across iterations, so totals are what stay correct.
+ *
+ * The PPU only times its scanlines when profiling is on, so this benchmark
+ * forks with -Dgameboylfb.profile=true. The CPU share therefore includes the
+ * profiler's per-instruction bookkeeping; use {@link FrameBenchmark} for the
+ * unprofiled frame time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Dgameboylfb.profile=true")
+@State(Scope.Thread)
+public class FrameSplitBenchmark {
+
+    private GameBoy gameBoy;
+
+    /**
+     * Host time over one iteration, split by where it was spent.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class FrameSplit {
+
+        private long frames;
+        private long frameNanos;
+        private long renderNanos;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            frames = 0;
+            frameNanos = 0;
+            renderNanos = 0;
+        }
+
+        public long frames() {
+            return frames;
+        }
+
+        public long renderNanos() {
+            return renderNanos;
+        }
+
+        public long cpuNanos() {
+            return frameNanos - renderNanos;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        if (!CpuProfiler.ENABLED) {
+            throw new IllegalStateException("FrameSplitBenchmark needs -Dgameboylfb.profile=true");
+        }
+        gameBoy = BenchmarkRom.gameBoy();
+    }
+
+    @Benchmark
+    public long runFrame(FrameSplit split) {
+        gameBoy.runFrame();
+        split.frames++;
+        split.frameNanos += gameBoy.getLastFrameNanos();
+        split.renderNanos += gameBoy.getPpu().getLastFrameRenderNanos();
+        return gameBoy.getCycleCount();
+    }
+
+}
@@ -0,0 +1,113 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * GameBoyMemory accesses within one region of the address space at a time,
+ * at fixed pseudo-random addresses, since each region takes a different path
+ * through readByte and writeByte.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class MemoryBenchmark {
+
+    private static final int ACCESSES = 1024;
+    private static final int SEED = 0x4D454D;
+
+    @Param({"rom", "vram", "wram", "echo", "oam", "io", "hram"})
+    public String region;
+
+    private GameBoyMemory mem;
+    private int[] addresses;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        mem = BenchmarkRom.gameBoy().getMemory();
+
+        int start;
+        int length;
+        switch (region) {
+            case "rom":
+                start = 0x0100;
+                length = 0x7F00;
+                break;
+            case "vram":
+                start = 0x8000;
+                length = 0x2000;
+                break;
+            case "wram":
+                start = 0xC000;
+                length = 0x2000;
+                break;
+            case "echo":
+                start = 0xE000;
+                length = 0x1E00;
+                break;
+            case "oam":
+                start = 0xFE00;
+                length = 0xA0;
+                break;
+            case "io":
+                // Skip P1, which is computed on every read
+                start = 0xFF01;
+                length = 0x7F;
+                break;
+            default:
+                start = 0xFF80;
+                length = 0x7E;
+                break;
+        }
+
+        Random random = new Random(SEED);
+        addresses = new int[ACCESSES];
+        for (int i = 0; i < ACCESSES; i++) {
+            // Leave room for the second byte of readWord
+            addresses[i] = start + random.nextInt(length - 1);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public int readByte() {
+        int sum = 0;
+        for (int addr : addresses) {
+            sum += mem.readByte(addr);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public int readWord() {
+        int sum = 0;
+        for (int addr : addresses) {
+            sum += mem.readWord(addr);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public void writeByte() {
+        int value = 0;
+        for (int addr : addresses) {
+            mem.writeByte(value++ & 0xFF, addr);
+        }
+    }
+
+}
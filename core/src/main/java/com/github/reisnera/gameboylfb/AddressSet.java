@@ -0,0 +1,37 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.util.Arrays;
+
+/**
+ * A set of 16-bit addresses kept as a 64K bitmap, so that membership costs
+ * one array load and a mask however many addresses it holds.
+ */
+final class AddressSet {
+
+    private final long[] bits = new long[0x10000 >>> 6];
+
+    void add(int addr) {
+        bits[(addr & GameBoyCpu.MASK_WORD) >>> 6] |= 1L << addr;
+    }
+
+    void remove(int addr) {
+        bits[(addr & GameBoyCpu.MASK_WORD) >>> 6] &= ~(1L << addr);
+    }
+
+    boolean contains(int addr) {
+        return (bits[(addr & GameBoyCpu.MASK_WORD) >>> 6] & (1L << addr)) != 0;
+    }
+
+    void clear() {
+        Arrays.fill(bits, 0);
+    }
+
+}
@@ -0,0 +1,259 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Steps a batch of environments in lockstep for reinforcement learning.
+ * Every environment is a fork of one template Game Boy. Each call to
+ * {@link #step(int[], int)} applies one joypad action per environment,
+ * advances all of them by the same number of frames in parallel, and writes
+ * their observations into one contiguous buffer: environment i occupies
+ * bytes [i * observationSize, (i + 1) * observationSize).
+ *
+ * An observation is either the whole frame buffer (one shade 0-3 per pixel)
+ * or a chosen list of memory bytes. The batch layer itself allocates nothing
+ * per step: the environments are split into fixed slices, one per persistent
+ * worker thread, and the caller runs the first slice itself. Workers are
+ * woken with unpark and the last one to finish wakes the caller.
+ *
+ * Usage: BatchEnvironment [rom file] [environments] [steps] [frames per step]
+ */
+public class BatchEnvironment implements AutoCloseable {
+
+    private final GameBoy template;
+    private final GameBoy[] environments;
+    private final Throwable[] failures;
+    private final int[] ramAddresses;
+    private final int observationSize;
+    private final byte[] observations;
+
+    // Environments [sliceStart[i], sliceStart[i + 1]) belong to slice i; slice 0 is the caller's
+    private final int[] sliceStart;
+    private final Thread[] workers;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    // Written by step() before it bumps the generation, read by workers after they see it
+    private int[] actions;
+    private int frames;
+    private volatile int generation;
+    private volatile Thread caller;
+    private volatile boolean closed;
+
+    /**
+     * Observe the frame buffer, using one thread per available processor.
+     */
+    public BatchEnvironment(GameBoy template, int count) {
+        this(template, count, null, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param template Every environment starts as, and is reset to, a fork of this Game Boy. It is never run itself.
+     * @param ramAddresses Addresses to observe, in order, or null to observe the frame buffer.
+     * @param threads Number of threads stepping environments, including the caller's.
+     */
+    public BatchEnvironment(GameBoy template, int count, int[] ramAddresses, int threads) {
+        this.template = template;
+        this.ramAddresses = ramAddresses == null ? null : ramAddresses.clone();
+        observationSize = ramAddresses == null
+                ? GameBoyPpu.SCREEN_WIDTH * GameBoyPpu.SCREEN_HEIGHT : ramAddresses.length;
+        observations = new byte[count * observationSize];
+
+        environments = new GameBoy[count];
+        failures = new Throwable[count];
+        for (int i = 0; i < count; i++) {
+            environments[i] = template.fork();
+            observe(i);
+        }
+
+        int slices = Math.max(1, Math.min(threads, count));
+        sliceStart = new int[slices + 1];
+        for (int i = 0; i <= slices; i++) {
+            sliceStart[i] = (int) ((long) count * i / slices);
+        }
+
+        workers = new Thread[slices - 1];
+        for (int i = 0; i < workers.length; i++) {
+            final int slice = i + 1;
+            workers[i] = new Thread(() -> work(slice), "batch-env-" + slice);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Apply one action per environment, run every environment for the given
+     * number of frames and refresh all observations.
+     * @param actions Joypad.BUTTON_ masks, one per environment. Must not be changed until step() returns.
+     * @return The observation buffer. The same array is returned by every call.
+     * @throws IllegalStateException If an environment has failed, which stays failed until it is reset, or
+     *         if the batch has been closed.
+     */
+    public byte[] step(int[] actions, int frames) {
+        if (closed) {
+            throw new IllegalStateException("Batch environment is closed");
+        }
+        if (actions.length != environments.length) {
+            throw new IllegalArgumentException("Expected " + environments.length + " actions");
+        }
+        this.actions = actions;
+        this.frames = frames;
+        caller = Thread.currentThread();
+        pending.set(workers.length + 1);
+        generation++;
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+        }
+
+        try {
+            runSlice(0);
+        } finally {
+            if (pending.decrementAndGet() != 0) {
+                while (pending.get() != 0) {
+                    LockSupport.park(this);
+                }
+            }
+        }
+
+        for (int i = 0; i < failures.length; i++) {
+            if (failures[i] != null) {
+                throw new IllegalStateException("Environment " + i + " failed", failures[i]);
+            }
+        }
+        return observations;
+    }
+
+    private void work(int slice) {
+        int seen = 0;
+        while (true) {
+            while (generation == seen && !closed) {
+                LockSupport.park(this);
+            }
+            if (closed) {
+                return;
+            }
+            seen = generation;
+            try {
+                runSlice(slice);
+            } finally {
+                if (pending.decrementAndGet() == 0) {
+                    LockSupport.unpark(caller);
+                }
+            }
+        }
+    }
+
+    private void runSlice(int slice) {
+        for (int i = sliceStart[slice]; i < sliceStart[slice + 1]; i++) {
+            if (failures[i] != null) {
+                continue;
+            }
+            GameBoy gameBoy = environments[i];
+            try {
+                gameBoy.getMemory().setJoypadState(actions[i]);
+                for (int frame = 0; frame < frames; frame++) {
+                    gameBoy.runFrame();
+                }
+                observe(i);
+            } catch (Throwable ex) {
+                // Errors too, such as a StackOverflowError from a runaway program, so the slice always finishes
+                failures[i] = ex;
+            }
+        }
+    }
+
+    private void observe(int index) {
+        GameBoy gameBoy = environments[index];
+        int offset = index * observationSize;
+        if (ramAddresses == null) {
+            System.arraycopy(gameBoy.getPpu().getFrameBuffer(), 0, observations, offset, observationSize);
+        } else {
+            GameBoyMemory mem = gameBoy.getMemory();
+            for (int i = 0; i < ramAddresses.length; i++) {
+                observations[offset + i] = (byte) mem.readByte(ramAddresses[i]);
+            }
+        }
+    }
+
+    /**
+     * Restart an environment from the template and refresh its observation.
+     * Unlike step() this allocates, and it must not be called while a step is
+     * in progress.
+     */
+    public void reset(int index) {
+        environments[index] = template.fork();
+        failures[index] = null;
+        observe(index);
+    }
+
+    /**
+     * Stop the worker threads and wait for them to exit. The environment
+     * cannot be stepped afterwards. If the calling thread is interrupted it
+     * stops waiting and keeps its interrupt status; the workers still exit.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+        }
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getEnvironmentCount() {
+        return environments.length;
+    }
+
+    public int getObservationSize() {
+        return observationSize;
+    }
+
+    public byte[] getObservations() {
+        return observations;
+    }
+
+    public GameBoy getEnvironment(int index) {
+        return environments[index];
+    }
+
+    public static void main(String[] args) throws Exception {
+        String romFile = args.length > 0 ? args[0] : "Alleyway.gb";
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        int steps = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int framesPerStep = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+
+        GameBoy template = new RomCache().newGameBoy(romFile);
+        int[] actions = new int[count];
+        try (BatchEnvironment batch = new BatchEnvironment(template, count)) {
+            batch.step(actions, framesPerStep * 10); // warm up
+
+            long start = System.nanoTime();
+            for (int step = 0; step < steps; step++) {
+                actions[step % count] ^= Joypad.BUTTON_A;
+                batch.step(actions, framesPerStep);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            double fps = (double) count * steps * framesPerStep / seconds;
+            System.out.println(String.format("%d environments, %d steps of %d frames on %d threads", count, steps,
+                    framesPerStep, batch.sliceStart.length - 1));
+            System.out.println(String.format("%.1f steps/s, %.0f frames/s, %.1fx real time in total", steps / seconds,
+                    fps, fps / GameBoyCpu.VBLANK_FREQ_HZ));
+        }
+    }
+
+}
@@ -0,0 +1,142 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import static com.github.reisnera.gameboylfb.ControlServer.*;
+
+/**
+ * Blocking client for a {@link ControlServer}. Each method sends one request
+ * and waits for its response. A request the server rejects is reported as an
+ * IOException carrying the server's message.
+ */
+public class ControlClient implements Closeable {
+
+    private final SocketChannel channel;
+    private final ByteBuffer header = ByteBuffer.allocate(5);
+    private ByteBuffer response = ByteBuffer.allocate(GameBoyPpu.SCREEN_WIDTH * GameBoyPpu.SCREEN_HEIGHT);
+
+    public ControlClient(SocketAddress address) throws IOException {
+        channel = SocketChannel.open(address);
+    }
+
+    /**
+     * @return The game title from the ROM header.
+     */
+    public String loadRom(String fileName) throws IOException {
+        byte[] path = fileName.getBytes(StandardCharsets.UTF_8);
+        return new String(bytes(call(request(OP_LOAD_ROM, path.length).put(path))), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return Number of frames the instance has run in total.
+     */
+    public long step(int frames) throws IOException {
+        return call(request(OP_STEP, 4).putInt(frames)).getLong();
+    }
+
+    public void press(int buttons) throws IOException {
+        call(request(OP_PRESS, 4).putInt(buttons));
+    }
+
+    public void release(int buttons) throws IOException {
+        call(request(OP_RELEASE, 4).putInt(buttons));
+    }
+
+    public byte[] saveState() throws IOException {
+        return bytes(call(request(OP_SAVE_STATE, 0)));
+    }
+
+    public void loadState(byte[] state) throws IOException {
+        call(request(OP_LOAD_STATE, state.length).put(state));
+    }
+
+    public byte[] readMemory(int addr, int length) throws IOException {
+        return bytes(call(request(OP_READ_MEMORY, 8).putInt(addr).putInt(length)));
+    }
+
+    public void writeMemory(int addr, byte[] data) throws IOException {
+        call(request(OP_WRITE_MEMORY, 4 + data.length).putInt(addr).put(data));
+    }
+
+    /**
+     * @param frame Receives the current frame buffer.
+     */
+    public void getFrame(byte[] frame) throws IOException {
+        call(request(OP_GET_FRAME, 0)).get(frame);
+    }
+
+    /**
+     * Run the given number of frames and then fetch the frame buffer, in one round trip.
+     * @param frame Receives the frame buffer.
+     */
+    public void stepAndGetFrame(int frames, byte[] frame) throws IOException {
+        call(request(OP_STEP_AND_FRAME, 4).putInt(frames)).get(frame);
+    }
+
+    private static ByteBuffer request(byte op, int operandLength) {
+        return ByteBuffer.allocate(5 + operandLength).putInt(1 + operandLength).put(op);
+    }
+
+    /**
+     * Send a request and wait for its response.
+     * @return The response payload, valid until the next call.
+     */
+    private ByteBuffer call(ByteBuffer request) throws IOException {
+        request.flip();
+        while (request.hasRemaining()) {
+            channel.write(request);
+        }
+
+        header.clear();
+        readFully(header);
+        header.flip();
+        int payloadLength = header.getInt() - 1;
+        byte status = header.get();
+
+        if (response.capacity() < payloadLength) {
+            response = ByteBuffer.allocate(payloadLength);
+        }
+        response.clear().limit(payloadLength);
+        readFully(response);
+        response.flip();
+
+        if (status != STATUS_OK) {
+            throw new IOException("Server error: " + new String(bytes(response), StandardCharsets.UTF_8));
+        }
+        return response;
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Control server closed the connection");
+            }
+        }
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
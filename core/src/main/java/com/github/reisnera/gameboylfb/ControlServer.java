@@ -0,0 +1,491 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Lets local tools drive headless instances over a socket. Each connection
+ * owns one Game Boy, created by its first LOAD_ROM request.
+ *
+ * The server listens on a Unix domain socket where the JVM supports them
+ * (Java 16 and later), and on an ephemeral loopback TCP port otherwise; see
+ * {@link #getAddress()}. One selector thread does all socket I/O without
+ * blocking. Requests are executed on an emulation executor, one at a time
+ * and in order per connection, and their responses are handed back to the
+ * selector thread, so emulation never waits on a socket.
+ *
+ * Every request and response is framed by a big-endian int giving the length
+ * of what follows. A request continues with an opcode byte and its operands,
+ * a response with a status byte (STATUS_OK or STATUS_ERROR) and its payload;
+ * an error's payload is a UTF-8 message. Opcodes:
+ *
+ * <pre>
+ * LOAD_ROM        path (UTF-8)         -> game title (UTF-8)
+ * STEP            int frames           -> long frame count
+ * PRESS           int buttons          -> (empty)
+ * RELEASE         int buttons          -> (empty)
+ * SAVE_STATE                           -> state
+ * LOAD_STATE      state                -> (empty)
+ * READ_MEMORY     int addr, int length -> bytes
+ * WRITE_MEMORY    int addr, bytes      -> (empty)
+ * GET_FRAME                            -> frame buffer
+ * STEP_AND_FRAME  int frames           -> frame buffer
+ * </pre>
+ *
+ * Buttons are Joypad.BUTTON_ masks, frame buffers one shade (0-3) per pixel.
+ *
+ * Usage: ControlServer [socket file]
+ */
+public class ControlServer implements Runnable, Closeable {
+
+    private static final Logger LOG = Logger.getLogger(ControlServer.class.getName());
+
+    public static final byte OP_LOAD_ROM = 1;
+    public static final byte OP_STEP = 2;
+    public static final byte OP_PRESS = 3;
+    public static final byte OP_RELEASE = 4;
+    public static final byte OP_SAVE_STATE = 5;
+    public static final byte OP_LOAD_STATE = 6;
+    public static final byte OP_READ_MEMORY = 7;
+    public static final byte OP_WRITE_MEMORY = 8;
+    public static final byte OP_GET_FRAME = 9;
+    public static final byte OP_STEP_AND_FRAME = 10;
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_ERROR = 1;
+
+    private static final int MAX_REQUEST_LENGTH = 1 << 20;
+
+    private final RomCache romCache;
+    private final Executor emulation;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final SocketAddress address;
+    private final Path socketFile;
+
+    // Connections with responses waiting to be written, queued by the emulation executor
+    private final Queue<Connection> flushQueue = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean running = true;
+    private volatile Thread serverThread;
+
+    public ControlServer(Path socketFile, RomCache romCache) throws IOException {
+        this(socketFile, romCache, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Bind the server. Call {@link #run()}, normally on a thread of its own, to start serving.
+     * @param socketFile Where to create the Unix domain socket. Replaced if it exists.
+     * @param emulation Runs requests. Requests from one connection never run concurrently.
+     */
+    public ControlServer(Path socketFile, RomCache romCache, Executor emulation) throws IOException {
+        this.romCache = romCache;
+        this.emulation = emulation;
+
+        SocketAddress unixAddress = unixAddress(socketFile);
+        if (unixAddress != null) {
+            Files.deleteIfExists(socketFile);
+            server = openUnixServer();
+            server.bind(unixAddress);
+            this.socketFile = socketFile;
+        } else {
+            LOG.info("Unix domain sockets unavailable, listening on loopback TCP");
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            this.socketFile = null;
+        }
+        address = server.getLocalAddress();
+
+        selector = Selector.open();
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Look up UnixDomainSocketAddress reflectively so that the core still
+     * builds and runs on Java 8.
+     * @return The address, or null if this JVM has no Unix domain sockets.
+     */
+    private static SocketAddress unixAddress(Path socketFile) {
+        try {
+            Class<?> addressClass = Class.forName("java.net.UnixDomainSocketAddress");
+            return (SocketAddress) addressClass.getMethod("of", Path.class).invoke(null, socketFile);
+        } catch (ReflectiveOperationException ex) {
+            return null;
+        }
+    }
+
+    private static ServerSocketChannel openUnixServer() throws IOException {
+        try {
+            ProtocolFamily unix = StandardProtocolFamily.valueOf("UNIX");
+            return (ServerSocketChannel) ServerSocketChannel.class.getMethod("open", ProtocolFamily.class)
+                    .invoke(null, unix);
+        } catch (ReflectiveOperationException ex) {
+            throw new IOException("Unable to open Unix domain socket", ex);
+        }
+    }
+
+    /**
+     * @return The address clients connect to, e.g. with {@link ControlClient#ControlClient(SocketAddress)}.
+     */
+    public SocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * @return Whether the server listens on a Unix domain socket rather than loopback TCP.
+     */
+    public boolean isUnixDomain() {
+        return socketFile != null;
+    }
+
+    @Override
+    public void run() {
+        serverThread = Thread.currentThread();
+        try {
+            while (running) {
+                selector.select();
+
+                Connection flushed;
+                while ((flushed = flushQueue.poll()) != null) {
+                    flush(flushed);
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isReadable()) {
+                            read(connection);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush(connection);
+                        }
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            LOG.log(Level.SEVERE, "Control server stopped", ex);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+    }
+
+    private void read(Connection connection) {
+        try {
+            if (connection.channel.read(connection.in) < 0) {
+                disconnect(connection);
+                return;
+            }
+
+            ByteBuffer in = connection.in;
+            while (in.position() >= 4) {
+                int length = in.getInt(0);
+                if (length < 1 || length > MAX_REQUEST_LENGTH) {
+                    LOG.warning("Dropping connection after request of " + length + " bytes");
+                    disconnect(connection);
+                    return;
+                }
+                if (in.position() < 4 + length) {
+                    if (in.capacity() < 4 + length) {
+                        ByteBuffer larger = ByteBuffer.allocate(4 + length);
+                        in.flip();
+                        larger.put(in);
+                        connection.in = larger;
+                    }
+                    return;
+                }
+
+                byte[] request = new byte[length];
+                in.flip();
+                in.position(4);
+                in.get(request);
+                in.compact();
+                connection.submit(request);
+            }
+        } catch (IOException ex) {
+            LOG.log(Level.FINE, "Control connection failed", ex);
+            disconnect(connection);
+        }
+    }
+
+    private void flush(Connection connection) {
+        if (!connection.key.isValid()) {
+            return;
+        }
+        try {
+            ByteBuffer response;
+            while ((response = connection.out.peek()) != null) {
+                connection.channel.write(response);
+                if (response.hasRemaining()) {
+                    connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                connection.out.poll();
+            }
+            connection.key.interestOps(SelectionKey.OP_READ);
+        } catch (IOException ex) {
+            LOG.log(Level.FINE, "Control connection failed", ex);
+            disconnect(connection);
+        }
+    }
+
+    private void disconnect(Connection connection) {
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException ex) {
+            LOG.log(Level.FINE, "Error closing control connection", ex);
+        }
+    }
+
+    /**
+     * Stop serving and release the socket. Requests already running finish,
+     * but their responses are dropped.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        Thread thread = serverThread;
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        server.close();
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+        if (socketFile != null) {
+            Files.deleteIfExists(socketFile);
+        }
+    }
+
+    /**
+     * One client and the Game Boy it controls.
+     */
+    private final class Connection {
+
+        final SocketChannel channel;
+        SelectionKey key;
+        ByteBuffer in = ByteBuffer.allocate(1024);
+
+        final Queue<byte[]> requests = new ConcurrentLinkedQueue<>();
+        final Queue<ByteBuffer> out = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+
+        // Only touched by request handling, which is serialized by scheduled
+        GameBoy gameBoy;
+        int buttons;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void submit(byte[] request) {
+            requests.add(request);
+            if (scheduled.compareAndSet(false, true)) {
+                emulation.execute(this::drain);
+            }
+        }
+
+        void drain() {
+            try {
+                byte[] request;
+                while ((request = requests.poll()) != null) {
+                    out.add(handle(ByteBuffer.wrap(request)));
+                    flushQueue.add(this);
+                    selector.wakeup();
+                }
+            } finally {
+                scheduled.set(false);
+            }
+            // A request may have arrived after the last poll but before the flag was cleared
+            if (!requests.isEmpty() && scheduled.compareAndSet(false, true)) {
+                emulation.execute(this::drain);
+            }
+        }
+
+        ByteBuffer handle(ByteBuffer request) {
+            byte op = request.get();
+            try {
+                switch (op) {
+                    case OP_LOAD_ROM:
+                        gameBoy = romCache.newGameBoy(string(request));
+                        buttons = 0;
+                        return ok(gameBoy.getRom().getHeaderGameTitle().trim().getBytes(StandardCharsets.UTF_8));
+
+                    case OP_STEP:
+                        step(request.getInt());
+                        return flip(ok(8).putLong(gameBoy.getPpu().getFrameCount()));
+
+                    case OP_PRESS:
+                        buttons |= request.getInt();
+                        gameBoy().getMemory().setJoypadState(buttons);
+                        return flip(ok(0));
+
+                    case OP_RELEASE:
+                        buttons &= ~request.getInt();
+                        gameBoy().getMemory().setJoypadState(buttons);
+                        return flip(ok(0));
+
+                    case OP_SAVE_STATE:
+                        return ok(gameBoy().saveState());
+
+                    case OP_LOAD_STATE:
+                        byte[] state = new byte[request.remaining()];
+                        request.get(state);
+                        gameBoy().loadState(state);
+                        return flip(ok(0));
+
+                    case OP_READ_MEMORY:
+                        return readMemory(request.getInt(), request.getInt());
+
+                    case OP_WRITE_MEMORY:
+                        writeMemory(request.getInt(), request);
+                        return flip(ok(0));
+
+                    case OP_GET_FRAME:
+                        return ok(gameBoy().getPpu().getFrameBuffer());
+
+                    case OP_STEP_AND_FRAME:
+                        step(request.getInt());
+                        return ok(gameBoy.getPpu().getFrameBuffer());
+
+                    default:
+                        throw new IllegalArgumentException("Unknown opcode " + op);
+                }
+            } catch (Exception ex) {
+                return error(ex.getMessage() != null ? ex.getMessage() : ex.toString());
+            } catch (Error ex) {
+                // E.g. a StackOverflowError from a runaway program. The machine stopped partway through an
+                // instruction, so it is dropped and the client has to load the ROM again.
+                gameBoy = null;
+                return error(ex.toString());
+            }
+        }
+
+        private ByteBuffer error(String message) {
+            byte[] payload = message.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer response = ByteBuffer.allocate(5 + payload.length);
+            return flip(response.putInt(1 + payload.length).put(STATUS_ERROR).put(payload));
+        }
+
+        private GameBoy gameBoy() {
+            if (gameBoy == null) {
+                throw new IllegalStateException("No ROM loaded");
+            }
+            return gameBoy;
+        }
+
+        private void step(int frames) {
+            GameBoy gameBoy = gameBoy();
+            for (int i = 0; i < frames; i++) {
+                gameBoy.runFrame();
+            }
+        }
+
+        private ByteBuffer readMemory(int addr, int length) {
+            checkRange(addr, length);
+            GameBoyMemory mem = gameBoy().getMemory();
+            ByteBuffer response = ok(length);
+            for (int i = 0; i < length; i++) {
+                response.put((byte) mem.readByte(addr + i));
+            }
+            return flip(response);
+        }
+
+        private void writeMemory(int addr, ByteBuffer data) {
+            checkRange(addr, data.remaining());
+            GameBoyMemory mem = gameBoy().getMemory();
+            while (data.hasRemaining()) {
+                mem.writeByte(data.get() & 0xFF, addr++);
+            }
+        }
+    }
+
+    private static void checkRange(int addr, int length) {
+        if (addr < 0 || length < 0 || addr + length > 0x10000) {
+            throw new IllegalArgumentException("Address range out of bounds");
+        }
+    }
+
+    private static String string(ByteBuffer request) {
+        return new String(request.array(), request.position(), request.remaining(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return A response buffer with room for a payload of the given length, positioned after the status byte.
+     */
+    private static ByteBuffer ok(int payloadLength) {
+        return ByteBuffer.allocate(5 + payloadLength).putInt(1 + payloadLength).put(STATUS_OK);
+    }
+
+    private static ByteBuffer ok(byte[] payload) {
+        return flip(ok(payload.length).put(payload));
+    }
+
+    private static ByteBuffer flip(ByteBuffer buffer) {
+        buffer.flip();
+        return buffer;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path socketFile = Paths.get(args.length > 0 ? args[0] : "gameboylfb.sock");
+        try (ControlServer server = new ControlServer(socketFile, new RomCache())) {
+            System.out.println("Listening on " + server.getAddress());
+            server.run();
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Measures the round trip of a step-and-observe call through a
+ * {@link ControlServer}: one frame is emulated and its frame buffer fetched
+ * per call. The time to emulate the same frame in-process is reported
+ * alongside, so the difference is the cost of the control API itself.
+ *
+ * Usage: ControlServerBenchmark [rom file] [calls]
+ */
+public class ControlServerBenchmark {
+
+    private static final int WARMUP_CALLS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        String romFile = args.length > 0 ? args[0] : "Alleyway.gb";
+        int calls = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+
+        Path socketFile = Files.createTempDirectory("gameboylfb").resolve("control.sock");
+        try (ControlServer server = new ControlServer(socketFile, new RomCache())) {
+            Thread serverThread = new Thread(server, "control-server");
+            serverThread.setDaemon(true);
+            serverThread.start();
+
+            byte[] frame = new byte[GameBoyPpu.SCREEN_WIDTH * GameBoyPpu.SCREEN_HEIGHT];
+            long[] nanos = new long[calls];
+            long emulatedNanos = 0;
+            try (ControlClient client = new ControlClient(server.getAddress())) {
+                System.out.println(client.loadRom(romFile) + " over "
+                        + (server.isUnixDomain() ? "Unix domain socket " : "loopback TCP ") + server.getAddress());
+
+                for (int i = 0; i < WARMUP_CALLS; i++) {
+                    client.stepAndGetFrame(1, frame);
+                }
+                for (int i = 0; i < calls; i++) {
+                    long start = System.nanoTime();
+                    client.stepAndGetFrame(1, frame);
+                    nanos[i] = System.nanoTime() - start;
+                }
+            }
+
+            GameBoy local = new RomCache().newGameBoy(romFile);
+            for (int i = 0; i < WARMUP_CALLS + calls; i++) {
+                local.runFrame();
+                if (i >= WARMUP_CALLS) {
+                    emulatedNanos += local.getLastFrameNanos();
+                }
+            }
+
+            Arrays.sort(nanos);
+            long total = 0;
+            for (long n : nanos) {
+                total += n;
+            }
+            double meanMicros = total / 1000.0 / calls;
+            double frameMicros = emulatedNanos / 1000.0 / calls;
+            System.out.println(String.format("round trip: %8.1f us mean, %.1f us p50, %.1f us p99, %.1f us max",
+                    meanMicros, nanos[calls / 2] / 1000.0, nanos[calls * 99 / 100] / 1000.0,
+                    nanos[calls - 1] / 1000.0));
+            System.out.println(String.format("in-process frame: %8.1f us, control overhead: %.1f us", frameMicros,
+                    meanMicros - frameMicros));
+        }
+        Files.deleteIfExists(socketFile.getParent());
+    }
+
+}
@@ -0,0 +1,305 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Counts how often each opcode executes and how many cycles it accounts for,
+ * so that the processOpcode cases worth optimizing can be picked from real
+ * workloads.
+ *
+ * It also records where the game itself spends its time: cycles per
+ * instruction address, and cycles per call stack. The call stacks come from a
+ * shadow stack that the CALL, RST and RET handlers maintain. A frame is popped
+ * when a return reads from at or above the stack slot its call pushed, so
+ * return addresses that the game discards or fakes do not derail the stack.
+ * The stacks can be exported as collapsed-stack text for flame graph tools.
+ *
+ * Profiling is switched on for the whole JVM with -Dgameboylfb.profile=true.
+ * The CPU only calls into its profiler behind a check of ENABLED, which the
+ * JIT treats as a constant, so with profiling off the hooks compile away and
+ * no profiler is created.
+ *
+ * The counters are plain fields updated by the emulation thread; a report
+ * written from another thread while the emulation runs is approximate.
+ */
+public class CpuProfiler {
+
+    public static final boolean ENABLED = Boolean.getBoolean("gameboylfb.profile");
+    // File to write collapsed stacks to on exit, and a .sym file to name them with
+    public static final String STACKS_PROPERTY = "gameboylfb.profile.stacks";
+    public static final String SYMBOLS_PROPERTY = "gameboylfb.profile.symbols";
+
+    private static final int MAX_CALL_DEPTH = 256;
+    private static final int HOT_ADDRESS_LIMIT = 20;
+    private static final String TOP_FRAME = "top";
+
+    private final long[] opcodeCounts = new long[256];
+    private final long[] opcodeCycles = new long[256];
+    // CB-prefixed opcodes, indexed by the byte after the prefix
+    private final long[] cbCounts = new long[256];
+    private final long[] cbCycles = new long[256];
+    private final long[] addressCycles = new long[0x10000];
+
+    private final CallNode root = new CallNode(null, -1);
+    private CallNode current = root;
+    // Stack pointer just after each open call pushed its return address
+    private final int[] frameSp = new int[MAX_CALL_DEPTH];
+    private int depth;
+
+    // Where the instruction being executed started, for addCycles
+    private int pendingAddress;
+    private CallNode pendingNode = root;
+
+    /**
+     * Count an opcode that is about to execute. Counting before executing
+     * means opcodes the CPU does not implement yet still show up.
+     * @param address Address the opcode was fetched from.
+     * @param cbOpcode The byte following a 0xCB prefix, otherwise ignored.
+     */
+    void countOpcode(int address, int opcode, int cbOpcode) {
+        pendingAddress = address;
+        pendingNode = current;
+        if (opcode == 0xCB) {
+            cbCounts[cbOpcode]++;
+        } else {
+            opcodeCounts[opcode]++;
+        }
+    }
+
+    /**
+     * @param cycles Cycles taken by an opcode that has finished executing.
+     */
+    void addCycles(int opcode, int cbOpcode, int cycles) {
+        addressCycles[pendingAddress] += cycles;
+        pendingNode.cycles += cycles;
+        if (opcode == 0xCB) {
+            cbCycles[cbOpcode] += cycles;
+        } else {
+            opcodeCycles[opcode] += cycles;
+        }
+    }
+
+    /**
+     * @param sp Stack pointer after the return address was pushed.
+     */
+    void enterCall(int target, int sp) {
+        if (depth == MAX_CALL_DEPTH) {
+            // Runaway recursion or a game that never returns; start over
+            depth = 0;
+            current = root;
+        }
+        frameSp[depth++] = sp;
+        current = current.child(target);
+    }
+
+    /**
+     * @param sp Stack pointer the return address is about to be popped from.
+     */
+    void exitCall(int sp) {
+        while (depth > 0 && frameSp[depth - 1] <= sp) {
+            depth--;
+            current = current.parent;
+        }
+    }
+
+    public long getCount(int opcode) {
+        return opcodeCounts[opcode];
+    }
+
+    public long getCycles(int opcode) {
+        return opcodeCycles[opcode];
+    }
+
+    public long getCbCount(int cbOpcode) {
+        return cbCounts[cbOpcode];
+    }
+
+    public long getCbCycles(int cbOpcode) {
+        return cbCycles[cbOpcode];
+    }
+
+    /**
+     * @return Cycles spent executing the instruction at this address.
+     */
+    public long getAddressCycles(int address) {
+        return addressCycles[address];
+    }
+
+    /**
+     * @return The shadow call stack, outermost call first, as the addresses called.
+     */
+    public int[] getCallStack() {
+        int[] stack = new int[depth];
+        CallNode node = current;
+        for (int i = depth - 1; i >= 0; i--) {
+            stack[i] = node.address;
+            node = node.parent;
+        }
+        return stack;
+    }
+
+    /**
+     * Clear all counts. The call tree is cleared too, so the stack restarts at the top level.
+     */
+    public void reset() {
+        Arrays.fill(opcodeCounts, 0);
+        Arrays.fill(opcodeCycles, 0);
+        Arrays.fill(cbCounts, 0);
+        Arrays.fill(cbCycles, 0);
+        Arrays.fill(addressCycles, 0);
+        root.cycles = 0;
+        root.childCount = 0;
+        current = root;
+        pendingNode = root;
+        depth = 0;
+    }
+
+    /**
+     * Print every opcode that executed, most cycles first.
+     */
+    public void writeReport(PrintStream out) {
+        List<long[]> rows = new ArrayList<>();
+        long totalCount = 0;
+        long totalCycles = 0;
+        for (int i = 0; i < 256; i++) {
+            if (opcodeCounts[i] != 0) {
+                rows.add(new long[] {i, opcodeCounts[i], opcodeCycles[i]});
+            }
+            if (cbCounts[i] != 0) {
+                rows.add(new long[] {0xCB00 | i, cbCounts[i], cbCycles[i]});
+            }
+            totalCount += opcodeCounts[i] + cbCounts[i];
+            totalCycles += opcodeCycles[i] + cbCycles[i];
+        }
+        rows.sort((a, b) -> a[2] != b[2] ? Long.compare(b[2], a[2]) : Long.compare(b[1], a[1]));
+
+        out.println(String.format("%-8s %14s %7s %16s %7s %6s", "opcode", "count", "count%", "cycles", "cycles%", "avg"));
+        for (long[] row : rows) {
+            out.println(String.format("%-8s %14d %6.2f%% %16d %6.2f%% %6.1f",
+                    row[0] > 0xFF ? String.format("CB %02X", row[0] & 0xFF) : String.format("%02X", row[0]),
+                    row[1], percent(row[1], totalCount), row[2], percent(row[2], totalCycles),
+                    (double) row[2] / row[1]));
+        }
+        out.println(String.format("%-8s %14d %7s %16d", "total", totalCount, "", totalCycles));
+    }
+
+    /**
+     * Print the instruction addresses that took the most cycles.
+     * @param symbols Labels to name addresses with; may be null.
+     */
+    public void writeHotAddresses(PrintStream out, int limit, SymbolTable symbols) {
+        long total = 0;
+        List<Integer> addresses = new ArrayList<>();
+        for (int i = 0; i < addressCycles.length; i++) {
+            if (addressCycles[i] != 0) {
+                addresses.add(i);
+                total += addressCycles[i];
+            }
+        }
+        addresses.sort((a, b) -> Long.compare(addressCycles[b], addressCycles[a]));
+
+        out.println(String.format("%-8s %-32s %16s %7s", "address", "label", "cycles", "cycles%"));
+        for (int address : addresses.subList(0, Math.min(limit, addresses.size()))) {
+            out.println(String.format("%-8s %-32s %16d %6.2f%%", SymbolTable.format(address),
+                    symbols == null ? "" : symbols.resolve(address),
+                    addressCycles[address], percent(addressCycles[address], total)));
+        }
+    }
+
+    /**
+     * Write one line per call stack that executed code, as the frames from
+     * the top level down separated by ';', then a space and the cycles spent
+     * in that stack itself. This is the input format of flamegraph.pl and
+     * compatible tools.
+     * @param symbols Labels to name called addresses with; may be null.
+     */
+    public void writeCollapsedStacks(PrintStream out, SymbolTable symbols) {
+        writeCollapsedStacks(out, symbols, root, new StringBuilder(TOP_FRAME));
+    }
+
+    private static void writeCollapsedStacks(PrintStream out, SymbolTable symbols, CallNode node, StringBuilder path) {
+        if (node.cycles != 0) {
+            out.println(path + " " + node.cycles);
+        }
+        for (int i = 0; i < node.childCount; i++) {
+            CallNode child = node.children[i];
+            int length = path.length();
+            path.append(';').append(symbols == null ? SymbolTable.format(child.address) : symbols.resolve(child.address));
+            writeCollapsedStacks(out, symbols, child, path);
+            path.setLength(length);
+        }
+    }
+
+    /**
+     * Write the reports a launcher prints on exit: opcodes and hot addresses
+     * to out, and the collapsed stacks to the file named by STACKS_PROPERTY,
+     * if set. Addresses are named from the file named by SYMBOLS_PROPERTY, if set.
+     */
+    public void writeReports(PrintStream out) throws IOException {
+        String symbolsFile = System.getProperty(SYMBOLS_PROPERTY);
+        SymbolTable symbols = symbolsFile == null ? null : SymbolTable.read(Paths.get(symbolsFile));
+
+        writeReport(out);
+        out.println();
+        writeHotAddresses(out, HOT_ADDRESS_LIMIT, symbols);
+
+        String stacksFile = System.getProperty(STACKS_PROPERTY);
+        if (stacksFile != null) {
+            Path path = Paths.get(stacksFile);
+            try (PrintStream stacks = new PrintStream(Files.newOutputStream(path), false, "UTF-8")) {
+                writeCollapsedStacks(stacks, symbols);
+            }
+            out.println("Wrote call stacks to " + path);
+        }
+    }
+
+    private static double percent(long part, long total) {
+        return total == 0 ? 0 : 100.0 * part / total;
+    }
+
+    /**
+     * One distinct call stack: the address called, under the stack it was called from.
+     */
+    private static final class CallNode {
+        final CallNode parent;
+        final int address;
+        long cycles;
+        CallNode[] children = new CallNode[4];
+        int childCount;
+
+        CallNode(CallNode parent, int address) {
+            this.parent = parent;
+            this.address = address;
+        }
+
+        CallNode child(int target) {
+            for (int i = 0; i < childCount; i++) {
+                if (children[i].address == target) {
+                    return children[i];
+                }
+            }
+            if (childCount == children.length) {
+                children = Arrays.copyOf(children, childCount * 2);
+            }
+            CallNode child = new CallNode(this, target);
+            children[childCount++] = child;
+            return child;
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+/**
+ * Thrown when the CPU fetches an opcode it cannot execute. This is unchecked
+ * because it can surface from any instruction step.
+ */
+public class CpuUnimplementedOpcodeException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int opcode;
+
+    public CpuUnimplementedOpcodeException(int opcode) {
+        super();
+        this.opcode = opcode;
+    }
+
+    public CpuUnimplementedOpcodeException(int opcode, String message) {
+        super(message);
+        this.opcode = opcode;
+    }
+
+    public CpuUnimplementedOpcodeException(int opcode, Throwable cause) {
+        super(cause);
+        this.opcode = opcode;
+    }
+
+    public CpuUnimplementedOpcodeException(int opcode, String message, Throwable cause) {
+        super(message, cause);
+        this.opcode = opcode;
+    }
+
+    public CpuUnimplementedOpcodeException(int opcode, String message, Throwable cause,
+                                           boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+        this.opcode = opcode;
+    }
+
+    public int getOpcode() {
+        return opcode;
+    }
+
+    /**
+     * Without an explicit message the message names the opcode. It is only
+     * built when asked for, so that throwing stays cheap for the CPU.
+     */
+    @Override
+    public String getMessage() {
+        String message = super.getMessage();
+        return message != null ? message : "Opcode " + Integer.toHexString(opcode) + " is not implemented.";
+    }
+}
@@ -0,0 +1,218 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * A Game Boy run under a debugger, with execution breakpoints and read and
+ * write watchpoints.
+ *
+ * The debugger is a separate way of running the machine rather than a mode
+ * of the normal one: it drives its Game Boy one instruction at a time from
+ * its own loop, checking breakpoints against a 64K bitmap after every
+ * instruction, and the machine's memory is a {@link WatchedMemory}. Machines
+ * created any other way contain no debugging checks at all.
+ *
+ * Execution stops after the instruction that hit a watchpoint, and before
+ * the instruction at a breakpoint. Resuming from a breakpoint executes that
+ * instruction rather than stopping on it again. Every method that runs
+ * more than one instruction takes a limit, since a program may never reach
+ * the point it is run to.
+ */
+public class Debugger {
+
+    /**
+     * Why the debugger stopped.
+     */
+    public enum Stop {
+        /** The step finished or the target address was reached. */
+        DONE,
+        BREAKPOINT,
+        WATCHPOINT,
+        /** The instruction limit was reached first. */
+        LIMIT
+    }
+
+    private final GameBoy gameBoy;
+    private final WatchedMemory mem;
+    private final AddressSet breakpoints = new AddressSet();
+
+    public Debugger(GameBoyRom rom) throws IOException, MemoryBadDmgRomException {
+        this(rom, Files.readAllBytes(Paths.get("DMG_ROM.bin")));
+    }
+
+    public Debugger(GameBoyRom rom, byte[] dmgRom) throws MemoryBadDmgRomException {
+        mem = new WatchedMemory(rom, dmgRom);
+        gameBoy = new GameBoy(rom, mem);
+    }
+
+    public GameBoy getGameBoy() {
+        return gameBoy;
+    }
+
+    // Breakpoints and watchpoints
+
+    public void addBreakpoint(int addr) {
+        breakpoints.add(addr);
+    }
+
+    public void removeBreakpoint(int addr) {
+        breakpoints.remove(addr);
+    }
+
+    public boolean hasBreakpoint(int addr) {
+        return breakpoints.contains(addr);
+    }
+
+    /**
+     * Stop after any instruction that reads the given address, including by fetching it.
+     */
+    public void watchReads(int addr) {
+        mem.getReadWatches().add(WatchedMemory.unmirror(addr));
+    }
+
+    /**
+     * Stop after any instruction that writes the given address.
+     */
+    public void watchWrites(int addr) {
+        mem.getWriteWatches().add(WatchedMemory.unmirror(addr));
+    }
+
+    /**
+     * Remove both the read and the write watchpoint on the given address.
+     */
+    public void removeWatchpoint(int addr) {
+        mem.getReadWatches().remove(WatchedMemory.unmirror(addr));
+        mem.getWriteWatches().remove(WatchedMemory.unmirror(addr));
+    }
+
+    public void clearAll() {
+        breakpoints.clear();
+        mem.getReadWatches().clear();
+        mem.getWriteWatches().clear();
+    }
+
+    /**
+     * @return The address of the first watched access made by the last
+     *         instruction, as the instruction addressed it (which may be in
+     *         echo RAM), valid after a stop at a WATCHPOINT.
+     */
+    public int getWatchAddress() {
+        return mem.getHitAddress();
+    }
+
+    /**
+     * @return The byte that was read or written at {@link #getWatchAddress()}.
+     */
+    public int getWatchValue() {
+        return mem.getHitValue();
+    }
+
+    public boolean isWatchWrite() {
+        return mem.isHitWrite();
+    }
+
+    // Execution
+
+    /**
+     * Execute one instruction.
+     * @return WATCHPOINT if it accessed a watched address, otherwise DONE.
+     */
+    public Stop step() {
+        return stepInstruction() ? Stop.WATCHPOINT : Stop.DONE;
+    }
+
+    /**
+     * Execute one instruction, or if it is a CALL or RST, run until the
+     * subroutine returns to the instruction after it.
+     */
+    public Stop stepOver(long limit) {
+        GameBoyCpu.CpuRegisters reg = gameBoy.getCpu().reg;
+        int pc = reg.getPC();
+        int length = instructionLengthIfCall(mem.readByte(pc));
+        if (length == 0) {
+            return step();
+        }
+        // The subroutine has returned once SP is back where it was before the call
+        return runUntil((pc + length) & GameBoyCpu.MASK_WORD, reg.getSP(), limit);
+    }
+
+    /**
+     * Run until PC reaches the given address, or a breakpoint or watchpoint is hit.
+     */
+    public Stop runTo(int addr, long limit) {
+        return runUntil(addr & GameBoyCpu.MASK_WORD, -1, limit);
+    }
+
+    /**
+     * Run until a breakpoint or watchpoint is hit.
+     */
+    public Stop run(long limit) {
+        return runUntil(-1, -1, limit);
+    }
+
+    /**
+     * @param target Address to stop at, or -1 for none.
+     * @param targetSp Only stop at the target with this SP, or -1 for any SP.
+     */
+    private Stop runUntil(int target, int targetSp, long limit) {
+        GameBoyCpu.CpuRegisters reg = gameBoy.getCpu().reg;
+        for (long i = 0; i < limit; i++) {
+            if (stepInstruction()) {
+                return Stop.WATCHPOINT;
+            }
+            int pc = reg.getPC();
+            if (pc == target && (targetSp < 0 || reg.getSP() == targetSp)) {
+                return Stop.DONE;
+            }
+            if (breakpoints.contains(pc)) {
+                return Stop.BREAKPOINT;
+            }
+        }
+        return Stop.LIMIT;
+    }
+
+    /**
+     * Execute one instruction with only the CPU's accesses checked against the watchpoints.
+     * @return Whether a watchpoint was hit.
+     */
+    private boolean stepInstruction() {
+        mem.clearHit();
+        mem.setArmed(true);
+        int cycles;
+        try {
+            cycles = gameBoy.execute();
+        } finally {
+            mem.setArmed(false);
+        }
+        gameBoy.advance(cycles);
+        return mem.isHit();
+    }
+
+    /**
+     * @return Length of the instruction if the opcode is a CALL or RST, otherwise 0.
+     */
+    private static int instructionLengthIfCall(int opcode) {
+        switch (opcode) {
+            case 0xCD: // CALL a16
+            case 0xC4: // CALL NZ,a16
+            case 0xCC: // CALL Z,a16
+            case 0xD4: // CALL NC,a16
+            case 0xDC: // CALL C,a16
+                return 3;
+            default:
+                // RST n
+                return (opcode & 0xC7) == 0xC7 ? 1 : 0;
+        }
+    }
+
+}
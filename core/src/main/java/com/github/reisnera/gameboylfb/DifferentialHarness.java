@@ -0,0 +1,464 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Checks that an execution engine behaves exactly like the reference
+ * interpreter, GameBoyCpu.processOpcode, in one of three ways:
+ *
+ * - lockstep: both engines run their own copy of a machine one instruction
+ *   at a time, and the registers and cycle counters are compared after every
+ *   instruction and all of memory after every frame. When memory differs,
+ *   the frame is replayed from forks taken at its start with memory compared
+ *   after every instruction, so the first instruction to diverge is found;
+ * - traces: two traces from {@link TraceRecorder} are compared record by
+ *   record;
+ * - fuzzing: random single-instruction states are set up through the
+ *   CpuRegisters API and run on both engines, spread over all cores.
+ *
+ * Each reports the first divergence it finds with the register and memory
+ * state around it.
+ *
+ * Usage: DifferentialHarness fuzz [trials] [seed]
+ *        DifferentialHarness traces [expected trace] [actual trace]
+ */
+public class DifferentialHarness {
+
+    /**
+     * A way of executing instructions. Engines other than the reference may
+     * keep whatever state they like, as long as the machine they are given
+     * ends up exactly as the reference would leave it.
+     */
+    public interface Engine {
+        /**
+         * Execute the instruction at PC and advance the rest of the machine by the cycles it took.
+         */
+        void step(GameBoy gameBoy);
+    }
+
+    public static final Engine REFERENCE = GameBoy::step;
+
+    private static final int MAX_MEMORY_DIFFERENCES = 16;
+    private static final int SNAPSHOT_SIZE = 9;
+    // Where fuzzed instructions are placed, and the RAM their pointers aim into
+    private static final int FUZZ_PC = 0xC000;
+    private static final int FUZZ_RAM_START = 0xC100;
+    private static final int FUZZ_RAM_END = 0xDF00;
+
+    // Every address, for comparing all of memory
+    private static final int[] ALL_ADDRESSES = new int[0x10000];
+
+    static {
+        for (int addr = 0; addr < ALL_ADDRESSES.length; addr++) {
+            ALL_ADDRESSES[addr] = addr;
+        }
+    }
+
+    private DifferentialHarness() {
+    }
+
+    /**
+     * The first point at which two engines disagreed.
+     */
+    public static final class Divergence {
+        private final String report;
+
+        Divergence(String report) {
+            this.report = report;
+        }
+
+        @Override
+        public String toString() {
+            return report;
+        }
+    }
+
+    /**
+     * Run two copies of a machine in lockstep. The copies must start in the
+     * same state, e.g. one a fork of the other.
+     * @return The first divergence, or null if the engines agreed for all steps.
+     */
+    public static Divergence runLockstep(GameBoy expected, Engine reference, GameBoy actual, Engine candidate,
+                                         long maxSteps) {
+        int[] before = new int[SNAPSHOT_SIZE];
+        // Forks of both machines at the start of the current frame
+        GameBoy expectedCheckpoint = expected.fork();
+        GameBoy actualCheckpoint = actual.fork();
+        long checkpointStep = 0;
+
+        for (long step = 0; step < maxSteps; step++) {
+            long frame = expected.getPpu().getFrameCount();
+            Divergence divergence = lockstep(expected, reference, actual, candidate, step, false, before);
+            if (divergence != null) {
+                return divergence;
+            }
+            if (expected.getPpu().getFrameCount() != frame || step == maxSteps - 1) {
+                if (compareMemory(expected, actual, ALL_ADDRESSES, ALL_ADDRESSES.length) != null) {
+                    return replay(expectedCheckpoint, reference, actualCheckpoint, candidate, checkpointStep, step,
+                            before);
+                }
+                expectedCheckpoint = expected.fork();
+                actualCheckpoint = actual.fork();
+                checkpointStep = step + 1;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Run the steps between two points again, comparing all of memory after
+     * each one, to find the first step that made memory diverge.
+     */
+    private static Divergence replay(GameBoy expected, Engine reference, GameBoy actual, Engine candidate,
+                                     long firstStep, long lastStep, int[] before) {
+        for (long step = firstStep; step <= lastStep; step++) {
+            Divergence divergence = lockstep(expected, reference, actual, candidate, step, true, before);
+            if (divergence != null) {
+                return divergence;
+            }
+        }
+        // Only an engine that does not behave the same way twice gets here
+        return new Divergence("Steps " + firstStep + " to " + lastStep
+                + ": memory diverged, but not when the steps were run again");
+    }
+
+    /**
+     * Run one step on both machines and compare the outcome and registers, and all of memory if asked to.
+     */
+    private static Divergence lockstep(GameBoy expected, Engine reference, GameBoy actual, Engine candidate,
+                                       long step, boolean compareAllMemory, int[] before) {
+        snapshot(expected, before);
+        String outcome = compareOutcomes(run(reference, expected), run(candidate, actual));
+        if (outcome != null) {
+            return new Divergence("Step " + step + ": " + describe(before) + "\n  " + outcome);
+        }
+        String state = compareRegisters(expected, actual);
+        if (state == null && compareAllMemory) {
+            state = compareMemory(expected, actual, ALL_ADDRESSES, ALL_ADDRESSES.length);
+        }
+        return state == null ? null : new Divergence("Step " + step + ": " + describe(before) + state);
+    }
+
+    /**
+     * @return The first record at which the traces differ or one ends early, or null if they are the same.
+     */
+    public static Divergence compareTraces(Path expectedFile, Path actualFile) throws IOException {
+        try (TraceReader expected = new TraceReader(expectedFile); TraceReader actual = new TraceReader(actualFile)) {
+            String previous = "(start of trace)";
+            while (true) {
+                boolean expectedMore = expected.next();
+                boolean actualMore = actual.next();
+                if (!expectedMore && !actualMore) {
+                    return null;
+                }
+                if (expectedMore != actualMore || !expected.format().equals(actual.format())) {
+                    long index = Math.max(expected.getIndex(), actual.getIndex());
+                    return new Divergence("Record " + index + ":\n  previous " + previous
+                            + "\n  expected " + (expectedMore ? expected.format() : "(end of trace)")
+                            + "\n  actual   " + (actualMore ? actual.format() : "(end of trace)"));
+                }
+                previous = expected.format();
+            }
+        }
+    }
+
+    /**
+     * Result of a fuzzing run.
+     */
+    public static final class FuzzResult {
+        private final long trials;
+        private final long nanos;
+        private final Divergence divergence;
+
+        FuzzResult(long trials, long nanos, Divergence divergence) {
+            this.trials = trials;
+            this.nanos = nanos;
+            this.divergence = divergence;
+        }
+
+        public long getTrials() {
+            return trials;
+        }
+
+        public double getTrialsPerSecond() {
+            return trials * 1e9 / nanos;
+        }
+
+        /**
+         * @return The first divergence found, or null if the engines always agreed.
+         */
+        public Divergence getDivergence() {
+            return divergence;
+        }
+    }
+
+    /**
+     * Run random instructions from random register and memory states on both
+     * engines, stopping at the first divergence.
+     * @param threads Number of threads to fuzz on, each with its own pair of machines.
+     */
+    public static FuzzResult fuzz(Engine reference, Engine candidate, long trials, long seed, int threads)
+            throws InterruptedException {
+        LongAdder run = new LongAdder();
+        // Opcodes both engines have been seen to reject alike; fuzzing them again proves nothing
+        AtomicIntegerArray unimplemented = new AtomicIntegerArray(256);
+        AtomicReference<Divergence> divergence = new AtomicReference<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            long share = trials / threads + (t < trials % threads ? 1 : 0);
+            long threadSeed = seed + t;
+            Thread worker = new Thread(() -> {
+                // Counted locally so that the threads share nothing per trial
+                long done = 0;
+                try {
+                    Fuzzer fuzzer = new Fuzzer(reference, candidate, threadSeed, unimplemented);
+                    while (done < share && divergence.get() == null) {
+                        Divergence found = fuzzer.trial();
+                        done++;
+                        if (found != null) {
+                            divergence.compareAndSet(null, found);
+                        }
+                    }
+                } catch (Throwable ex) {
+                    failure.compareAndSet(null, ex);
+                } finally {
+                    run.add(done);
+                }
+            }, "fuzz-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (failure.get() != null) {
+            throw new IllegalStateException("Fuzzing failed", failure.get());
+        }
+        return new FuzzResult(run.sum(), System.nanoTime() - start, divergence.get());
+    }
+
+    /**
+     * One thread's pair of machines and random source.
+     */
+    private static final class Fuzzer {
+        private final Engine reference;
+        private final Engine candidate;
+        private final Random random;
+        private final GameBoy expected;
+        private final GameBoy actual;
+        private final AtomicIntegerArray unimplemented;
+        private final GameBoy[] machines;
+        private final int[] pointers = new int[4];
+        private final int[] context = new int[32];
+        private final int[] before = new int[SNAPSHOT_SIZE];
+        private long trial;
+
+        Fuzzer(Engine reference, Engine candidate, long seed, AtomicIntegerArray unimplemented) throws Exception {
+            this.reference = reference;
+            this.candidate = candidate;
+            this.unimplemented = unimplemented;
+            random = new Random(seed);
+            expected = blankGameBoy();
+            actual = expected.fork();
+            machines = new GameBoy[] {expected, actual};
+        }
+
+        Divergence trial() {
+            trial++;
+            int af = random.nextInt(0x10000);
+            int bc = pointer();
+            int de = pointer();
+            int hl = pointer();
+            int sp = FUZZ_RAM_START + random.nextInt(FUZZ_RAM_END - FUZZ_RAM_START);
+            int opcode;
+            do {
+                opcode = random.nextInt(256);
+            } while (unimplemented.get(opcode) != 0);
+            int operand1 = random.nextInt(256);
+            int operand2 = random.nextInt(256);
+
+            // Memory the instruction may read or write: around each pointer,
+            // at an a16 operand, and in the I/O page at an a8 operand or C.
+            // Seeding goes through writeByte on both machines alike, so I/O
+            // side effects of the seed writes cannot cause a divergence.
+            int count = 0;
+            pointers[0] = bc;
+            pointers[1] = de;
+            pointers[2] = hl;
+            pointers[3] = sp;
+            for (int pointer : pointers) {
+                for (int offset = -2; offset <= 1; offset++) {
+                    context[count++] = (pointer + offset) & GameBoyCpu.MASK_WORD;
+                }
+            }
+            int a16 = operand1 | operand2 << 8;
+            context[count++] = a16;
+            context[count++] = (a16 + 1) & GameBoyCpu.MASK_WORD;
+            context[count++] = 0xFF00 | operand1;
+            context[count++] = 0xFF00 | (bc & 0xFF);
+
+            for (int i = 0; i < count; i++) {
+                int value = random.nextInt(256);
+                expected.getMemory().writeByte(value, context[i]);
+                actual.getMemory().writeByte(value, context[i]);
+            }
+            for (GameBoy gameBoy : machines) {
+                GameBoyMemory mem = gameBoy.getMemory();
+                mem.writeByte(opcode, FUZZ_PC);
+                mem.writeByte(operand1, FUZZ_PC + 1);
+                mem.writeByte(operand2, FUZZ_PC + 2);
+                GameBoyCpu.CpuRegisters reg = gameBoy.getCpu().reg;
+                reg.setAF(af);
+                reg.setBC(bc);
+                reg.setDE(de);
+                reg.setHL(hl);
+                reg.setSP(sp);
+                reg.setPC(FUZZ_PC);
+            }
+            snapshot(expected, before);
+
+            RuntimeException expectedException = run(reference, expected);
+            String outcome = compareOutcomes(expectedException, run(candidate, actual));
+            if (outcome != null) {
+                return new Divergence("Trial " + trial + ": " + describe(before) + "\n  " + outcome);
+            }
+            if (expectedException instanceof CpuUnimplementedOpcodeException) {
+                unimplemented.set(opcode, 1);
+            }
+            String state = compareRegisters(expected, actual);
+            if (state == null) {
+                state = compareMemory(expected, actual, context, count);
+            }
+            return state == null ? null : new Divergence("Trial " + trial + ": " + describe(before) + state);
+        }
+
+        private int pointer() {
+            return FUZZ_RAM_START + random.nextInt(FUZZ_RAM_END - FUZZ_RAM_START);
+        }
+    }
+
+    private static GameBoy blankGameBoy() throws Exception {
+        byte[] dmgRom = new byte[256];
+        dmgRom[0] = (byte) 0xC3; // JP 0x0100
+        dmgRom[2] = (byte) 0x01;
+        return new GameBoy(new GameBoyRom(new byte[0x8000]), dmgRom);
+    }
+
+    /**
+     * @return The exception the engine threw, or null.
+     */
+    private static RuntimeException run(Engine engine, GameBoy gameBoy) {
+        try {
+            engine.step(gameBoy);
+            return null;
+        } catch (RuntimeException ex) {
+            return ex;
+        }
+    }
+
+    private static String compareOutcomes(RuntimeException expected, RuntimeException actual) {
+        if (expected == null && actual == null) {
+            return null;
+        }
+        if (expected != null && actual != null && expected.getClass() == actual.getClass()
+                && String.valueOf(expected.getMessage()).equals(String.valueOf(actual.getMessage()))) {
+            return null;
+        }
+        return "expected " + (expected == null ? "no exception" : expected)
+                + "\n  actual   " + (actual == null ? "no exception" : actual);
+    }
+
+    private static String compareRegisters(GameBoy expected, GameBoy actual) {
+        GameBoyCpu.CpuRegisters e = expected.getCpu().reg;
+        GameBoyCpu.CpuRegisters a = actual.getCpu().reg;
+        if (e.getAF() == a.getAF() && e.getBC() == a.getBC() && e.getDE() == a.getDE() && e.getHL() == a.getHL()
+                && e.getSP() == a.getSP() && e.getPC() == a.getPC()
+                && expected.getCpu().getCycleCounter() == actual.getCpu().getCycleCounter()) {
+            return null;
+        }
+        return "\n  expected " + registers(expected) + " cycles=" + expected.getCpu().getCycleCounter()
+                + "\n  actual   " + registers(actual) + " cycles=" + actual.getCpu().getCycleCounter();
+    }
+
+    private static String compareMemory(GameBoy expected, GameBoy actual, int[] addresses, int count) {
+        StringBuilder differences = new StringBuilder();
+        int found = 0;
+        for (int i = 0; i < count && found < MAX_MEMORY_DIFFERENCES; i++) {
+            int expectedByte = expected.getMemory().readByte(addresses[i]);
+            int actualByte = actual.getMemory().readByte(addresses[i]);
+            if (expectedByte != actualByte) {
+                differences.append(String.format("\n  memory %04X expected %02X actual %02X",
+                        addresses[i], expectedByte, actualByte));
+                found++;
+            }
+        }
+        return found == 0 ? null : "\n  registers agree, " + registers(expected) + differences;
+    }
+
+    /**
+     * Store the registers and the instruction bytes at PC, to describe the state before a divergence.
+     */
+    private static void snapshot(GameBoy gameBoy, int[] snapshot) {
+        GameBoyCpu.CpuRegisters reg = gameBoy.getCpu().reg;
+        GameBoyMemory mem = gameBoy.getMemory();
+        int pc = reg.getPC();
+        snapshot[0] = reg.getAF();
+        snapshot[1] = reg.getBC();
+        snapshot[2] = reg.getDE();
+        snapshot[3] = reg.getHL();
+        snapshot[4] = reg.getSP();
+        snapshot[5] = pc;
+        snapshot[6] = mem.readByte(pc);
+        snapshot[7] = mem.readByte((pc + 1) & GameBoyCpu.MASK_WORD);
+        snapshot[8] = mem.readByte((pc + 2) & GameBoyCpu.MASK_WORD);
+    }
+
+    private static String describe(int[] snapshot) {
+        return String.format("instruction %02X %02X %02X at %04X\n  before   AF=%04X BC=%04X DE=%04X HL=%04X SP=%04X PC=%04X",
+                snapshot[6], snapshot[7], snapshot[8], snapshot[5],
+                snapshot[0], snapshot[1], snapshot[2], snapshot[3], snapshot[4], snapshot[5]);
+    }
+
+    private static String registers(GameBoy gameBoy) {
+        GameBoyCpu.CpuRegisters reg = gameBoy.getCpu().reg;
+        return String.format("AF=%04X BC=%04X DE=%04X HL=%04X SP=%04X PC=%04X",
+                reg.getAF(), reg.getBC(), reg.getDE(), reg.getHL(), reg.getSP(), reg.getPC());
+    }
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "fuzz";
+        if (mode.equals("traces")) {
+            Divergence divergence = compareTraces(Paths.get(args[1]), Paths.get(args[2]));
+            System.out.println(divergence == null ? "Traces are identical" : divergence);
+            return;
+        }
+
+        long trials = args.length > 1 ? Long.parseLong(args[1]) : 10_000_000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        // Only the reference engine exists so far, so this checks it is deterministic
+        FuzzResult result = fuzz(REFERENCE, REFERENCE, trials, seed, threads);
+        System.out.println(String.format("%d trials on %d threads, %.2f million per second",
+                result.getTrials(), threads, result.getTrialsPerSecond() / 1e6));
+        System.out.println(result.getDivergence() == null ? "No divergence" : result.getDivergence());
+    }
+
+}
@@ -0,0 +1,186 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Logging for code that runs on an emulation thread. A log call copies a
+ * message code and up to two long arguments into a preallocated slot of a
+ * lock-free ring buffer and returns; a single background thread formats the
+ * messages and hands them to java.util.logging, whose handlers may then block
+ * on I/O without holding up emulation.
+ *
+ * Log calls never block and never allocate. When the ring is full the
+ * message is dropped and counted instead.
+ *
+ * The ring is the bounded multi-producer queue by Dmitry Vyukov: each slot
+ * carries a sequence number that says whether it is free for the producer
+ * that claimed its position, or holds a message for the consumer.
+ */
+public final class EmulationLog {
+
+    private static final int CAPACITY = 4096;
+    private static final int MASK = CAPACITY - 1;
+    // How long the logging thread sleeps when there is nothing to write
+    private static final long IDLE_PARK_NANOS = 5_000_000;
+
+    private static final LogMessage[] MESSAGES = LogMessage.values();
+
+    private static final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+    private static final int[] codes = new int[CAPACITY];
+    private static final long[] args0 = new long[CAPACITY];
+    private static final long[] args1 = new long[CAPACITY];
+    private static final long[] millis = new long[CAPACITY];
+
+    private static final AtomicLong tail = new AtomicLong();
+    private static final LongAdder dropped = new LongAdder();
+    // Position of the next message to write; only touched by the logging thread
+    private static volatile long head;
+
+    // Sets a record's time from epoch milliseconds: LogRecord.setInstant
+    // where it exists, otherwise setMillis, which later JDKs deprecate
+    private static final MethodHandle SET_TIME = findSetTime();
+
+    private static final Thread writer = new Thread(EmulationLog::drainForever, "emulation-log");
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            sequences.set(i, i);
+        }
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private EmulationLog() {
+    }
+
+    public static void log(LogMessage message, long arg0) {
+        log(message, arg0, 0);
+    }
+
+    public static void log(LogMessage message, long arg0, long arg1) {
+        long position;
+        int slot;
+        while (true) {
+            position = tail.get();
+            slot = (int) position & MASK;
+            long sequence = sequences.get(slot);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (sequence < position) {
+                // The logging thread has not freed this slot yet: full
+                dropped.increment();
+                return;
+            }
+            // Otherwise another producer claimed the position first; retry
+        }
+        codes[slot] = message.ordinal();
+        args0[slot] = arg0;
+        args1[slot] = arg1;
+        millis[slot] = System.currentTimeMillis();
+        sequences.lazySet(slot, position + 1);
+    }
+
+    /**
+     * @return Number of messages dropped because the ring was full.
+     */
+    public static long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Wait until every message logged before this call has been handed to
+     * java.util.logging, e.g. before the JVM exits.
+     * @return False if the logging thread died before it got that far.
+     */
+    public static boolean flush() {
+        long target = tail.get();
+        while (head < target) {
+            if (!writer.isAlive()) {
+                return false;
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS / 10);
+        }
+        return true;
+    }
+
+    private static void drainForever() {
+        while (true) {
+            if (!drainOne()) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    private static boolean drainOne() {
+        long position = head;
+        int slot = (int) position & MASK;
+        if (sequences.get(slot) != position + 1) {
+            return false;
+        }
+        LogMessage message = MESSAGES[codes[slot]];
+        long arg0 = args0[slot];
+        long arg1 = args1[slot];
+        long time = millis[slot];
+        sequences.lazySet(slot, position + CAPACITY);
+
+        Logger logger = message.getLogger();
+        if (logger.isLoggable(message.getLevel())) {
+            LogRecord record = new LogRecord(message.getLevel(), message.format(arg0, arg1));
+            record.setLoggerName(logger.getName());
+            // Otherwise the formatter would name this class as the source
+            record.setSourceClassName(logger.getName());
+            record.setSourceMethodName(null);
+            try {
+                SET_TIME.invokeExact(record, time);
+                logger.log(record);
+            } catch (RuntimeException ex) {
+                // A broken handler must not stop the logging thread
+            } catch (Throwable ex) {
+                // Only setting the time can throw anything else, and it does not
+                throw new AssertionError(ex);
+            }
+        }
+        head = position + 1;
+        return true;
+    }
+
+    private static MethodHandle findSetTime() {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            MethodHandle setInstant = lookup.findVirtual(LogRecord.class, "setInstant",
+                    MethodType.methodType(void.class, Instant.class));
+            MethodHandle ofEpochMilli = lookup.findStatic(Instant.class, "ofEpochMilli",
+                    MethodType.methodType(Instant.class, long.class));
+            return MethodHandles.filterArguments(setInstant, 1, ofEpochMilli);
+        } catch (NoSuchMethodException ex) {
+            // Java 8
+        } catch (IllegalAccessException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+        try {
+            return lookup.findVirtual(LogRecord.class, "setMillis", MethodType.methodType(void.class, long.class));
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+}
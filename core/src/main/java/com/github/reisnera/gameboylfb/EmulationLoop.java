@@ -0,0 +1,206 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a GameBoy on its own thread at the DMG's frame rate. Each frame it
+ * samples the joypad, emulates until VBlank and publishes the finished frame
+ * to a triple buffer, so a frontend can present and poll input at its own
+ * pace without ever blocking emulation.
+ *
+ * A paused loop parks its thread without a deadline, so a paused session
+ * costs no CPU time at all until it is resumed.
+ */
+public class EmulationLoop implements Runnable {
+
+    private final GameBoy gameBoy;
+    private final Joypad joypad;
+    private final FrameTripleBuffer frames;
+    private final FramePacer pacer;
+
+    private SharedFrameChannel sharedChannel;
+    private Movie recording;
+    private FleetMetrics.Instance metrics;
+
+    private volatile boolean running = true;
+    private volatile boolean paused;
+    private volatile Thread thread;
+
+    // Pacing statistics. Only written by the loop's own thread, so they are
+    // only reliable once that thread has been joined.
+    private long framesRun;
+    private long totalWakeLatencyNanos;
+    private long maxWakeLatencyNanos;
+    private long totalFrameLatencyNanos;
+    private long maxFrameLatencyNanos;
+
+    /**
+     * @param frames Where finished frames are published, or null for a session nobody watches.
+     */
+    public EmulationLoop(GameBoy gameBoy, Joypad joypad, FrameTripleBuffer frames) {
+        this(gameBoy, joypad, frames, new FramePacer());
+    }
+
+    /**
+     * @param pacer Sets the speed. Its speed may be changed while the loop runs.
+     */
+    public EmulationLoop(GameBoy gameBoy, Joypad joypad, FrameTripleBuffer frames, FramePacer pacer) {
+        this.gameBoy = gameBoy;
+        this.joypad = joypad;
+        this.frames = frames;
+        this.pacer = pacer;
+    }
+
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        pacer.reset();
+        while (running) {
+            if (paused) {
+                while (paused && running) {
+                    LockSupport.park(this);
+                }
+                pacer.reset();
+                continue;
+            }
+
+            long wake = System.nanoTime();
+            int buttons = joypad.get();
+            if (sharedChannel != null) {
+                buttons |= sharedChannel.readInput();
+            }
+            gameBoy.getMemory().setJoypadState(buttons);
+            if (recording != null) {
+                recording.record(buttons);
+            }
+            gameBoy.runFrame();
+
+            if (frames != null) {
+                byte[] frame = gameBoy.getPpu().getFrameBuffer();
+                System.arraycopy(frame, 0, frames.getBackBuffer(), 0, frame.length);
+                frames.publish();
+            }
+            if (sharedChannel != null) {
+                sharedChannel.publish(gameBoy);
+            }
+
+            long deadline = pacer.getDeadline();
+            recordLatency(wake - deadline, System.nanoTime() - deadline);
+            long lateFrames = pacer.getLateFrames();
+            pacer.awaitNextFrame();
+            if (metrics != null) {
+                metrics.recordFrame(gameBoy.getLastFrameNanos(), wake - deadline, pacer.getLateFrames() != lateFrames);
+            }
+        }
+    }
+
+    private void recordLatency(long wakeNanos, long frameNanos) {
+        framesRun++;
+        totalWakeLatencyNanos += wakeNanos;
+        maxWakeLatencyNanos = Math.max(maxWakeLatencyNanos, wakeNanos);
+        totalFrameLatencyNanos += frameNanos;
+        maxFrameLatencyNanos = Math.max(maxFrameLatencyNanos, frameNanos);
+    }
+
+    /**
+     * Ask the loop to exit after the current frame.
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Stop emulating after the current frame until {@link #resume()} is called.
+     */
+    public void pause() {
+        paused = true;
+    }
+
+    public void resume() {
+        paused = false;
+        LockSupport.unpark(thread);
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Also publish every frame to, and take joypad input from, a channel
+     * shared with other processes. Must be set before the loop starts.
+     */
+    public void setSharedChannel(SharedFrameChannel sharedChannel) {
+        this.sharedChannel = sharedChannel;
+    }
+
+    /**
+     * Record the joypad state of every frame into the given movie. Must be
+     * set before the loop starts, and the movie must only be read once the
+     * loop's thread has been joined.
+     */
+    public void setRecording(Movie recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * Record every frame into the given fleet metrics. Must be set before the loop starts.
+     */
+    public void setMetrics(FleetMetrics.Instance metrics) {
+        this.metrics = metrics;
+    }
+
+    public GameBoy getGameBoy() {
+        return gameBoy;
+    }
+
+    public FramePacer getPacer() {
+        return pacer;
+    }
+
+    public Joypad getJoypad() {
+        return joypad;
+    }
+
+    public long getFramesRun() {
+        return framesRun;
+    }
+
+    /**
+     * @return Mean time from a frame's deadline until the loop woke up to run it.
+     */
+    public double getMeanWakeLatencyNanos() {
+        return framesRun == 0 ? 0 : (double) totalWakeLatencyNanos / framesRun;
+    }
+
+    public long getMaxWakeLatencyNanos() {
+        return maxWakeLatencyNanos;
+    }
+
+    /**
+     * @return Mean time from a frame's deadline until that frame was finished and published.
+     */
+    public double getMeanFrameLatencyNanos() {
+        return framesRun == 0 ? 0 : (double) totalFrameLatencyNanos / framesRun;
+    }
+
+    public long getMaxFrameLatencyNanos() {
+        return maxFrameLatencyNanos;
+    }
+
+    /**
+     * @return Number of frames that were not finished by the time the next one was due.
+     */
+    public long getMissedDeadlines() {
+        return pacer.getLateFrames();
+    }
+
+}
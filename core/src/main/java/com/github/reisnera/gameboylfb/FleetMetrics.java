@@ -0,0 +1,201 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics for a fleet of emulator instances in one JVM, written out in the
+ * Prometheus text exposition format by {@link MetricsEndpoint}.
+ *
+ * Recording never makes emulation threads contend with each other. Fleet-wide
+ * counters are LongAdders, which stripe updates across cells. Everything
+ * per instance is only ever written by that instance's emulation thread, so
+ * it is kept in single-writer counters that are updated without
+ * compare-and-set. All of it is only summed up when a scrape asks for it.
+ */
+public class FleetMetrics {
+
+    static final String PREFIX = "gameboylfb_";
+
+    // Host time per frame. A frame is due every 16.7 ms at 1x.
+    private static final double[] FRAME_BUCKETS_SECONDS = {0.0005, 0.001, 0.002, 0.004, 0.008, 0.0167, 0.0334};
+    // Time from a frame's deadline until its thread woke up to run it
+    private static final double[] LAG_BUCKETS_SECONDS = {0.00005, 0.0001, 0.0005, 0.001, 0.002, 0.004, 0.008, 0.0167};
+
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder lateFrames = new LongAdder();
+    private final Map<String, Instance> instances = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param name Label identifying the instance; must be unique among registered instances.
+     */
+    public Instance register(String name) {
+        Instance instance = new Instance(this, name);
+        if (instances.putIfAbsent(name, instance) != null) {
+            throw new IllegalArgumentException("Instance already registered: " + name);
+        }
+        return instance;
+    }
+
+    public void unregister(Instance instance) {
+        instances.remove(instance.name, instance);
+    }
+
+    /**
+     * Write all metrics in the Prometheus text format, version 0.0.4.
+     */
+    public void write(Writer out) throws IOException {
+        header(out, "frames_total", "counter", "Frames emulated by all instances.");
+        sample(out, "frames_total", "", frames.sum());
+        header(out, "late_frames_total", "counter", "Frames not finished by the time the next one was due.");
+        sample(out, "late_frames_total", "", lateFrames.sum());
+        header(out, "instances", "gauge", "Registered emulator instances.");
+        sample(out, "instances", "", instances.size());
+
+        header(out, "frame_host_seconds", "histogram", "Host time taken to emulate a frame.");
+        for (Instance instance : instances.values()) {
+            instance.frameNanos.write(out, "frame_host_seconds", instance.label);
+        }
+        header(out, "scheduler_lag_seconds", "histogram", "Time from a frame's deadline until its thread woke up.");
+        for (Instance instance : instances.values()) {
+            instance.lagNanos.write(out, "scheduler_lag_seconds", instance.label);
+        }
+
+        com.sun.management.ThreadMXBean threads = threadBean();
+        if (threads != null) {
+            header(out, "allocated_bytes_total", "counter", "Heap allocated by the instance's emulation thread.");
+            for (Instance instance : instances.values()) {
+                long bytes = instance.threadId < 0 ? -1 : threads.getThreadAllocatedBytes(instance.threadId);
+                // Unknown for virtual threads and threads that have exited
+                if (bytes >= 0) {
+                    sample(out, "allocated_bytes_total", instance.label, bytes);
+                }
+            }
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled() ? threads : null;
+    }
+
+    private static void header(Writer out, String name, String type, String help) throws IOException {
+        out.write("# HELP " + PREFIX + name + " " + help + "\n");
+        out.write("# TYPE " + PREFIX + name + " " + type + "\n");
+    }
+
+    private static void sample(Writer out, String name, String labels, double value) throws IOException {
+        out.write(PREFIX + name + (labels.isEmpty() ? "" : "{" + labels + "}") + " " + format(value) + "\n");
+    }
+
+    private static String format(double value) {
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * The metrics of one emulator instance. Only the instance's emulation
+     * thread may record into it.
+     */
+    public static final class Instance {
+        private final FleetMetrics fleet;
+        private final String name;
+        private final String label;
+        private final Histogram frameNanos = new Histogram(FRAME_BUCKETS_SECONDS);
+        private final Histogram lagNanos = new Histogram(LAG_BUCKETS_SECONDS);
+        private volatile long threadId = -1;
+
+        private Instance(FleetMetrics fleet, String name) {
+            this.fleet = fleet;
+            this.name = name;
+            label = "instance=\"" + escape(name) + "\"";
+        }
+
+        /**
+         * @param hostNanos Host time the frame took to emulate.
+         * @param lagNanos How long after its deadline the frame was started.
+         * @param late Whether the frame was not finished by the time the next one was due.
+         */
+        public void recordFrame(long hostNanos, long lagNanos, boolean late) {
+            if (threadId < 0) {
+                threadId = Thread.currentThread().getId();
+            }
+            fleet.frames.increment();
+            if (late) {
+                fleet.lateFrames.increment();
+            }
+            frameNanos.record(hostNanos);
+            this.lagNanos.record(Math.max(lagNanos, 0));
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * A Prometheus histogram of durations with a single writer. Counts are
+     * per bucket here and only made cumulative when written.
+     */
+    private static final class Histogram {
+        private final double[] boundsSeconds;
+        private final long[] boundsNanos;
+        // One slot per bound plus one for +Inf
+        private final AtomicLongArray counts;
+        private final AtomicLong sumNanos = new AtomicLong();
+
+        Histogram(double[] boundsSeconds) {
+            this.boundsSeconds = boundsSeconds;
+            boundsNanos = new long[boundsSeconds.length];
+            for (int i = 0; i < boundsSeconds.length; i++) {
+                boundsNanos[i] = (long) (boundsSeconds[i] * 1e9);
+            }
+            counts = new AtomicLongArray(boundsSeconds.length + 1);
+        }
+
+        void record(long nanos) {
+            int bucket = 0;
+            while (bucket < boundsNanos.length && nanos > boundsNanos[bucket]) {
+                bucket++;
+            }
+            // Single writer, so a plain read-increment-publish is enough
+            counts.lazySet(bucket, counts.get(bucket) + 1);
+            sumNanos.lazySet(sumNanos.get() + nanos);
+        }
+
+        void write(Writer out, String name, String label) throws IOException {
+            long cumulative = 0;
+            for (int i = 0; i <= boundsSeconds.length; i++) {
+                cumulative += counts.get(i);
+                String le = i < boundsSeconds.length ? format(boundsSeconds[i]) : "+Inf";
+                sample(out, name + "_bucket", label + ",le=\"" + le + "\"", cumulative);
+            }
+            sample(out, name + "_sum", label, sumNanos.get() / 1e9);
+            sample(out, name + "_count", label, cumulative);
+        }
+    }
+
+}
@@ -0,0 +1,152 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder events for frames and save states.
+ *
+ * Nothing is allocated unless a recording has the event enabled, so the cost
+ * when not recording is a check of one flag per frame. On JVMs without JFR
+ * the jdk.jfr classes are never loaded and every method here does nothing.
+ * Events are passed around as Object for the same reason.
+ */
+final class FlightEvents {
+
+    static final boolean AVAILABLE = isAvailable();
+
+    private FlightEvents() {
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return false;
+        }
+    }
+
+    /**
+     * @return An event timing the frame about to run, or null if no recording wants one.
+     */
+    static Object beginFrame() {
+        return AVAILABLE ? Recorder.beginFrame() : null;
+    }
+
+    static void endFrame(Object event, long frame, long instructions, long cycles, long halts, long hostNanos) {
+        Recorder.endFrame(event, frame, instructions, cycles, halts, hostNanos);
+    }
+
+    /**
+     * @return An event timing a save or load about to happen, or null if no recording wants one.
+     */
+    static Object beginState() {
+        return AVAILABLE ? Recorder.beginState() : null;
+    }
+
+    static void endState(Object event, boolean save, int bytes) {
+        Recorder.endState(event, save, bytes);
+    }
+
+    /**
+     * Everything that touches jdk.jfr, so that it is only loaded once AVAILABLE has been checked.
+     */
+    private static final class Recorder {
+        private static final EventType FRAME = EventType.getEventType(FrameEvent.class);
+        private static final EventType STATE = EventType.getEventType(StateEvent.class);
+
+        static Object beginFrame() {
+            if (!FRAME.isEnabled()) {
+                return null;
+            }
+            FrameEvent event = new FrameEvent();
+            event.begin();
+            return event;
+        }
+
+        static void endFrame(Object event, long frame, long instructions, long cycles, long halts, long hostNanos) {
+            FrameEvent frameEvent = (FrameEvent) event;
+            frameEvent.end();
+            if (frameEvent.shouldCommit()) {
+                frameEvent.frame = frame;
+                frameEvent.instructions = instructions;
+                frameEvent.cycles = cycles;
+                frameEvent.halts = halts;
+                frameEvent.hostNanos = hostNanos;
+                frameEvent.commit();
+            }
+        }
+
+        static Object beginState() {
+            if (!STATE.isEnabled()) {
+                return null;
+            }
+            StateEvent event = new StateEvent();
+            event.begin();
+            return event;
+        }
+
+        static void endState(Object event, boolean save, int bytes) {
+            StateEvent stateEvent = (StateEvent) event;
+            stateEvent.end();
+            if (stateEvent.shouldCommit()) {
+                stateEvent.operation = save ? "save" : "load";
+                stateEvent.bytes = bytes;
+                stateEvent.commit();
+            }
+        }
+    }
+
+    @Name("com.github.reisnera.gameboylfb.Frame")
+    @Label("Emulated Frame")
+    @Category("Game Boy")
+    @Description("One emulated frame, from the first instruction until the PPU entered VBlank")
+    static final class FrameEvent extends Event {
+        @Label("Frame")
+        long frame;
+
+        @Label("Instructions")
+        long instructions;
+
+        @Label("Cycles")
+        @Description("Emulated CPU cycles")
+        long cycles;
+
+        @Label("HALT Instructions")
+        @Description("HALTs executed; the CPU does not idle on them yet, so none of their time is skipped")
+        long halts;
+
+        @Label("Host Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long hostNanos;
+    }
+
+    @Name("com.github.reisnera.gameboylfb.State")
+    @Label("Save State")
+    @Category("Game Boy")
+    @Description("A machine state saved or loaded")
+    static final class StateEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Size")
+        @DataAmount
+        int bytes;
+    }
+
+}
@@ -0,0 +1,197 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decides when the emulation thread may start its next frame. By default it
+ * runs at the DMG's own 59.73 Hz; it can also run at a fixed multiple of that
+ * rate or uncapped (turbo).
+ *
+ * Deadlines are computed from the time pacing (re)started rather than from
+ * the previous frame, so small wake-up errors never accumulate. Waiting parks
+ * the thread until shortly before the deadline and spins for the rest, since
+ * parkNanos alone commonly oversleeps by tens to hundreds of microseconds.
+ * Hosts running many sessions should turn the spin off, trading precision
+ * for CPU time.
+ * A pacer that falls more than a few frames behind drops the missed frames
+ * and restarts from the current time rather than running them back to back.
+ *
+ * The speed may be changed from any thread; everything else must be called
+ * from the emulation thread.
+ */
+public class FramePacer {
+
+    // By default park until this close to the deadline, then spin
+    private static final long DEFAULT_SPIN_NANOS = 500_000;
+    private static final int MAX_FRAMES_BEHIND = 4;
+
+    private final long spinNanos;
+
+    private volatile double speed = 1;
+    private double anchorSpeed;
+
+    private long anchorNanos;
+    private long anchorFrame;
+    private long frame;
+    private long deadline;
+
+    private long lateFrames;
+    private long droppedFrames;
+    private long lastLatenessNanos;
+    private long maxLatenessNanos;
+
+    public FramePacer() {
+        this(DEFAULT_SPIN_NANOS);
+    }
+
+    /**
+     * @param spinNanos How long before each deadline to stop parking and spin instead. 0 to only park.
+     */
+    public FramePacer(long spinNanos) {
+        this.spinNanos = spinNanos;
+        reset();
+    }
+
+    /**
+     * Run at the DMG's own frame rate.
+     */
+    public void setAccurate() {
+        speed = 1;
+    }
+
+    /**
+     * Run as fast as the host allows.
+     */
+    public void setTurbo() {
+        speed = 0;
+    }
+
+    /**
+     * @param ratio Multiple of the DMG's frame rate to run at, e.g. 2 for double speed.
+     */
+    public void setRatio(double ratio) {
+        if (!(ratio > 0)) {
+            throw new IllegalArgumentException("Ratio must be positive: " + ratio);
+        }
+        speed = ratio;
+    }
+
+    /**
+     * @return The speed as a multiple of the DMG's frame rate, or 0 for turbo.
+     */
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Restart pacing from now, e.g. after the emulation was paused.
+     */
+    public void reset() {
+        anchorNanos = System.nanoTime();
+        anchorFrame = frame;
+        anchorSpeed = speed;
+        deadline = anchorNanos;
+    }
+
+    /**
+     * Block until the next frame is due. Call once after every emulated frame.
+     */
+    public void awaitNextFrame() {
+        frame++;
+        double currentSpeed = speed;
+        if (currentSpeed != anchorSpeed) {
+            reset();
+        }
+        if (currentSpeed == 0) {
+            deadline = System.nanoTime();
+            return;
+        }
+
+        double periodNanos = 1e9 / (GameBoyCpu.VBLANK_FREQ_HZ * currentSpeed);
+        deadline = anchorNanos + (long) ((frame - anchorFrame) * periodNanos);
+
+        long now = System.nanoTime();
+        long remaining = deadline - now;
+        if (remaining < 0) {
+            lateFrames++;
+            lastLatenessNanos = -remaining;
+            maxLatenessNanos = Math.max(maxLatenessNanos, -remaining);
+            if (-remaining > MAX_FRAMES_BEHIND * periodNanos) {
+                long dropped = (long) (-remaining / periodNanos);
+                droppedFrames += dropped;
+                EmulationLog.log(LogMessage.FRAMES_DROPPED, dropped);
+                reset();
+            }
+            return;
+        }
+
+        while (remaining > spinNanos) {
+            LockSupport.parkNanos(this, remaining - spinNanos);
+            remaining = deadline - System.nanoTime();
+        }
+        while ((now = System.nanoTime()) < deadline) {
+            // Spin out the last stretch
+        }
+        lastLatenessNanos = now - deadline;
+        maxLatenessNanos = Math.max(maxLatenessNanos, lastLatenessNanos);
+    }
+
+    /**
+     * @return The time the current frame was due to start.
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * @return How far the current frame started after its deadline.
+     */
+    public long getLastLatenessNanos() {
+        return lastLatenessNanos;
+    }
+
+    public long getMaxLatenessNanos() {
+        return maxLatenessNanos;
+    }
+
+    /**
+     * @return Difference between the time actually elapsed since pacing last
+     *         (re)started and the time the frames run since then should have
+     *         taken. Stays near zero while the host keeps up.
+     */
+    public long getDriftNanos() {
+        double currentSpeed = anchorSpeed;
+        if (currentSpeed == 0) {
+            return 0;
+        }
+        long ideal = (long) ((frame - anchorFrame) * 1e9 / (GameBoyCpu.VBLANK_FREQ_HZ * currentSpeed));
+        return (System.nanoTime() - anchorNanos) - ideal;
+    }
+
+    /**
+     * @return Number of frames that were not finished by the time the next one was due.
+     */
+    public long getLateFrames() {
+        return lateFrames;
+    }
+
+    /**
+     * @return Number of frame slots skipped because emulation fell too far behind.
+     */
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public long getFrameCount() {
+        return frame;
+    }
+
+}
@@ -0,0 +1,72 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free triple buffer that hands finished frames from one producer thread
+ * to one consumer thread. The producer always has a back buffer to draw into
+ * and the consumer always has a front buffer to show; publishing and
+ * acquiring just swap indices with the middle buffer, so neither side ever
+ * waits for the other. Frames the consumer is too slow to pick up are
+ * overwritten by newer ones.
+ */
+public class FrameTripleBuffer {
+
+    private static final int INDEX_MASK = 0x3;
+    private static final int FRESH = 0x4;
+
+    private final byte[][] buffers;
+    // Index of the middle buffer, plus FRESH if it holds a frame the consumer hasn't seen
+    private final AtomicInteger middle = new AtomicInteger(1);
+    // Only touched by the producer
+    private int back = 0;
+    // Only touched by the consumer
+    private int front = 2;
+
+    public FrameTripleBuffer(int frameSize) {
+        buffers = new byte[3][frameSize];
+    }
+
+    /**
+     * Producer side.
+     * @return The buffer to write the next frame into.
+     */
+    public byte[] getBackBuffer() {
+        return buffers[back];
+    }
+
+    /**
+     * Producer side. Make the back buffer the newest frame and take over the old middle buffer as the new back buffer.
+     */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * Consumer side.
+     * @return Whether a frame has been published since the last {@link #acquire()}.
+     */
+    public boolean hasNewFrame() {
+        return (middle.get() & FRESH) != 0;
+    }
+
+    /**
+     * Consumer side. Swap in the newest published frame, if there is one.
+     * @return The newest frame. It stays valid and unchanged until the next call.
+     */
+    public byte[] acquire() {
+        if (hasNewFrame()) {
+            front = middle.getAndSet(front) & INDEX_MASK;
+        }
+        return buffers[front];
+    }
+
+}
@@ -0,0 +1,259 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A complete emulated Game Boy: the cartridge ROM plus the memory, CPU and PPU
+ * that run it. Instances are independent of each other, so any number of them
+ * may be stepped from different threads as long as each one is only used by
+ * a single thread at a time.
+ */
+public class GameBoy {
+
+    private static final int STATE_MAGIC = 0x47425354; // "GBST"
+    private static final int STATE_VERSION = 3;
+    private static final int STATE_HEADER_SIZE = 4 + 4 + 8;
+    // The state ends with a CRC-32 of everything before it
+    private static final int STATE_CHECKSUM_SIZE = 4;
+    private static final int STATE_SIZE = STATE_HEADER_SIZE + 8 + 8
+            + GameBoyCpu.STATE_SIZE + GameBoyPpu.STATE_SIZE + GameBoyMemory.STATE_SIZE + STATE_CHECKSUM_SIZE;
+
+    private final GameBoyRom rom;
+    private final GameBoyMemory mem;
+    private final GameBoyCpu cpu;
+    private final GameBoyPpu ppu;
+
+    private long lastFrameNanos;
+    private long instructionCount;
+    private long cycleCount;
+    private TraceRecorder trace;
+
+    public GameBoy(GameBoyRom rom) throws IOException, MemoryBadDmgRomException {
+        this(rom, new GameBoyMemory(rom));
+    }
+
+    public GameBoy(GameBoyRom rom, byte[] dmgRom) throws MemoryBadDmgRomException {
+        this(rom, new GameBoyMemory(rom, dmgRom));
+    }
+
+    GameBoy(GameBoyRom rom, GameBoyMemory mem) {
+        this(rom, mem, new GameBoyCpu(mem), new GameBoyPpu(mem));
+    }
+
+    private GameBoy(GameBoyRom rom, GameBoyMemory mem, GameBoyCpu cpu, GameBoyPpu ppu) {
+        this.rom = rom;
+        this.mem = mem;
+        this.cpu = cpu;
+        this.ppu = ppu;
+    }
+
+    /**
+     * Fork this Game Boy into an independent child that starts from exactly
+     * the current state. Memory is shared copy-on-write (see
+     * {@link GameBoyMemory#fork()}), so a fork costs little more than its
+     * page table and frame buffer and can be discarded by simply dropping the
+     * reference to it.
+     */
+    public GameBoy fork() {
+        GameBoyMemory forkedMem = mem.fork();
+        GameBoy child = new GameBoy(rom, forkedMem, cpu.fork(forkedMem), ppu.fork(forkedMem));
+        child.instructionCount = instructionCount;
+        child.cycleCount = cycleCount;
+        return child;
+    }
+
+    /**
+     * Serialize the complete machine state. Unlike {@link #fork()} the result
+     * can be stored or sent to another process, and it can be loaded into any
+     * instance running the same ROM.
+     */
+    public byte[] saveState() {
+        Object event = FlightEvents.beginState();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(0x10000);
+        CheckedOutputStream checked = new CheckedOutputStream(bytes, new CRC32());
+        try (DataOutputStream out = new DataOutputStream(checked)) {
+            out.writeInt(STATE_MAGIC);
+            out.writeInt(STATE_VERSION);
+            out.writeLong(rom.getCrc32());
+            out.writeLong(instructionCount);
+            out.writeLong(cycleCount);
+            cpu.saveState(out);
+            ppu.saveState(out);
+            mem.saveState(out);
+            out.writeInt((int) checked.getChecksum().getValue());
+        } catch (IOException ex) {
+            // Writing to a byte array cannot fail
+            throw new UncheckedIOException(ex);
+        }
+        byte[] state = bytes.toByteArray();
+        if (event != null) {
+            FlightEvents.endState(event, true, state.length);
+        }
+        return state;
+    }
+
+    /**
+     * Replace the machine state with one from {@link #saveState()}.
+     * @throws StateInvalidException If the state is malformed, truncated or corrupt, or was saved from a
+     *         different ROM. The whole state is checked before the machine is changed, so on failure the
+     *         machine is left exactly as it was.
+     */
+    public void loadState(byte[] state) throws StateInvalidException {
+        Object event = FlightEvents.beginState();
+        ByteBuffer header = ByteBuffer.wrap(state);
+        if (state.length < STATE_HEADER_SIZE || header.getInt(0) != STATE_MAGIC
+                || header.getInt(4) != STATE_VERSION) {
+            throw new StateInvalidException("Not a version " + STATE_VERSION + " save state.");
+        }
+        int bodyLength = STATE_SIZE - STATE_CHECKSUM_SIZE;
+        CRC32 checksum = new CRC32();
+        checksum.update(state, 0, Math.min(state.length, bodyLength));
+        if (state.length != STATE_SIZE || header.getInt(bodyLength) != (int) checksum.getValue()) {
+            throw new StateInvalidException("Save state is truncated or corrupt.");
+        }
+        if (header.getLong(8) != rom.getCrc32()) {
+            throw new StateInvalidException("Save state is for a different ROM.");
+        }
+
+        // From here on the state is known to be complete, so decoding it cannot fail halfway
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(state, STATE_HEADER_SIZE, bodyLength - STATE_HEADER_SIZE))) {
+            instructionCount = in.readLong();
+            cycleCount = in.readLong();
+            cpu.loadState(in);
+            ppu.loadState(in);
+            mem.loadState(in);
+        } catch (IOException ex) {
+            // Reading a byte array of the right length cannot fail
+            throw new UncheckedIOException(ex);
+        }
+        if (event != null) {
+            FlightEvents.endState(event, false, state.length);
+        }
+    }
+
+    /**
+     * Execute a single instruction and advance the PPU by the cycles it took.
+     */
+    public void step() {
+        advance(execute());
+    }
+
+    /**
+     * First half of {@link #step()}: execute the next instruction without advancing the PPU.
+     * @return CPU cycles the instruction took.
+     */
+    int execute() {
+        if (trace != null) {
+            trace.record(cpu, mem, cycleCount);
+        }
+        int start = cpu.getCycleCounter();
+        cpu.getAndProcessNextOpcode();
+        return cpu.getCycleCounter() - start;
+    }
+
+    /**
+     * Second half of {@link #step()}: advance the PPU by the cycles the instruction took.
+     */
+    void advance(int cycles) {
+        ppu.step(cycles);
+        instructionCount++;
+        cycleCount += cycles;
+    }
+
+    /**
+     * Execute instructions until at least the given number of CPU cycles have
+     * elapsed.
+     */
+    public void runCycles(int cycles) {
+        int start = cpu.getCycleCounter();
+        while (cpu.getCycleCounter() - start < cycles) {
+            step();
+        }
+    }
+
+    /**
+     * Execute instructions until the PPU finishes the current frame, i.e.
+     * until it next enters VBlank. The finished frame is then available from
+     * {@link GameBoyPpu#getFrameBuffer()}.
+     */
+    public void runFrame() {
+        Object event = FlightEvents.beginFrame();
+        long start = System.nanoTime();
+        long frame = ppu.getFrameCount();
+        long instructions = instructionCount;
+        long cycles = cycleCount;
+        long halts = cpu.getHaltCount();
+        while (ppu.getFrameCount() == frame) {
+            step();
+        }
+        lastFrameNanos = System.nanoTime() - start;
+        if (event != null) {
+            FlightEvents.endFrame(event, frame, instructionCount - instructions, cycleCount - cycles,
+                    cpu.getHaltCount() - halts, lastFrameNanos);
+        }
+    }
+
+    /**
+     * @return Host nanoseconds taken by the last {@link #runFrame()}, CPU and rendering combined.
+     */
+    public long getLastFrameNanos() {
+        return lastFrameNanos;
+    }
+
+    /**
+     * @return Total number of instructions executed by this instance.
+     */
+    public long getInstructionCount() {
+        return instructionCount;
+    }
+
+    /**
+     * @return Total number of CPU cycles executed by this instance. Unlike the CPU's own counter this never wraps.
+     */
+    public long getCycleCount() {
+        return cycleCount;
+    }
+
+    // Getters
+
+    /**
+     * Record every instruction executed from now on into the given trace, or stop recording if null.
+     */
+    public void setTrace(TraceRecorder trace) {
+        this.trace = trace;
+    }
+
+    public GameBoyRom getRom() {
+        return rom;
+    }
+
+    public GameBoyMemory getMemory() {
+        return mem;
+    }
+
+    public GameBoyCpu getCpu() {
+        return cpu;
+    }
+
+    public GameBoyPpu getPpu() {
+        return ppu;
+    }
+
+}
@@ -0,0 +1,234 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs a list of ROMs headless, one after the other and as fast as the host
+ * allows, then reports each one's emulated speed. This is the standard
+ * throughput regression gate for the core.
+ *
+ * Usage: GameBoyBatchRunner [--frames N] [--json FILE|-] ROM[=INPUT]...
+ *
+ * Input is either a {@link Movie} (files ending in .gbm), which also sets
+ * the starting point, or an {@link InputScript}. With --json the results
+ * are also written as JSON, to stdout if FILE is "-".
+ */
+public class GameBoyBatchRunner {
+
+    private static final int DEFAULT_FRAMES = 3600;
+
+    /**
+     * Outcome of running one ROM.
+     */
+    static class Result {
+        String romFile;
+        String title;
+        int frames;
+        long instructions;
+        long cycles;
+        long nanos;
+        // Growth of the heap pools' peak usage over the run. The pools count
+        // garbage until it is collected, so this reflects allocation as well
+        // as live data.
+        long peakHeapBytes;
+        String error;
+
+        double getEmulatedMhz() {
+            return nanos == 0 ? 0 : cycles * 1000.0 / nanos;
+        }
+
+        double getFramesPerSecond() {
+            return nanos == 0 ? 0 : frames * 1e9 / nanos;
+        }
+
+        double getNanosPerInstruction() {
+            return instructions == 0 ? 0 : (double) nanos / instructions;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int frames = DEFAULT_FRAMES;
+        String jsonFile = null;
+        List<String> roms = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--frames")) {
+                frames = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--json")) {
+                jsonFile = args[++i];
+            } else {
+                roms.add(args[i]);
+            }
+        }
+
+        if (roms.isEmpty()) {
+            System.err.println("Usage: GameBoyBatchRunner [--frames N] [--json FILE|-] ROM[=INPUT]...");
+            System.exit(2);
+        }
+
+        List<Result> results = runAll(new RomCache(), roms, frames);
+
+        printTable(System.out, results);
+
+        if (jsonFile != null) {
+            String json = toJson(results);
+            if (jsonFile.equals("-")) {
+                System.out.println(json);
+            } else {
+                Files.write(Paths.get(jsonFile), json.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        for (Result result : results) {
+            if (result.error != null) {
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Run every ROM in turn.
+     * @param roms ROM files, each optionally followed by "=" and an input file.
+     * @return One result per ROM, in order.
+     */
+    static List<Result> runAll(RomCache romCache, List<String> roms, int frames) {
+        List<Result> results = new ArrayList<>();
+        for (String rom : roms) {
+            int split = rom.indexOf('=');
+            String romFile = split < 0 ? rom : rom.substring(0, split);
+            String inputFile = split < 0 ? null : rom.substring(split + 1);
+            results.add(run(romCache, romFile, inputFile, frames));
+        }
+        return results;
+    }
+
+    /**
+     * Run one ROM. Any failure, including an unreadable ROM or input file, is
+     * reported in the result rather than thrown, so that the rest of the
+     * batch still runs.
+     * @param inputFile A {@link Movie} (.gbm) or {@link InputScript} file, or null.
+     */
+    static Result run(RomCache romCache, String romFile, String inputFile, int frames) {
+        Result result = new Result();
+        result.romFile = romFile;
+
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        long baselineHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+                baselineHeap += pool.getUsage().getUsed();
+            }
+        }
+
+        long start = System.nanoTime();
+        GameBoy gameBoy = null;
+        try {
+            Movie movie = null;
+            InputScript input = null;
+            if (inputFile != null && inputFile.endsWith(".gbm")) {
+                movie = Movie.read(Paths.get(inputFile));
+            } else if (inputFile != null) {
+                input = new InputScript(inputFile);
+            }
+            gameBoy = romCache.newGameBoy(romFile);
+            result.title = gameBoy.getRom().getHeaderGameTitle().trim();
+            if (movie != null) {
+                movie.begin(gameBoy);
+            }
+            start = System.nanoTime();
+
+            for (int frame = 0; frame < frames; frame++) {
+                if (input != null) {
+                    gameBoy.getMemory().setJoypadState(input.buttonsAt(frame));
+                } else if (movie != null) {
+                    gameBoy.getMemory().setJoypadState(movie.buttonsAt(frame));
+                }
+                gameBoy.runFrame();
+                result.frames++;
+            }
+        } catch (IOException ex) {
+            result.error = ex.toString();
+        } catch (RomInvalidFileException | MemoryBadDmgRomException | MovieInvalidException
+                | CpuUnimplementedOpcodeException | IllegalArgumentException ex) {
+            result.error = ex.getMessage();
+        }
+
+        result.nanos = System.nanoTime() - start;
+        if (gameBoy != null) {
+            result.instructions = gameBoy.getInstructionCount();
+            result.cycles = gameBoy.getCycleCount();
+        }
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+        result.peakHeapBytes = Math.max(0, peakHeap - baselineHeap);
+        return result;
+    }
+
+    private static void printTable(PrintStream out, List<Result> results) {
+        out.println(String.format(Locale.ROOT, "%-24s %8s %9s %9s %9s %11s", "ROM", "frames", "MHz", "fps",
+                "ns/instr", "peak heap"));
+        for (Result result : results) {
+            out.println(String.format(Locale.ROOT, "%-24s %8d %9.2f %9.1f %9.2f %9d kB%s", result.romFile,
+                    result.frames, result.getEmulatedMhz(), result.getFramesPerSecond(),
+                    result.getNanosPerInstruction(), result.peakHeapBytes / 1024,
+                    result.error == null ? "" : "  FAILED: " + result.error));
+        }
+    }
+
+    static String toJson(List<Result> results) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append(String.format(Locale.ROOT,
+                    "  {\"rom\": %s, \"title\": %s, \"frames\": %d, \"instructions\": %d, \"cycles\": %d, "
+                            + "\"nanos\": %d, \"emulatedMhz\": %.4f, \"fps\": %.2f, \"nsPerInstruction\": %.3f, "
+                            + "\"peakHeapBytes\": %d, \"error\": %s}",
+                    jsonString(result.romFile), jsonString(result.title), result.frames, result.instructions,
+                    result.cycles, result.nanos, result.getEmulatedMhz(), result.getFramesPerSecond(),
+                    result.getNanosPerInstruction(), result.peakHeapBytes, jsonString(result.error)));
+        }
+        return json.append("\n]").toString();
+    }
+
+    private static String jsonString(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+}
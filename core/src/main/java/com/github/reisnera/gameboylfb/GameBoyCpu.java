@@ -8,13 +8,11 @@
 
 package com.github.reisnera.gameboylfb;
 
-import java.util.function.IntConsumer;
-import java.util.function.IntSupplier;
-import java.util.logging.Logger;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 public class GameBoyCpu {
-    private static final Logger LOG = Logger.getLogger(GameBoyCpu.class.getName());
-
     public static final int MASK_HALF_BYTE = 0xF;
     public static final int MASK_HIGH_NIBBLE = 0xF0;
     public static final int MASK_BYTE = 0xFF;
@@ -22,21 +20,68 @@ public class GameBoyCpu {
     public static final int MASK_WORD = 0xFFFF;
     public static final int MASK_HIGH_BYTE = 0xFF00;
 
-    private static final int CLOCK_FREQ_HZ = 4194304;
-    private static final double VBLANK_FREQ_HZ = 59.73;
-    private static final int CPU_CYCLES_PER_VBLANK = (int) (CLOCK_FREQ_HZ / VBLANK_FREQ_HZ);
+    static final int CLOCK_FREQ_HZ = 4194304;
+    static final double VBLANK_FREQ_HZ = 59.73;
+    static final int CPU_CYCLES_PER_VBLANK = (int) (CLOCK_FREQ_HZ / VBLANK_FREQ_HZ);
+    static final long NANOS_PER_VBLANK = (long) (1e9 / VBLANK_FREQ_HZ);
 
     private GameBoyMemory mem;
     CpuRegisters reg = new CpuRegisters();
     private boolean interruptMasterEnableFlag; // TODO: initial value?
+    private final CpuProfiler profiler = CpuProfiler.ENABLED ? new CpuProfiler() : null;
 
     private int cycleCounter;
+    private long haltCount;
 
     public GameBoyCpu(GameBoyMemory memory) {
         this.mem = memory;
         initialize();
     }
 
+    /**
+     * Fork constructor. Copies the complete CPU state of parent but runs
+     * against the given (normally forked) memory.
+     */
+    private GameBoyCpu(GameBoyCpu parent, GameBoyMemory memory) {
+        this.mem = memory;
+        reg.setAF(parent.reg.getAF());
+        reg.setBC(parent.reg.getBC());
+        reg.setDE(parent.reg.getDE());
+        reg.setHL(parent.reg.getHL());
+        reg.setSP(parent.reg.getSP());
+        reg.setPC(parent.reg.getPC());
+        interruptMasterEnableFlag = parent.interruptMasterEnableFlag;
+        cycleCounter = parent.cycleCounter;
+        haltCount = parent.haltCount;
+    }
+
+    // Bytes written by saveState
+    static final int STATE_SIZE = 6 * 2 + 1 + 4 + 8;
+
+    void saveState(DataOutput out) throws IOException {
+        out.writeShort(reg.getAF());
+        out.writeShort(reg.getBC());
+        out.writeShort(reg.getDE());
+        out.writeShort(reg.getHL());
+        out.writeShort(reg.getSP());
+        out.writeShort(reg.getPC());
+        out.writeBoolean(interruptMasterEnableFlag);
+        out.writeInt(cycleCounter);
+        out.writeLong(haltCount);
+    }
+
+    void loadState(DataInput in) throws IOException {
+        reg.setAF(in.readUnsignedShort());
+        reg.setBC(in.readUnsignedShort());
+        reg.setDE(in.readUnsignedShort());
+        reg.setHL(in.readUnsignedShort());
+        reg.setSP(in.readUnsignedShort());
+        reg.setPC(in.readUnsignedShort());
+        interruptMasterEnableFlag = in.readBoolean();
+        cycleCounter = in.readInt();
+        haltCount = in.readLong();
+    }
+
     private void initialize() {
         // These magic numbers are the initialization values of the GB.
         reg.setAF(0x01B0);
@@ -47,6 +92,31 @@ public class GameBoyCpu {
         reg.setPC(0);
     }
 
+    /**
+     * @return A copy of this CPU that executes against forkedMemory. The copy shares no state with this CPU.
+     */
+    public GameBoyCpu fork(GameBoyMemory forkedMemory) {
+        return new GameBoyCpu(this, forkedMemory);
+    }
+
+    /**
+     * @return This CPU's profiler, or null unless CpuProfiler.ENABLED.
+     */
+    public CpuProfiler getProfiler() {
+        return profiler;
+    }
+
+    public int getCycleCounter() {
+        return cycleCounter;
+    }
+
+    /**
+     * @return Number of HALT instructions executed.
+     */
+    public long getHaltCount() {
+        return haltCount;
+    }
+
     public boolean isReadyForVblank() {
         if (cycleCounter > CPU_CYCLES_PER_VBLANK)
             return true;
@@ -63,7 +133,15 @@ public class GameBoyCpu {
         opcode = mem.readByte(reg.getThenIncPC());
         cycleCounter += 0; // how many cycles does fetch take?????????
 
-        processOpcode(opcode);
+        if (CpuProfiler.ENABLED) {
+            int cbOpcode = opcode == 0xCB ? mem.readByte(reg.getPC()) : 0;
+            int startCycles = cycleCounter;
+            profiler.countOpcode((reg.getPC() - 1) & MASK_WORD, opcode, cbOpcode);
+            processOpcode(opcode);
+            profiler.addCycles(opcode, cbOpcode, cycleCounter - startCycles);
+        } else {
+            processOpcode(opcode);
+        }
 
         // TODO: update timers/counters, update input/output "ports", interrupt
         // flags, LCD, sound ?
@@ -862,6 +940,7 @@ public class GameBoyCpu {
 
             case 0x76: // HALT : 1,4
                 // TODO: Figure out how to implement
+                haltCount++;
                 cycleCounter += 4;
                 break;
 
@@ -911,249 +990,248 @@ public class GameBoyCpu {
                 break;
 
             case 0x80: // ADD A,B : 1,4 : Z 0 H C
-                addByteToByte(reg::getA, reg::setA, reg::getB, false);
+                addByteToA(reg.getB(), false);
                 cycleCounter += 4;
                 break;
 
             case 0x81: // ADD A,C : 1,4 : Z 0 H C
-                addByteToByte(reg::getA, reg::setA, reg::getC, false);
+                addByteToA(reg.getC(), false);
                 cycleCounter += 4;
                 break;
 
             case 0x82: // ADD A,D : 1,4 : Z 0 H C
-                addByteToByte(reg::getA, reg::setA, reg::getD, false);
+                addByteToA(reg.getD(), false);
                 cycleCounter += 4;
                 break;
 
             case 0x83: // ADD A,E : 1,4 : Z 0 H C
-                addByteToByte(reg::getA, reg::setA, reg::getE, false);
+                addByteToA(reg.getE(), false);
                 cycleCounter += 4;
                 break;
 
             case 0x84: // ADD A,H : 1,4 : Z 0 H C
-                addByteToByte(reg::getA, reg::setA, reg::getH, false);
+                addByteToA(reg.getH(), false);
                 cycleCounter += 4;
                 break;
 
             case 0x85: // ADD A,L : 1,4 : Z 0 H C
-                addByteToByte(reg::getA, reg::setA, reg::getL, false);
+                addByteToA(reg.getL(), false);
                 cycleCounter += 4;
                 break;
 
             case 0x87: // ADD A,A : 1,4 : Z 0 H C
-                addByteToByte(reg::getA, reg::setA, reg::getA, false);
+                addByteToA(reg.getA(), false);
                 cycleCounter += 4;
                 break;
 
             case 0x88: // ADC A,B : 1,4 : Z 0 H C
-                addByteToByte(reg::getA, reg::setA, reg::getB, true);
+                addByteToA(reg.getB(), true);
                 cycleCounter += 4;
                 break;
 
             case 0x89: // ADC A,C : 1,4 : Z 0 H C
-                addByteToByte(reg::getA, reg::setA, reg::getC, true);
+                addByteToA(reg.getC(), true);
                 cycleCounter += 4;
                 break;
 
             case 0x8A: // ADC A,D : 1,4 : Z 0 H C
-                addByteToByte(reg::getA, reg::setA, reg::getD, true);
+                addByteToA(reg.getD(), true);
                 cycleCounter += 4;
                 break;
 
             case 0x8B: // ADC A,E : 1,4 : Z 0 H C
-                addByteToByte(reg::getA, reg::setA, reg::getE, true);
+                addByteToA(reg.getE(), true);
                 cycleCounter += 4;
                 break;
 
             case 0x8C: // ADC A,H : 1,4 : Z 0 H C
-                addByteToByte(reg::getA, reg::setA, reg::getH, true);
+                addByteToA(reg.getH(), true);
                 cycleCounter += 4;
                 break;
 
             case 0x8D: // ADC A,L : 1,4 : Z 0 H C
-                addByteToByte(reg::getA, reg::setA, reg::getL, true);
+                addByteToA(reg.getL(), true);
                 cycleCounter += 4;
                 break;
 
             case 0x8F: // ADC A,A : 1,4 : Z 0 H C
-                addByteToByte(reg::getA, reg::setA, reg::getA, true);
+                addByteToA(reg.getA(), true);
                 cycleCounter += 4;
                 break;
 
             case 0x90: // SUB B : 1,4 : Z 1 H C
-                subtractByteFromByte(reg::getA, reg::setA, reg::getB, false);
+                subtractByteFromA(reg.getB(), false);
                 cycleCounter += 4;
                 break;
 
             case 0x91: // SUB C : 1,4 : Z 1 H C
-                subtractByteFromByte(reg::getA, reg::setA, reg::getC, false);
+                subtractByteFromA(reg.getC(), false);
                 cycleCounter += 4;
                 break;
 
             case 0x92: // SUB D : 1,4 : Z 1 H C
-                subtractByteFromByte(reg::getA, reg::setA, reg::getD, false);
+                subtractByteFromA(reg.getD(), false);
                 cycleCounter += 4;
                 break;
 
             case 0x93: // SUB E : 1,4 : Z 1 H C
-                subtractByteFromByte(reg::getA, reg::setA, reg::getE, false);
+                subtractByteFromA(reg.getE(), false);
                 cycleCounter += 4;
                 break;
 
             case 0x94: // SUB H : 1,4 : Z 1 H C
-                subtractByteFromByte(reg::getA, reg::setA, reg::getH, false);
+                subtractByteFromA(reg.getH(), false);
                 cycleCounter += 4;
                 break;
 
             case 0x95: // SUB L : 1,4 : Z 1 H C
-                subtractByteFromByte(reg::getA, reg::setA, reg::getL, false);
+                subtractByteFromA(reg.getL(), false);
                 cycleCounter += 4;
                 break;
 
             case 0x97: // SUB A : 1,4 : Z 1 H C
-                subtractByteFromByte(reg::getA, reg::setA, reg::getA, false);
+                subtractByteFromA(reg.getA(), false);
                 cycleCounter += 4;
                 break;
 
             case 0x98: // SBC A,B : 1,4 : Z 1 H C
-                subtractByteFromByte(reg::getA, reg::setA, reg::getB, true);
+                subtractByteFromA(reg.getB(), true);
                 cycleCounter += 4;
                 break;
 
             case 0x99: // SBC A,C : 1,4 : Z 1 H C
-                subtractByteFromByte(reg::getA, reg::setA, reg::getC, true);
+                subtractByteFromA(reg.getC(), true);
                 cycleCounter += 4;
                 break;
 
             case 0x9A: // SBC A,D : 1,4 : Z 1 H C
-                subtractByteFromByte(reg::getA, reg::setA, reg::getD, true);
+                subtractByteFromA(reg.getD(), true);
                 cycleCounter += 4;
                 break;
 
             case 0x9B: // SBC A,E : 1,4 : Z 1 H C
-                subtractByteFromByte(reg::getA, reg::setA, reg::getE, true);
+                subtractByteFromA(reg.getE(), true);
                 cycleCounter += 4;
                 break;
 
             case 0x9C: // SBC A,H : 1,4 : Z 1 H C
-                subtractByteFromByte(reg::getA, reg::setA, reg::getH, true);
+                subtractByteFromA(reg.getH(), true);
                 cycleCounter += 4;
                 break;
 
             case 0x9D: // SBC A,L : 1,4 : Z 1 H C
-                subtractByteFromByte(reg::getA, reg::setA, reg::getL, true);
+                subtractByteFromA(reg.getL(), true);
                 cycleCounter += 4;
                 break;
 
             case 0x9F: // SBC A,A : 1,4 : Z 1 H C
-                subtractByteFromByte(reg::getA, reg::setA, reg::getA, true);
+                subtractByteFromA(reg.getA(), true);
                 cycleCounter += 4;
                 break;
 
             case 0xA0: // AND B : 1,4 : Z 0 1 0
-                bitwiseAndByteWithAccumulator(reg::getB, 4);
+                bitwiseAndByteWithAccumulator(reg.getB(), 4);
                 break;
 
             case 0xA1: // AND C : 1,4 : Z 0 1 0
-                bitwiseAndByteWithAccumulator(reg::getC, 4);
+                bitwiseAndByteWithAccumulator(reg.getC(), 4);
                 break;
 
             case 0xA2: // AND D : 1,4 : Z 0 1 0
-                bitwiseAndByteWithAccumulator(reg::getD, 4);
+                bitwiseAndByteWithAccumulator(reg.getD(), 4);
                 break;
 
             case 0xA3: // AND E : 1,4 : Z 0 1 0
-                bitwiseAndByteWithAccumulator(reg::getE, 4);
+                bitwiseAndByteWithAccumulator(reg.getE(), 4);
                 break;
 
             case 0xA4: // AND H : 1,4 : Z 0 1 0
-                bitwiseAndByteWithAccumulator(reg::getH, 4);
+                bitwiseAndByteWithAccumulator(reg.getH(), 4);
                 break;
 
             case 0xA5: // AND L : 1,4 : Z 0 1 0
-                bitwiseAndByteWithAccumulator(reg::getL, 4);
+                bitwiseAndByteWithAccumulator(reg.getL(), 4);
                 break;
 
             case 0xA6: // AND (HL) : 1,8 : Z 0 1 0
-                bitwiseAndByteWithAccumulator(() -> mem.readByte(reg.getHL()), 8);
+                bitwiseAndByteWithAccumulator(mem.readByte(reg.getHL()), 8);
                 break;
 
             case 0xA7: // AND A : 1,4 : Z 0 1 0
-                bitwiseAndByteWithAccumulator(reg::getA, 4);
+                bitwiseAndByteWithAccumulator(reg.getA(), 4);
                 break;
 
             case 0xA8: // XOR B : 1,4 : Z 0 0 0
-                bitwiseXorByteWithAccumulator(reg::getB, 4);
+                bitwiseXorByteWithAccumulator(reg.getB(), 4);
                 break;
 
             case 0xA9: // XOR C : 1,4 : Z 0 0 0
-                bitwiseXorByteWithAccumulator(reg::getC, 4);
+                bitwiseXorByteWithAccumulator(reg.getC(), 4);
                 break;
 
             case 0xAA: // XOR D : 1,4 : Z 0 0 0
-                bitwiseXorByteWithAccumulator(reg::getD, 4);
+                bitwiseXorByteWithAccumulator(reg.getD(), 4);
                 break;
 
             case 0xAB: // XOR E : 1,4 : Z 0 0 0
-                bitwiseXorByteWithAccumulator(reg::getE, 4);
+                bitwiseXorByteWithAccumulator(reg.getE(), 4);
                 break;
 
             case 0xAC: // XOR H : 1,4 : Z 0 0 0
-                bitwiseXorByteWithAccumulator(reg::getH, 4);
+                bitwiseXorByteWithAccumulator(reg.getH(), 4);
                 break;
 
             case 0xAD: // XOR L : 1,4 : Z 0 0 0
-                bitwiseXorByteWithAccumulator(reg::getL, 4);
+                bitwiseXorByteWithAccumulator(reg.getL(), 4);
                 break;
 
             case 0xAE: // XOR (HL) : 1,8 : Z 0 0 0
-                bitwiseXorByteWithAccumulator(() -> mem.readByte(reg.getHL()), 8);
+                bitwiseXorByteWithAccumulator(mem.readByte(reg.getHL()), 8);
                 break;
 
             case 0xAF: // XOR A : 1,4 : Z 0 0 0
-                bitwiseXorByteWithAccumulator(reg::getA, 4);
+                bitwiseXorByteWithAccumulator(reg.getA(), 4);
                 break;
 
             case 0xB0: // OR B : 1,4 : Z 0 0 0
-                orByteWithA(reg::getB);
+                orByteWithA(reg.getB());
                 break;
 
             case 0xB1: // OR C : 1,4 : Z 0 0 0
-                orByteWithA(reg::getC);
+                orByteWithA(reg.getC());
                 break;
 
             case 0xB2: // OR D : 1,4 : Z 0 0 0
-                orByteWithA(reg::getD);
+                orByteWithA(reg.getD());
                 break;
 
             case 0xB3: // OR E : 1,4 : Z 0 0 0
-                orByteWithA(reg::getE);
+                orByteWithA(reg.getE());
                 break;
 
             case 0xB4: // OR H : 1,4 : Z 0 0 0
-                orByteWithA(reg::getH);
+                orByteWithA(reg.getH());
                 break;
 
             case 0xB5: // OR L : 1,4 : Z 0 0 0
-                orByteWithA(reg::getL);
+                orByteWithA(reg.getL());
                 break;
 
             case 0xB6: // OR (HL) : 1,8 : Z 0 0 0
-                orByteWithA(() -> mem.readWord(reg.getHL()));
+                orByteWithA(mem.readByte(reg.getHL()));
                 // add 4 cycles for memory load to 4 cycles for OR
                 cycleCounter += 4;
                 break;
 
             case 0xB7: // OR A : 1,4 : Z 0 0 0
-                orByteWithA(reg::getA);
+                orByteWithA(reg.getA());
                 break;
 
             case 0xC0: // RET NZ : 1,20/8
                 if (reg.isSetZ()) {
                     cycleCounter += 8;
                 } else {
-                    reg.setPC(mem.readWord(reg.getSP()));
-                    reg.incSP(2);
+                    retHelper();
                     cycleCounter += 20;
                 }
                 break;
@@ -1184,9 +1262,7 @@ public class GameBoyCpu {
                 if (reg.isSetZ()) {
                     cycleCounter += 12;
                 } else {
-                    reg.decSP(2);
-                    mem.writeWord(reg.getPC(), reg.getSP());
-                    reg.setPC(tempAddr);
+                    callHelper(tempAddr);
                     cycleCounter += 24;
                 }
                 break;
@@ -1215,8 +1291,7 @@ public class GameBoyCpu {
 
             case 0xC8: // RET Z : 1,20/8
                 if (reg.isSetZ()) {
-                    reg.setPC(mem.readWord(reg.getSP()));
-                    reg.incSP(2);
+                    retHelper();
                     cycleCounter += 20;
                 } else {
                     cycleCounter += 8;
@@ -1224,8 +1299,7 @@ public class GameBoyCpu {
                 break;
 
             case 0xC9: // RET : 1,16
-                reg.setPC(mem.readWord(reg.getSP()));
-                reg.incSP(2);
+                retHelper();
                 cycleCounter += 16;
                 break;
 
@@ -1244,9 +1318,7 @@ public class GameBoyCpu {
             case 0xCC: // CALL Z,a16 : 3,24/12
                 tempAddr = mem.readWord(reg.getThenIncPC(2));
                 if (reg.isSetZ()) {
-                    reg.decSP(2);
-                    mem.writeWord(reg.getPC(), reg.getSP());
-                    reg.setPC(tempAddr);
+                    callHelper(tempAddr);
                     cycleCounter += 24;
                 } else {
                     cycleCounter += 12;
@@ -1255,14 +1327,12 @@ public class GameBoyCpu {
 
             case 0xCD: // CALL a16 : 3,24
                 tempAddr = mem.readWord(reg.getThenIncPC(2));
-                reg.decSP(2);
-                mem.writeWord(reg.getPC(), reg.getSP());
-                reg.setPC(tempAddr);
+                callHelper(tempAddr);
                 cycleCounter += 24;
                 break;
 
             case 0xCE: // ADC A,d8 : 2,8 : Z 0 H C
-                addByteToByte(reg::getA, reg::setA, () -> mem.readByte(reg.getPC()), true);
+                addByteToA(mem.readByte(reg.getPC()), true);
                 reg.incPC(1);
                 cycleCounter += 8;
                 break;
@@ -1275,8 +1345,7 @@ public class GameBoyCpu {
                 if (reg.isSetCy()) {
                     cycleCounter += 8;
                 } else {
-                    reg.setPC(mem.readWord(reg.getSP()));
-                    reg.incSP(2);
+                    retHelper();
                     cycleCounter += 20;
                 }
                 break;
@@ -1304,9 +1373,7 @@ public class GameBoyCpu {
                 if (reg.isSetCy()) {
                     cycleCounter += 12;
                 } else {
-                    reg.decSP(2);
-                    mem.writeWord(reg.getPC(), reg.getSP());
-                    reg.setPC(tempAddr);
+                    callHelper(tempAddr);
                     cycleCounter += 24;
                 }
                 break;
@@ -1335,8 +1402,7 @@ public class GameBoyCpu {
 
             case 0xD8: // RET C : 1,20/8
                 if (reg.isSetCy()) {
-                    reg.setPC(mem.readWord(reg.getSP()));
-                    reg.incSP(2);
+                    retHelper();
                     cycleCounter += 20;
                 } else {
                     cycleCounter += 8;
@@ -1344,8 +1410,7 @@ public class GameBoyCpu {
                 break;
 
             case 0xD9: // RETI : 1,16
-                reg.setPC(mem.readWord(reg.getSP()));
-                reg.incSP(2);
+                retHelper();
                 cycleCounter += 16;
                 interruptMasterEnableFlag = true;
                 break;
@@ -1363,9 +1428,7 @@ public class GameBoyCpu {
             case 0xDC: // CALL C,a16 : 3,24/12
                 tempAddr = mem.readWord(reg.getThenIncPC(2));
                 if (reg.isSetCy()) {
-                    reg.decSP(2);
-                    mem.writeWord(reg.getPC(), reg.getSP());
-                    reg.setPC(tempAddr);
+                    callHelper(tempAddr);
                     cycleCounter += 24;
                 } else {
                     cycleCounter += 12;
@@ -1373,7 +1436,7 @@ public class GameBoyCpu {
                 break;
 
             case 0xDE: // SBC A,d8 : 2,8
-                subtractByteFromByte(reg::getA, reg::setA, () -> mem.readByte(reg.getPC()), true);
+                subtractByteFromA(mem.readByte(reg.getPC()), true);
                 reg.incPC(1);
                 cycleCounter += 8;
                 break;
@@ -1407,7 +1470,7 @@ public class GameBoyCpu {
                 break;
 
             case 0xE6: // AND d8 : 2,8 : Z 0 1 0
-                bitwiseAndByteWithAccumulator(() -> mem.readByte(reg.getPC()), 8);
+                bitwiseAndByteWithAccumulator(mem.readByte(reg.getPC()), 8);
                 reg.incPC(1);
                 break;
 
@@ -1433,7 +1496,7 @@ public class GameBoyCpu {
                 break;
 
             case 0xEE: // XOR d8 : 2,8 : Z 0 0 0
-                bitwiseXorByteWithAccumulator(() -> mem.readByte(reg.getPC()), 8);
+                bitwiseXorByteWithAccumulator(mem.readByte(reg.getPC()), 8);
                 reg.incPC(1);
                 break;
 
@@ -1525,9 +1588,8 @@ public class GameBoyCpu {
                 break;
 
             default: // Unimplemented opcode
-                LOG.severe("Opcode " + Integer.toHexString(opcode) + " is not implemented.");
-                System.exit(1);
-                break;
+                EmulationLog.log(LogMessage.UNIMPLEMENTED_OPCODE, opcode, (reg.getPC() - 1) & MASK_WORD);
+                throw new CpuUnimplementedOpcodeException(opcode);
         }
     }
 
@@ -1593,10 +1655,10 @@ public class GameBoyCpu {
 
     /**
      * // OR [byte] : 1,4 : Z 0 0 0
-     * @param getSrc Byte register getter to compare with A
+     * @param src Byte to OR with A
      */
-    private void orByteWithA(IntSupplier getSrc) {
-        reg.setA(reg.getA() | getSrc.getAsInt());
+    private void orByteWithA(int src) {
+        reg.setA(reg.getA() | src);
         // flags
         checkForZero(reg.getA());
         reg.clearFlagN();
@@ -1606,60 +1668,56 @@ public class GameBoyCpu {
     }
 
     /**
-     * ADD [byte],[byte] : 1,4 : Z 0 H C
-     * ADC [byte],[byte] : 1,4 : Z 0 H C
-     * @param getDest Byte register getter
-     * @param setDest Byte register setter
-     * @param getSrc Byte register getter
+     * ADD A,[byte] : 1,4 : Z 0 H C
+     * ADC A,[byte] : 1,4 : Z 0 H C
+     * @param src Byte to add to A
      * @param withCarry Whether to add with carry
      */
-    private void addByteToByte(IntSupplier getDest, IntConsumer setDest, IntSupplier getSrc, boolean withCarry) {
-        int priorValue = getDest.getAsInt();
+    private void addByteToA(int src, boolean withCarry) {
+        int priorValue = reg.getA();
         int carryModifier = 0;
 
         if (withCarry && reg.isSetCy()) {
             carryModifier = 1;
         }
 
-        setDest.accept(priorValue + getSrc.getAsInt() + carryModifier);
+        reg.setA(priorValue + src + carryModifier);
         // Flags
-        checkForZero(getDest.getAsInt());
+        checkForZero(reg.getA());
         reg.clearFlagN();
-        checkAddForHalfCarry(priorValue, getDest.getAsInt(), MASK_HALF_BYTE);
-        checkAddForCarry(priorValue, getDest.getAsInt());
+        checkAddForHalfCarry(priorValue, reg.getA(), MASK_HALF_BYTE);
+        checkAddForCarry(priorValue, reg.getA());
     }
 
     /**
-     * SUB [byte],[byte] : 1,4 : Z 1 H C
-     * SBC [byte],[byte] : 1,4 : Z 1 H C
-     * @param getDest Byte register getter
-     * @param setDest Byte register setter
-     * @param getSrc Byte register getter
+     * SUB [byte] : 1,4 : Z 1 H C
+     * SBC A,[byte] : 1,4 : Z 1 H C
+     * @param src Byte to subtract from A
      * @param withCarry Whether to subtract with carry
      */
-    private void subtractByteFromByte(IntSupplier getDest, IntConsumer setDest, IntSupplier getSrc, boolean withCarry) {
-        int priorValue = getDest.getAsInt();
+    private void subtractByteFromA(int src, boolean withCarry) {
+        int priorValue = reg.getA();
         int carryModifier = 0;
 
         if (withCarry && reg.isSetCy()) {
             carryModifier = 1;
         }
 
-        setDest.accept(priorValue - getSrc.getAsInt() - carryModifier);
+        reg.setA(priorValue - src - carryModifier);
         // Flags
-        checkForZero(getDest.getAsInt());
+        checkForZero(reg.getA());
         reg.setFlagN();
-        checkSubForHalfCarry(priorValue, getDest.getAsInt(), MASK_HALF_BYTE);
-        checkSubForCarry(priorValue, getDest.getAsInt());
+        checkSubForHalfCarry(priorValue, reg.getA(), MASK_HALF_BYTE);
+        checkSubForCarry(priorValue, reg.getA());
     }
 
     /**
      * AND [8-bit register or immediate] : _ : Z 0 1 0
-     * @param byteGetter Method reference or lambda that supplies 1 byte.
+     * @param src Byte to combine with A.
      * @param cycles Number of cycles required for this operation.
      */
-    private void bitwiseAndByteWithAccumulator(IntSupplier byteGetter, int cycles) {
-        reg.setA(reg.getA() & byteGetter.getAsInt());
+    private void bitwiseAndByteWithAccumulator(int src, int cycles) {
+        reg.setA(reg.getA() & src);
         cycleCounter += cycles;
         // Flags
         checkForZero(reg.getA());
@@ -1670,11 +1728,11 @@ public class GameBoyCpu {
 
     /**
      * XOR [8-bit register or immediate] : _ : Z 0 0 0
-     * @param byteGetter Method reference or lambda that supplies 1 byte.
+     * @param src Byte to combine with A.
      * @param cycles Number of cycles required for this operation.
      */
-    private void bitwiseXorByteWithAccumulator(IntSupplier byteGetter, int cycles) {
-        reg.setA(reg.getA() ^ byteGetter.getAsInt());
+    private void bitwiseXorByteWithAccumulator(int src, int cycles) {
+        reg.setA(reg.getA() ^ src);
         cycleCounter += cycles;
         // Flags
         checkForZero(reg.getA());
@@ -1688,10 +1746,31 @@ public class GameBoyCpu {
      * Note that the immediate is not actually an additional byte in the program.
      */
     private void rstHelper(int dest8) {
+        callHelper(dest8);
+        cycleCounter += 16; // TODO: find out if this is actually 32... sources disagree
+    }
+
+    /**
+     * Push PC and jump, as CALL and RST do. Cycles are left to the caller.
+     */
+    private void callHelper(int dest16) {
         reg.decSP(2);
         mem.writeWord(reg.getPC(), reg.getSP());
-        reg.setPC(dest8);
-        cycleCounter += 16; // TODO: find out if this is actually 32... sources disagree
+        reg.setPC(dest16);
+        if (CpuProfiler.ENABLED) {
+            profiler.enterCall(dest16, reg.getSP());
+        }
+    }
+
+    /**
+     * Pop PC, as RET and RETI do. Cycles are left to the caller.
+     */
+    private void retHelper() {
+        if (CpuProfiler.ENABLED) {
+            profiler.exitCall(reg.getSP());
+        }
+        reg.setPC(mem.readWord(reg.getSP()));
+        reg.incSP(2);
     }
 
     /**
@@ -0,0 +1,207 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs many independent Game Boy instances on a work-stealing ForkJoinPool.
+ * Each task advances one instance by one frame and then forks the task for
+ * that instance's next frame, so instances never wait on each other and idle
+ * workers steal frames from busy ones. Instances share nothing but their
+ * (read-only) ROM images, which lets throughput scale with the number of
+ * cores.
+ *
+ * Usage: GameBoyExecutor [rom file] [instances] [frames]
+ */
+public class GameBoyExecutor {
+
+    private static final Logger LOG = Logger.getLogger(GameBoyExecutor.class.getName());
+
+    private final ForkJoinPool pool;
+    private final List<GameBoy> instances = new ArrayList<>();
+    private final List<RuntimeException> failures = new ArrayList<>();
+
+    private long framesRun;
+    private long lastRunFrames;
+    private long lastRunNanos;
+
+    public GameBoyExecutor() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public GameBoyExecutor(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Add an instance. It must not be used elsewhere while the executor runs.
+     * @return The index of the instance within this executor.
+     */
+    public int add(GameBoy gameBoy) {
+        instances.add(gameBoy);
+        failures.add(null);
+        return instances.size() - 1;
+    }
+
+    /**
+     * Advance every instance by the given number of frames and block until
+     * all of them are done. An instance that throws is reported through
+     * {@link #getFailure(int)} and is not advanced any further, in this run
+     * or later ones; the others carry on.
+     */
+    public void runFrames(int frames) {
+        int[] completed = new int[instances.size()];
+        long start = System.nanoTime();
+        if (frames > 0 && !instances.isEmpty()) {
+            pool.invoke(new RunAll(frames, completed));
+        }
+        lastRunNanos = System.nanoTime() - start;
+
+        lastRunFrames = 0;
+        for (int count : completed) {
+            lastRunFrames += count;
+        }
+        framesRun += lastRunFrames;
+    }
+
+    /**
+     * Root task. Completes once every instance's chain of frame tasks has.
+     */
+    private class RunAll extends CountedCompleter<Void> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int frames;
+        private final int[] completed;
+
+        RunAll(int frames, int[] completed) {
+            this.frames = frames;
+            this.completed = completed;
+        }
+
+        @Override
+        public void compute() {
+            for (int i = 0; i < instances.size(); i++) {
+                if (failures.get(i) == null) {
+                    addToPendingCount(1);
+                    new RunFrame(this, i, frames, completed).fork();
+                }
+            }
+            tryComplete();
+        }
+    }
+
+    /**
+     * Runs one frame of one instance. Successive frames of the same instance
+     * are ordered by fork(), so each instance is only ever touched by one
+     * thread at a time.
+     */
+    private class RunFrame extends CountedCompleter<Void> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int index;
+        private final int remaining;
+        private final int[] completed;
+
+        RunFrame(CountedCompleter<?> root, int index, int remaining, int[] completed) {
+            super(root);
+            this.index = index;
+            this.remaining = remaining;
+            this.completed = completed;
+        }
+
+        @Override
+        public void compute() {
+            try {
+                instances.get(index).runFrame();
+                completed[index]++;
+                if (remaining > 1) {
+                    getCompleter().addToPendingCount(1);
+                    new RunFrame(getCompleter(), index, remaining - 1, completed).fork();
+                }
+            } catch (RuntimeException ex) {
+                LOG.log(Level.WARNING, "Instance " + index + " failed", ex);
+                // Each index is only written by its own chain of tasks
+                failures.set(index, ex);
+            }
+            tryComplete();
+        }
+    }
+
+    public int getInstanceCount() {
+        return instances.size();
+    }
+
+    public GameBoy getInstance(int index) {
+        return instances.get(index);
+    }
+
+    /**
+     * @return The exception that stopped the given instance, or null if it is still running.
+     */
+    public RuntimeException getFailure(int index) {
+        return failures.get(index);
+    }
+
+    /**
+     * @return Total frames run over all instances since this executor was created.
+     */
+    public long getFramesRun() {
+        return framesRun;
+    }
+
+    /**
+     * @return Frames completed per second by all instances together during the last {@link #runFrames(int)}.
+     */
+    public double getAggregateFramesPerSecond() {
+        return lastRunNanos == 0 ? 0 : lastRunFrames * 1e9 / lastRunNanos;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String romFile = args.length > 0 ? args[0] : "Alleyway.gb";
+        int instanceCount = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int frames = args.length > 2 ? Integer.parseInt(args[2]) : 600;
+
+        RomCache romCache = new RomCache();
+        int cores = Runtime.getRuntime().availableProcessors();
+        double singleThreadFps = 0;
+
+        // Double the worker count up to the number of cores to show how throughput scales
+        for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            GameBoyExecutor executor = new GameBoyExecutor(pool);
+            for (int i = 0; i < instanceCount; i++) {
+                executor.add(romCache.newGameBoy(romFile));
+            }
+
+            executor.runFrames(frames / 10); // warm up
+            executor.runFrames(frames);
+            pool.shutdown();
+
+            double fps = executor.getAggregateFramesPerSecond();
+            if (threads == 1) {
+                singleThreadFps = fps;
+            }
+            System.out.println(String.format("%3d threads: %10.1f fps aggregate (%.2fx, %.0f%% efficiency)",
+                    threads, fps, fps / singleThreadFps, 100.0 * fps / singleThreadFps / threads));
+
+            if (threads == cores) {
+                break;
+            }
+        }
+    }
+
+}
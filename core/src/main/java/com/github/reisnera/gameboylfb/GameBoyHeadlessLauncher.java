@@ -0,0 +1,65 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.nio.file.Paths;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a ROM for a fixed number of frames without opening a window. Only the
+ * core is needed on the classpath; no LWJGL classes or native libraries are
+ * loaded.
+ *
+ * Usage: GameBoyHeadlessLauncher [rom file] [frames] [trace file]
+ *
+ * With a trace file every instruction is recorded as a binary trace, which
+ * GameBoyTraceDecoder prints as text.
+ */
+public class GameBoyHeadlessLauncher {
+    private static final Logger LOG = Logger.getLogger(GameBoyHeadlessLauncher.class.getName());
+
+    public static void main(String[] args) throws Exception {
+        String romFile = args.length > 0 ? args[0] : "Alleyway.gb";
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 600;
+
+        GameBoy gameBoy;
+        try {
+            gameBoy = new GameBoy(new GameBoyRom(romFile));
+        } catch (Exception ex) {
+            LOG.log(Level.SEVERE, ex.toString(), ex);
+            throw new Exception(ex);
+        }
+
+        System.out.println(gameBoy.getRom().getHeaderGameTitle());
+
+        TraceRecorder trace = null;
+        if (args.length > 2) {
+            trace = new TraceRecorder(Paths.get(args[2]));
+            gameBoy.setTrace(trace);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            gameBoy.runFrame();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        if (trace != null) {
+            trace.close();
+            System.out.println(String.format("Traced %d instructions to %s", trace.getRecordCount(), args[2]));
+        }
+
+        System.out.println(String.format("Ran %d frames in %.1f ms", frames, elapsed / 1e6));
+
+        if (CpuProfiler.ENABLED) {
+            gameBoy.getCpu().getProfiler().writeReports(System.out);
+        }
+    }
+}
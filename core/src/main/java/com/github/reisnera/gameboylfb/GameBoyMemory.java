@@ -0,0 +1,339 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+//import java.util.logging.Logger;
+
+public class GameBoyMemory {
+
+    // private static final Logger log = Logger.getLogger("Main Log");
+
+    // The address space is split into pages so that forked instances can
+    // share any page that neither side has written to since the fork.
+    private static final int PAGE_SHIFT = 8;
+    static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int PAGE_COUNT = 0x10000 >>> PAGE_SHIFT;
+    private static final int ROM_PAGE_COUNT = 0x8000 >>> PAGE_SHIFT;
+    // Every page that has not been written yet, shared by all instances
+    private static final byte[] ZERO_PAGE = new byte[PAGE_SIZE];
+
+    private static final int ADDR_VRAM_END = 0xA000;
+    private static final int ADDR_P1 = 0xFF00;
+    private static final int ADDR_IF = 0xFF0F;
+
+    private static final int P1_SELECT_DIRECTIONS = 0x10;
+    private static final int P1_SELECT_BUTTONS = 0x20;
+    private static final int INT_JOYPAD = 0x10;
+
+    private GameBoyRom rom;
+    private byte[][] pages;
+    private boolean[] pageShared = new boolean[PAGE_COUNT];
+    private TileCache tileCache;
+    // Incremented on every write to VRAM (0x8000-0x9FFF)
+    private int vramVersion;
+    // Held buttons as Joypad.BUTTON_ masks
+    private int joypadState;
+
+    public GameBoyMemory(GameBoyRom rom) throws IOException, MemoryBadDmgRomException {
+        this(rom, Files.readAllBytes(Paths.get("DMG_ROM.bin")));
+    }
+
+    public GameBoyMemory(GameBoyRom rom, byte[] dmgRom) throws MemoryBadDmgRomException {
+        this.rom = rom;
+        this.tileCache = new TileCache(this);
+
+        if (dmgRom.length != 256) {
+            throw new MemoryBadDmgRomException("Invalid DMG ROM length.");
+        }
+
+        // Start with every page shared, so that an instance only allocates
+        // the pages it writes to. The cart ROM pages are shared with every
+        // other instance running the same ROM.
+        pages = new byte[PAGE_COUNT][];
+        Arrays.fill(pages, ZERO_PAGE);
+        System.arraycopy(rom.getPages(), 0, pages, 0, ROM_PAGE_COUNT);
+        Arrays.fill(pageShared, true);
+        // Copy the DMG ROM over the first 256 bytes of memory
+        copyIn(dmgRom, 0, 0, 256);
+
+        initialize();
+    }
+
+    /**
+     * Fork constructor. The child starts out sharing every page with its
+     * parent; see {@link #fork()}.
+     */
+    private GameBoyMemory(GameBoyMemory parent) {
+        this.rom = parent.rom;
+        this.pages = parent.pages.clone();
+        this.tileCache = parent.tileCache.fork(this);
+        this.vramVersion = parent.vramVersion;
+        this.joypadState = parent.joypadState;
+        Arrays.fill(this.pageShared, true);
+        Arrays.fill(parent.pageShared, true);
+    }
+
+    private void initialize() {
+        storeByte(0x00, 0xFF05); // TIMA
+        storeByte(0x00, 0xFF06); // TMA
+        storeByte(0x00, 0xFF07); // TAC
+        storeByte(0x80, 0xFF10); // NR10
+        storeByte(0xBF, 0xFF11); // NR11
+        storeByte(0xF3, 0xFF12); // NR12
+        storeByte(0xBF, 0xFF14); // NR14
+        storeByte(0x3F, 0xFF16); // NR21
+        storeByte(0x00, 0xFF17); // NR22
+        storeByte(0xBF, 0xFF19); // NR24
+        storeByte(0x7F, 0xFF1A); // NR30
+        storeByte(0xFF, 0xFF1B); // NR31
+        storeByte(0x9F, 0xFF1C); // NR32
+        storeByte(0xBF, 0xFF1E); // NR33
+        storeByte(0xFF, 0xFF20); // NR41
+        storeByte(0x00, 0xFF21); // NR42
+        storeByte(0x00, 0xFF22); // NR43
+        storeByte(0xBF, 0xFF23); // NR30
+        storeByte(0x77, 0xFF24); // NR50
+        storeByte(0xF3, 0xFF25); // NR51
+        storeByte(0xF1, 0xFF26); // NR52
+        storeByte(0x91, 0xFF40); // LCDC
+        storeByte(0x00, 0xFF42); // SCY
+        storeByte(0x00, 0xFF43); // SCX
+        storeByte(0x00, 0xFF45); // LYC
+        storeByte(0xFC, 0xFF47); // BGP
+        storeByte(0xFF, 0xFF48); // OBP0
+        storeByte(0xFF, 0xFF49); // OBP1
+        storeByte(0x00, 0xFF4A); // WY
+        storeByte(0x00, 0xFF4B); // WX
+        storeByte(0x00, 0xFFFF); // IE
+    }
+
+    public void disableDmgRom() {
+        // Map the first 256 bytes of the cart ROM back over the DMG ROM
+        pages[0] = rom.getPages()[0];
+        pageShared[0] = true;
+    }
+
+    /**
+     * Create a copy-on-write child of this memory. Parent and child share all
+     * pages until one of them writes to a page, at which point only that page
+     * is copied for the writer. A fork therefore costs a page table rather
+     * than the full 64kB address space, and a discarded fork only holds on to
+     * the pages it actually wrote.
+     *
+     * Neither this memory nor any of its forks may be running on another
+     * thread while the fork is taken.
+     */
+    public GameBoyMemory fork() {
+        return new GameBoyMemory(this);
+    }
+
+    /**
+     * @return Bytes of address space this instance holds a private copy of,
+     *         i.e. pages written since it was created or forked.
+     */
+    public int getPrivateBytes() {
+        int bytes = 0;
+        for (boolean shared : pageShared) {
+            if (!shared) {
+                bytes += PAGE_SIZE;
+            }
+        }
+        return bytes;
+    }
+
+    public int readByte(int addr) {
+        return peekByte(addr);
+    }
+
+    /**
+     * Read a byte the way the CPU would, but as an observer: subclasses that
+     * watch accesses do not see it. For tracing and other tooling.
+     */
+    final int peekByte(int addr) {
+        if (addr >= 0xE000) {
+            // Take into account the mirrored RAM area
+            if (addr < 0xFE00) {
+                addr -= 0x2000;
+            } else if (addr == ADDR_P1) {
+                return readJoypad();
+            }
+        }
+        return pages[addr >>> PAGE_SHIFT][addr & PAGE_MASK] & GameBoyCpu.MASK_BYTE;
+    }
+
+    /**
+     * Read word (two bytes) of little-endian data.
+     */
+    public int readWord(int addr) {
+        int low, high;
+        // Read both bytes and bitwise AND with byte mask to prevent sign
+        // extension with int conversion.
+        low = readByte(addr) & GameBoyCpu.MASK_BYTE;
+        high = (readByte(addr + 1) & GameBoyCpu.MASK_BYTE) << 8;
+        return (high | low);
+    }
+
+    public void writeByte(int data8, int addr) {
+        if (addr < 0x8000) {
+            // Attempted write to ROM, which will do nothing.
+            // At least not until implementing switched memory banks...
+        } else if (addr >= 0xE000 && addr < 0xFE00) {
+            // Take into account the mirrored RAM area
+            addr -= 0x2000;
+            storeByte(data8, addr);
+        } else {
+            if (addr < ADDR_VRAM_END) {
+                vramVersion++;
+                if (addr < TileCache.ADDR_TILE_DATA_END) {
+                    tileCache.invalidate(addr);
+                }
+            }
+            storeByte(data8, addr);
+        }
+    }
+
+    /**
+     * Set the buttons currently held down. Newly pressed buttons request the joypad interrupt.
+     * @param buttons Combination of Joypad.BUTTON_ masks.
+     */
+    public void setJoypadState(int buttons) {
+        if ((buttons & ~joypadState) != 0) {
+            storeByte(readByte(ADDR_IF) | INT_JOYPAD, ADDR_IF);
+        }
+        joypadState = buttons;
+    }
+
+    /**
+     * P1 reads back the button group(s) selected by bits 4 and 5, with 0 meaning pressed.
+     */
+    private int readJoypad() {
+        int select = pages[ADDR_P1 >>> PAGE_SHIFT][ADDR_P1 & PAGE_MASK] & (P1_SELECT_DIRECTIONS | P1_SELECT_BUTTONS);
+        int pressed = 0;
+        if ((select & P1_SELECT_DIRECTIONS) == 0) {
+            pressed |= joypadState & 0x0F;
+        }
+        if ((select & P1_SELECT_BUTTONS) == 0) {
+            pressed |= joypadState >>> 4;
+        }
+        return 0xC0 | select | (~pressed & 0x0F);
+    }
+
+    // Bytes written by saveState
+    static final int STATE_SIZE = 4 + 1 + PAGE_SIZE + (PAGE_COUNT - ROM_PAGE_COUNT) * PAGE_SIZE;
+
+    /**
+     * Write every RAM and I/O byte plus the joypad state. ROM pages are not
+     * written, except for the first page while the DMG ROM is mapped over it.
+     */
+    void saveState(DataOutput out) throws IOException {
+        out.writeInt(joypadState);
+        out.writeBoolean(pages[0] != rom.getPages()[0]);
+        out.write(pages[0]);
+        for (int page = ROM_PAGE_COUNT; page < PAGE_COUNT; page++) {
+            out.write(pages[page]);
+        }
+    }
+
+    void loadState(DataInput in) throws IOException {
+        joypadState = in.readInt();
+        boolean dmgRomMapped = in.readBoolean();
+        byte[] page = new byte[PAGE_SIZE];
+        in.readFully(page);
+        if (dmgRomMapped) {
+            loadPage(0, page);
+        } else {
+            disableDmgRom();
+        }
+        for (int index = ROM_PAGE_COUNT; index < PAGE_COUNT; index++) {
+            in.readFully(page);
+            loadPage(index, page);
+        }
+        // Rather than restoring the saved counter, move on from the current
+        // one so that nothing cached against an old version can match.
+        vramVersion++;
+        tileCache.invalidateAll();
+    }
+
+    /**
+     * @return Decoded tile data, kept in step with writes to 0x8000-0x97FF.
+     */
+    TileCache getTileCache() {
+        return tileCache;
+    }
+
+    /**
+     * @return A counter that changes whenever tile data or a tile map is written.
+     */
+    int getVramVersion() {
+        return vramVersion;
+    }
+
+    /**
+     * Write word (two bytes) of little-endian data.
+     */
+    public void writeWord(int data16, int addr) {
+        int lowByte = data16 & GameBoyCpu.MASK_BYTE;
+        int highByte = (data16 & GameBoyCpu.MASK_HIGH_BYTE) >>> 8;
+        writeByte(lowByte, addr);
+        writeByte(highByte, addr + 1);
+    }
+
+    private void storeByte(int data8, int addr) {
+        int page = addr >>> PAGE_SHIFT;
+        if (pageShared[page]) {
+            unsharePage(page);
+        }
+        pages[page][addr & PAGE_MASK] = (byte) data8;
+    }
+
+    private void copyIn(byte[] src, int srcPos, int addr, int length) {
+        while (length > 0) {
+            int page = addr >>> PAGE_SHIFT;
+            int offset = addr & PAGE_MASK;
+            int count = Math.min(length, PAGE_SIZE - offset);
+            if (pageShared[page]) {
+                unsharePage(page);
+            }
+            System.arraycopy(src, srcPos, pages[page], offset, count);
+            srcPos += count;
+            addr += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Give a page the loaded contents without giving up sharing needlessly:
+     * a page that already holds them stays as it is, shared or not, and an
+     * all zero page goes back to the shared ZERO_PAGE.
+     */
+    private void loadPage(int page, byte[] data) {
+        if (Arrays.equals(pages[page], data)) {
+            return;
+        }
+        if (Arrays.equals(data, ZERO_PAGE)) {
+            pages[page] = ZERO_PAGE;
+            pageShared[page] = true;
+            return;
+        }
+        copyIn(data, 0, page << PAGE_SHIFT, PAGE_SIZE);
+    }
+
+    private void unsharePage(int page) {
+        pages[page] = pages[page].clone();
+        pageShared[page] = false;
+    }
+
+}
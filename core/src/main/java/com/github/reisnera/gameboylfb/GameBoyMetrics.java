@@ -0,0 +1,155 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Publishes the metrics of one {@link EmulationLoop} as a platform MBean
+ * named com.github.reisnera.gameboylfb:type=GameBoy,name=NAME.
+ *
+ * Nothing is collected on the emulation thread; every attribute is read from
+ * the counters the loop, pacer and GameBoy already keep. Those are plain
+ * fields, so a read may be a frame out of date. Rates are computed from two
+ * snapshots of the counters, refreshed on the first read after a window has
+ * passed, so they stay meaningful however often monitoring tools poll.
+ */
+public class GameBoyMetrics implements GameBoyMetricsMXBean, AutoCloseable {
+
+    public static final String DOMAIN = "com.github.reisnera.gameboylfb";
+
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+
+    private final EmulationLoop loop;
+    private final ObjectName name;
+
+    private Snapshot previous;
+    private Snapshot current;
+
+    /**
+     * Register a loop's metrics with the platform MBean server.
+     * @param name Distinguishes this instance from others in the same JVM.
+     */
+    public static GameBoyMetrics register(EmulationLoop loop, String name) throws JMException {
+        GameBoyMetrics metrics = new GameBoyMetrics(loop, new ObjectName(DOMAIN + ":type=GameBoy,name=" + ObjectName.quote(name)));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, metrics.name);
+        return metrics;
+    }
+
+    private GameBoyMetrics(EmulationLoop loop, ObjectName name) {
+        this.loop = loop;
+        this.name = name;
+        current = new Snapshot(loop.getGameBoy());
+        previous = current;
+    }
+
+    public ObjectName getObjectName() {
+        return name;
+    }
+
+    /**
+     * @return The two snapshots rates are computed between, the newer one last.
+     */
+    private synchronized Snapshot[] window() {
+        long now = System.nanoTime();
+        if (now - current.nanos >= WINDOW_NANOS) {
+            previous = current;
+            current = new Snapshot(loop.getGameBoy());
+        }
+        return new Snapshot[] {previous, current};
+    }
+
+    @Override
+    public double getEmulatedSpeed() {
+        Snapshot[] window = window();
+        return window[1].rate(window[1].cycles - window[0].cycles, window[0]) / GameBoyCpu.CLOCK_FREQ_HZ;
+    }
+
+    @Override
+    public double getFramesPerSecond() {
+        Snapshot[] window = window();
+        return window[1].rate(window[1].frames - window[0].frames, window[0]);
+    }
+
+    @Override
+    public long getFramesRun() {
+        return loop.getGameBoy().getPpu().getFrameCount();
+    }
+
+    @Override
+    public long getInstructionCount() {
+        return loop.getGameBoy().getInstructionCount();
+    }
+
+    @Override
+    public long getCycleCount() {
+        return loop.getGameBoy().getCycleCount();
+    }
+
+    @Override
+    public long getLateFrames() {
+        return loop.getPacer().getLateFrames();
+    }
+
+    @Override
+    public long getDroppedFrames() {
+        return loop.getPacer().getDroppedFrames();
+    }
+
+    @Override
+    public long getMaxLatenessNanos() {
+        return loop.getPacer().getMaxLatenessNanos();
+    }
+
+    @Override
+    public double getSpeedSetting() {
+        return loop.getPacer().getSpeed();
+    }
+
+    @Override
+    public boolean isPaused() {
+        return loop.isPaused();
+    }
+
+    @Override
+    public long getPrivateMemoryBytes() {
+        return loop.getGameBoy().getMemory().getPrivateBytes();
+    }
+
+    /**
+     * Unregister the MBean.
+     */
+    @Override
+    public void close() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    }
+
+    private static final class Snapshot {
+        final long nanos = System.nanoTime();
+        final long frames;
+        final long cycles;
+
+        Snapshot(GameBoy gameBoy) {
+            frames = gameBoy.getPpu().getFrameCount();
+            cycles = gameBoy.getCycleCount();
+        }
+
+        /**
+         * @return Per second rate of a count accumulated since an older snapshot.
+         */
+        double rate(long count, Snapshot since) {
+            long nanos = this.nanos - since.nanos;
+            return nanos == 0 ? 0 : count * 1e9 / nanos;
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+/**
+ * Live performance metrics of one emulator instance, as seen over JMX.
+ * Rates are averaged over the last complete sampling window of about a
+ * second.
+ */
+public interface GameBoyMetricsMXBean {
+
+    /**
+     * @return Emulated CPU speed as a multiple of the DMG's 4.19 MHz clock.
+     */
+    double getEmulatedSpeed();
+
+    double getFramesPerSecond();
+
+    long getFramesRun();
+
+    long getInstructionCount();
+
+    long getCycleCount();
+
+    /**
+     * @return Frames that were not finished by the time the next one was due.
+     */
+    long getLateFrames();
+
+    long getDroppedFrames();
+
+    long getMaxLatenessNanos();
+
+    /**
+     * @return Pacing speed as a multiple of the DMG's frame rate, or 0 for turbo.
+     */
+    double getSpeedSetting();
+
+    boolean isPaused();
+
+    /**
+     * @return Bytes of emulated memory this instance does not share with others.
+     */
+    long getPrivateMemoryBytes();
+
+}
@@ -0,0 +1,69 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.nio.file.Paths;
+import java.util.zip.CRC32;
+
+/**
+ * Replays a {@link Movie} headless and as fast as possible. Prints the time
+ * taken and a CRC-32 of the final frame and of RAM, which must be the same on
+ * every replay; a benchmark run from a movie therefore always emulates
+ * exactly the same work.
+ *
+ * Usage: GameBoyMoviePlayer [rom file] [movie file] [repeats]
+ */
+public class GameBoyMoviePlayer {
+
+    public static void main(String[] args) throws Exception {
+        String romFile = args.length > 0 ? args[0] : "Alleyway.gb";
+        String movieFile = args.length > 1 ? args[1] : "Alleyway.gbm";
+        int repeats = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+        Movie movie = Movie.read(Paths.get(movieFile));
+        RomCache romCache = new RomCache();
+
+        for (int i = 0; i < repeats; i++) {
+            GameBoy gameBoy = romCache.newGameBoy(romFile);
+            long start = System.nanoTime();
+            play(movie, gameBoy);
+            long elapsed = System.nanoTime() - start;
+
+            System.out.println(String.format("%d frames in %.1f ms, frame CRC %08x, RAM CRC %08x",
+                    movie.getFrameCount(), elapsed / 1e6, crc(gameBoy.getPpu().getFrameBuffer()), ramCrc(gameBoy)));
+        }
+    }
+
+    /**
+     * Run the whole movie on a Game Boy that has not run yet.
+     */
+    public static void play(Movie movie, GameBoy gameBoy) throws MovieInvalidException {
+        movie.begin(gameBoy);
+        GameBoyMemory mem = gameBoy.getMemory();
+        for (int frame = 0; frame < movie.getFrameCount(); frame++) {
+            mem.setJoypadState(movie.buttonsAt(frame));
+            gameBoy.runFrame();
+        }
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    private static long ramCrc(GameBoy gameBoy) {
+        CRC32 crc = new CRC32();
+        for (int addr = 0xC000; addr < 0xE000; addr++) {
+            crc.update(gameBoy.getMemory().readByte(addr));
+        }
+        return crc.getValue();
+    }
+
+}
@@ -0,0 +1,521 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Scanline based picture processing unit. The PPU is advanced by the number of
+ * CPU cycles each instruction took and renders a whole line of background,
+ * window and sprites into the frame buffer when the line leaves mode 3, using
+ * tiles decoded ahead of time by the memory's {@link TileCache}. The
+ * frame buffer holds one 2-bit shade (0 = lightest, 3 = darkest) per pixel
+ * after palette mapping and is reused from frame to frame; nothing is
+ * allocated while a frame is being rendered.
+ */
+public class GameBoyPpu {
+
+    public static final int SCREEN_WIDTH = 160;
+    public static final int SCREEN_HEIGHT = 144;
+
+    private static final int CYCLES_PER_LINE = 456;
+    private static final int CYCLES_OAM_SEARCH = 80;
+    private static final int CYCLES_PIXEL_TRANSFER = 172;
+    private static final int LAST_LINE = 153;
+
+    private static final int MODE_HBLANK = 0;
+    private static final int MODE_VBLANK = 1;
+    private static final int MODE_OAM_SEARCH = 2;
+    private static final int MODE_PIXEL_TRANSFER = 3;
+
+    // I/O registers
+    private static final int ADDR_IF = 0xFF0F;
+    private static final int ADDR_LCDC = 0xFF40;
+    private static final int ADDR_STAT = 0xFF41;
+    private static final int ADDR_SCY = 0xFF42;
+    private static final int ADDR_SCX = 0xFF43;
+    private static final int ADDR_LY = 0xFF44;
+    private static final int ADDR_LYC = 0xFF45;
+    private static final int ADDR_BGP = 0xFF47;
+    private static final int ADDR_OBP0 = 0xFF48;
+    private static final int ADDR_OBP1 = 0xFF49;
+    private static final int ADDR_WY = 0xFF4A;
+    private static final int ADDR_WX = 0xFF4B;
+
+    private static final int ADDR_OAM = 0xFE00;
+    private static final int ADDR_TILE_MAP_LOW = 0x9800;
+    private static final int ADDR_TILE_MAP_HIGH = 0x9C00;
+
+    // LCDC bits
+    private static final int LCDC_BG_ENABLE = 0x01;
+    private static final int LCDC_OBJ_ENABLE = 0x02;
+    private static final int LCDC_OBJ_TALL = 0x04;
+    private static final int LCDC_BG_MAP_HIGH = 0x08;
+    private static final int LCDC_TILE_DATA_UNSIGNED = 0x10;
+    private static final int LCDC_WINDOW_ENABLE = 0x20;
+    private static final int LCDC_WINDOW_MAP_HIGH = 0x40;
+    private static final int LCDC_LCD_ENABLE = 0x80;
+
+    // STAT bits
+    private static final int STAT_MODE_MASK = 0x03;
+    private static final int STAT_COINCIDENCE = 0x04;
+    private static final int STAT_HBLANK_INT = 0x08;
+    private static final int STAT_VBLANK_INT = 0x10;
+    private static final int STAT_OAM_INT = 0x20;
+    private static final int STAT_COINCIDENCE_INT = 0x40;
+
+    // IF bits
+    private static final int INT_VBLANK = 0x01;
+    private static final int INT_LCD_STAT = 0x02;
+
+    // Sprite attribute bits
+    private static final int OBJ_BEHIND_BG = 0x80;
+    private static final int OBJ_FLIP_Y = 0x40;
+    private static final int OBJ_FLIP_X = 0x20;
+    private static final int OBJ_PALETTE_1 = 0x10;
+
+    private static final int SPRITE_COUNT = 40;
+    private static final int MAX_SPRITES_PER_LINE = 10;
+
+    private static final int WINDOW_VISIBLE = 0x10000;
+
+    private final GameBoyMemory mem;
+    private final TileCache tiles;
+
+    private byte[] frameBuffer;
+    // Whether frameBuffer is shared with a fork and must be copied before it is written
+    private boolean frameBufferShared;
+    // OAM offsets of the sprites visible on the current line
+    private final int[] lineSprites = new int[MAX_SPRITES_PER_LINE];
+    // Screen X positions of the current line already taken by a higher priority sprite
+    private final boolean[] spritePixelTaken = new boolean[SCREEN_WIDTH];
+    // Colour number to shade lookups for the current palettes
+    private final byte[] bgShades = new byte[4];
+    private final byte[] objShades = new byte[4];
+
+    // Background line cache. bgColors holds unmapped background/window colour
+    // numbers (needed for sprite priority) and bgPixels the shades, both per
+    // line of the last frame. A line is reused while its stamps still match.
+    private byte[] bgColors;
+    private byte[] bgPixels;
+    private int[] lineRegisterStamps;
+    private int[] lineWindowStamps;
+    private int[] lineVramVersions;
+    private boolean[] lineCached;
+    private int cachedLines;
+    private int lastFrameCachedLines;
+
+    private int mode = MODE_OAM_SEARCH;
+    private int line;
+    private int lineCycles;
+    private int windowLine;
+    private long frameCount;
+
+    private long renderNanos;
+    private long lastFrameRenderNanos;
+
+    public GameBoyPpu(GameBoyMemory memory) {
+        this.mem = memory;
+        this.tiles = memory.getTileCache();
+        frameBuffer = new byte[SCREEN_WIDTH * SCREEN_HEIGHT];
+        allocateLineCache();
+    }
+
+    /**
+     * Fork constructor. Copies the complete PPU state of parent but renders
+     * from the given (normally forked) memory. The frame buffer is shared
+     * copy-on-write: whichever side renders or loads a state first copies
+     * it. The background line cache is not copied; it is allocated when the
+     * fork renders its first line.
+     */
+    private GameBoyPpu(GameBoyPpu parent, GameBoyMemory memory) {
+        this.mem = memory;
+        this.tiles = memory.getTileCache();
+        frameBuffer = parent.frameBuffer;
+        frameBufferShared = true;
+        parent.frameBufferShared = true;
+        mode = parent.mode;
+        line = parent.line;
+        lineCycles = parent.lineCycles;
+        windowLine = parent.windowLine;
+        frameCount = parent.frameCount;
+    }
+
+    public GameBoyPpu fork(GameBoyMemory forkedMemory) {
+        return new GameBoyPpu(this, forkedMemory);
+    }
+
+    // Bytes written by saveState
+    static final int STATE_SIZE = 1 + 1 + 2 + 1 + 8 + SCREEN_WIDTH * SCREEN_HEIGHT;
+
+    void saveState(DataOutput out) throws IOException {
+        out.writeByte(mode);
+        out.writeByte(line);
+        out.writeShort(lineCycles);
+        out.writeByte(windowLine);
+        out.writeLong(frameCount);
+        out.write(frameBuffer);
+    }
+
+    void loadState(DataInput in) throws IOException {
+        mode = in.readUnsignedByte();
+        line = in.readUnsignedByte();
+        lineCycles = in.readUnsignedShort();
+        windowLine = in.readUnsignedByte();
+        frameCount = in.readLong();
+        if (frameBufferShared) {
+            unshareFrameBuffer();
+        }
+        in.readFully(frameBuffer);
+    }
+
+    /**
+     * Advance the PPU by the given number of CPU cycles, rendering each line
+     * as it completes pixel transfer.
+     */
+    public void step(int cycles) {
+        lineCycles += cycles;
+        while (true) {
+            switch (mode) {
+                case MODE_OAM_SEARCH:
+                    if (lineCycles < CYCLES_OAM_SEARCH) {
+                        return;
+                    }
+                    setMode(MODE_PIXEL_TRANSFER);
+                    break;
+
+                case MODE_PIXEL_TRANSFER:
+                    if (lineCycles < CYCLES_OAM_SEARCH + CYCLES_PIXEL_TRANSFER) {
+                        return;
+                    }
+                    if (CpuProfiler.ENABLED) {
+                        long start = System.nanoTime();
+                        renderScanline();
+                        renderNanos += System.nanoTime() - start;
+                    } else {
+                        renderScanline();
+                    }
+                    setMode(MODE_HBLANK);
+                    break;
+
+                case MODE_HBLANK:
+                    if (lineCycles < CYCLES_PER_LINE) {
+                        return;
+                    }
+                    lineCycles -= CYCLES_PER_LINE;
+                    setLine(line + 1);
+                    if (line == SCREEN_HEIGHT) {
+                        setMode(MODE_VBLANK);
+                        requestInterrupt(INT_VBLANK);
+                        lastFrameRenderNanos = renderNanos;
+                        renderNanos = 0;
+                        lastFrameCachedLines = cachedLines;
+                        cachedLines = 0;
+                        frameCount++;
+                    } else {
+                        setMode(MODE_OAM_SEARCH);
+                    }
+                    break;
+
+                case MODE_VBLANK:
+                    if (lineCycles < CYCLES_PER_LINE) {
+                        return;
+                    }
+                    lineCycles -= CYCLES_PER_LINE;
+                    if (line == LAST_LINE) {
+                        windowLine = 0;
+                        setLine(0);
+                        setMode(MODE_OAM_SEARCH);
+                    } else {
+                        setLine(line + 1);
+                    }
+                    break;
+            }
+        }
+    }
+
+    private void setMode(int newMode) {
+        mode = newMode;
+        int stat = mem.readByte(ADDR_STAT);
+        mem.writeByte((stat & ~STAT_MODE_MASK) | newMode, ADDR_STAT);
+
+        if ((newMode == MODE_HBLANK && (stat & STAT_HBLANK_INT) != 0)
+                || (newMode == MODE_VBLANK && (stat & STAT_VBLANK_INT) != 0)
+                || (newMode == MODE_OAM_SEARCH && (stat & STAT_OAM_INT) != 0)) {
+            requestInterrupt(INT_LCD_STAT);
+        }
+    }
+
+    private void setLine(int newLine) {
+        line = newLine;
+        mem.writeByte(newLine, ADDR_LY);
+
+        int stat = mem.readByte(ADDR_STAT);
+        if (newLine == mem.readByte(ADDR_LYC)) {
+            mem.writeByte(stat | STAT_COINCIDENCE, ADDR_STAT);
+            if ((stat & STAT_COINCIDENCE_INT) != 0) {
+                requestInterrupt(INT_LCD_STAT);
+            }
+        } else {
+            mem.writeByte(stat & ~STAT_COINCIDENCE, ADDR_STAT);
+        }
+    }
+
+    private void requestInterrupt(int mask) {
+        mem.writeByte(mem.readByte(ADDR_IF) | mask, ADDR_IF);
+    }
+
+    // Rendering
+
+    private void renderScanline() {
+        int lcdc = mem.readByte(ADDR_LCDC);
+        int lineOffset = line * SCREEN_WIDTH;
+
+        if (frameBufferShared) {
+            unshareFrameBuffer();
+        }
+
+        if ((lcdc & LCDC_LCD_ENABLE) == 0) {
+            Arrays.fill(frameBuffer, lineOffset, lineOffset + SCREEN_WIDTH, (byte) 0);
+            return;
+        }
+
+        if (bgColors == null) {
+            allocateLineCache();
+        }
+
+        if ((lcdc & LCDC_BG_ENABLE) != 0) {
+            renderBackgroundLine(lcdc, lineOffset);
+            System.arraycopy(bgPixels, lineOffset, frameBuffer, lineOffset, SCREEN_WIDTH);
+        } else {
+            // With the background disabled the DMG shows colour 0 regardless of BGP
+            Arrays.fill(bgColors, lineOffset, lineOffset + SCREEN_WIDTH, (byte) 0);
+            Arrays.fill(frameBuffer, lineOffset, lineOffset + SCREEN_WIDTH, (byte) 0);
+            lineCached[line] = false;
+        }
+
+        if ((lcdc & LCDC_OBJ_ENABLE) != 0) {
+            renderSprites(lcdc, lineOffset);
+        }
+    }
+
+    /**
+     * Render the background and window of the current line into bgColors and
+     * bgPixels, unless the line still holds what it showed last frame: the
+     * same LCDC, scroll, palette and window position, and no VRAM writes since.
+     */
+    private void renderBackgroundLine(int lcdc, int lineOffset) {
+        int scx = mem.readByte(ADDR_SCX);
+        int scy = mem.readByte(ADDR_SCY);
+        int bgp = mem.readByte(ADDR_BGP);
+
+        int windowX = 0;
+        int windowY = 0;
+        int windowStamp = 0;
+        if ((lcdc & LCDC_WINDOW_ENABLE) != 0) {
+            windowX = mem.readByte(ADDR_WX) - 7;
+            if (line >= mem.readByte(ADDR_WY) && windowX < SCREEN_WIDTH) {
+                windowY = windowLine++;
+                windowStamp = WINDOW_VISIBLE | ((windowX + 7) << 8) | windowY;
+            }
+        }
+
+        int registerStamp = lcdc | (scx << 8) | (scy << 16) | (bgp << 24);
+        int vramVersion = mem.getVramVersion();
+        if (lineCached[line] && lineRegisterStamps[line] == registerStamp
+                && lineWindowStamps[line] == windowStamp && lineVramVersions[line] == vramVersion) {
+            cachedLines++;
+            return;
+        }
+
+        loadShades(bgShades, bgp);
+
+        int y = (line + scy) & 0xFF;
+        int mapRow = ((lcdc & LCDC_BG_MAP_HIGH) != 0 ? ADDR_TILE_MAP_HIGH : ADDR_TILE_MAP_LOW) + (y >>> 3) * 32;
+        renderTileRow(lcdc, mapRow, scx, y & 7, 0, lineOffset);
+
+        if (windowStamp != 0) {
+            mapRow = ((lcdc & LCDC_WINDOW_MAP_HIGH) != 0 ? ADDR_TILE_MAP_HIGH : ADDR_TILE_MAP_LOW) + (windowY >>> 3) * 32;
+            int startX = Math.max(windowX, 0);
+            renderTileRow(lcdc, mapRow, startX - windowX, windowY & 7, startX, lineOffset);
+        }
+
+        lineRegisterStamps[line] = registerStamp;
+        lineWindowStamps[line] = windowStamp;
+        lineVramVersions[line] = vramVersion;
+        lineCached[line] = true;
+    }
+
+    /**
+     * Copy one row of decoded tiles from a tile map into bgColors and bgPixels.
+     * @param mapRow Address of the first tile map entry of the row.
+     * @param mapX X position within the 256 pixel wide map of the first pixel to draw.
+     * @param tileRow Row (0-7) within each tile.
+     * @param startX First screen X position to draw; the row is drawn from there to the right edge.
+     */
+    private void renderTileRow(int lcdc, int mapRow, int mapX, int tileRow, int startX, int lineOffset) {
+        byte[] tilePixels = tiles.getPixels();
+        int x = lineOffset + startX;
+        int lineEnd = lineOffset + SCREEN_WIDTH;
+        while (x < lineEnd) {
+            int tile = tileIndex(lcdc, mem.readByte(mapRow + ((mapX & 0xFF) >>> 3)));
+            int col = mapX & 7;
+            int count = Math.min(8 - col, lineEnd - x);
+            System.arraycopy(tilePixels, tiles.tileOffset(tile) + tileRow * 8 + col, bgColors, x, count);
+            for (int end = x + count; x < end; x++) {
+                bgPixels[x] = bgShades[bgColors[x]];
+            }
+            mapX += count;
+        }
+    }
+
+    private void unshareFrameBuffer() {
+        frameBuffer = frameBuffer.clone();
+        frameBufferShared = false;
+    }
+
+    private void allocateLineCache() {
+        bgColors = new byte[SCREEN_WIDTH * SCREEN_HEIGHT];
+        bgPixels = new byte[SCREEN_WIDTH * SCREEN_HEIGHT];
+        lineRegisterStamps = new int[SCREEN_HEIGHT];
+        lineWindowStamps = new int[SCREEN_HEIGHT];
+        lineVramVersions = new int[SCREEN_HEIGHT];
+        lineCached = new boolean[SCREEN_HEIGHT];
+    }
+
+    private void renderSprites(int lcdc, int lineOffset) {
+        int height = (lcdc & LCDC_OBJ_TALL) != 0 ? 16 : 8;
+
+        // Pick the first ten sprites in OAM order that overlap this line,
+        // keeping them sorted by X. Ties keep OAM order, which matches the
+        // DMG's priority rules.
+        int count = 0;
+        for (int i = 0; i < SPRITE_COUNT && count < MAX_SPRITES_PER_LINE; i++) {
+            int oamAddr = ADDR_OAM + i * 4;
+            int spriteY = mem.readByte(oamAddr) - 16;
+            if (line < spriteY || line >= spriteY + height) {
+                continue;
+            }
+            int spriteX = mem.readByte(oamAddr + 1);
+            int pos = count++;
+            while (pos > 0 && mem.readByte(lineSprites[pos - 1] + 1) > spriteX) {
+                lineSprites[pos] = lineSprites[pos - 1];
+                pos--;
+            }
+            lineSprites[pos] = oamAddr;
+        }
+
+        byte[] tilePixels = tiles.getPixels();
+
+        // Resolve each pixel from the highest priority sprite down. The first
+        // opaque sprite pixel wins even if it is then hidden behind the
+        // background, so a hidden sprite also hides the sprites below it.
+        Arrays.fill(spritePixelTaken, false);
+        for (int i = 0; i < count; i++) {
+            int oamAddr = lineSprites[i];
+            int spriteY = mem.readByte(oamAddr) - 16;
+            int spriteX = mem.readByte(oamAddr + 1) - 8;
+            int tileNumber = mem.readByte(oamAddr + 2);
+            int attributes = mem.readByte(oamAddr + 3);
+            loadShades(objShades, mem.readByte((attributes & OBJ_PALETTE_1) != 0 ? ADDR_OBP1 : ADDR_OBP0));
+
+            int row = line - spriteY;
+            if ((attributes & OBJ_FLIP_Y) != 0) {
+                row = height - 1 - row;
+            }
+            if (height == 16) {
+                // The lower half of a tall sprite is the next tile
+                tileNumber = (tileNumber & 0xFE) + (row >>> 3);
+                row &= 7;
+            }
+            int rowOffset = tiles.tileOffset(tileNumber) + row * 8;
+            boolean flipX = (attributes & OBJ_FLIP_X) != 0;
+            boolean behindBg = (attributes & OBJ_BEHIND_BG) != 0;
+
+            for (int col = 0; col < 8; col++) {
+                int x = spriteX + col;
+                if (x < 0 || x >= SCREEN_WIDTH) {
+                    continue;
+                }
+                int color = tilePixels[rowOffset + (flipX ? 7 - col : col)];
+                if (color == 0 || spritePixelTaken[x]) {
+                    continue;
+                }
+                spritePixelTaken[x] = true;
+                if (behindBg && bgColors[lineOffset + x] != 0) {
+                    continue;
+                }
+                frameBuffer[lineOffset + x] = objShades[color];
+            }
+        }
+    }
+
+    /**
+     * @return Index into the tile cache of a background or window tile number, honouring the LCDC addressing mode.
+     */
+    private static int tileIndex(int lcdc, int tileNumber) {
+        if ((lcdc & LCDC_TILE_DATA_UNSIGNED) != 0) {
+            return tileNumber;
+        } else {
+            // Signed tile numbers are relative to 0x9000, i.e. tile 256
+            return 256 + (byte) tileNumber;
+        }
+    }
+
+    private static void loadShades(byte[] shades, int palette) {
+        for (int color = 0; color < 4; color++) {
+            shades[color] = (byte) ((palette >>> (color << 1)) & 3);
+        }
+    }
+
+    // Getters
+
+    /**
+     * @return The frame buffer, SCREEN_WIDTH * SCREEN_HEIGHT shades in row-major order. The array is reused for every
+     *         frame, so copy it if it must survive past the next call to {@link #step(int)}. After a fork it may be
+     *         replaced by a copy, so fetch it again rather than keeping the reference.
+     */
+    public byte[] getFrameBuffer() {
+        return frameBuffer;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    /**
+     * @return Number of frames completed, incremented when the PPU enters VBlank.
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @return Host nanoseconds spent rendering scanlines during the last completed frame. Only measured when
+     *         {@link CpuProfiler#ENABLED} is set; always 0 otherwise.
+     */
+    public long getLastFrameRenderNanos() {
+        return lastFrameRenderNanos;
+    }
+
+    /**
+     * @return Number of lines in the last completed frame whose background was reused from the previous frame.
+     */
+    public int getLastFrameCachedLines() {
+        return lastFrameCachedLines;
+    }
+
+}
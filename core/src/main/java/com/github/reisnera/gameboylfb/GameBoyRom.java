@@ -13,12 +13,19 @@ import java.nio.file.Paths;
 //import java.util.logging.Logger;
 import java.nio.file.Files;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
 
 public class GameBoyRom {
 
     // private static final Logger log = Logger.getLogger("Main Log");
 
     private byte[] romData;
+    // The ROM split into GameBoyMemory pages. Writes to ROM are ignored, so
+    // every memory built from this ROM shares these pages read-only.
+    private byte[][] pages;
+    // Computed up front, since the ROM is shared by instances on many threads
+    private final long crc32;
 
     // Header variables
     private byte[] headerNintendoLogo = new byte[0x30];
@@ -29,7 +36,11 @@ public class GameBoyRom {
     private byte headerComplementCheck;
 
     public GameBoyRom(String fileName) throws IOException, RomInvalidFileException {
-        romData = Files.readAllBytes(Paths.get(fileName));
+        this(Files.readAllBytes(Paths.get(fileName)));
+    }
+
+    public GameBoyRom(byte[] romData) throws RomInvalidFileException {
+        this.romData = romData;
 
         // ROM should be exactly 32KB
         if (getRomLength() != 0x8000) {
@@ -64,10 +75,31 @@ public class GameBoyRom {
         if (headerCartridgeType != 0x00) {
             throw new RomInvalidFileException("Unsupported cartridge type: " + headerCartridgeType);
         }
+
+        pages = new byte[romData.length / GameBoyMemory.PAGE_SIZE][];
+        for (int page = 0; page < pages.length; page++) {
+            pages[page] = Arrays.copyOfRange(romData, page * GameBoyMemory.PAGE_SIZE,
+                    (page + 1) * GameBoyMemory.PAGE_SIZE);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(romData);
+        crc32 = crc.getValue();
     }
 
     // Getters
 
+    byte[][] getPages() {
+        return pages;
+    }
+
+    /**
+     * @return CRC-32 of the whole ROM image, used to check that saved state belongs to this ROM.
+     */
+    public long getCrc32() {
+        return crc32;
+    }
+
     public byte[] getRomData() {
         return romData;
     }
@@ -0,0 +1,50 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.file.Paths;
+
+/**
+ * Prints a binary trace from {@link TraceRecorder} as text, one instruction
+ * per line: cycles run so far, then PC, opcode, the following byte and the
+ * registers before the instruction executed.
+ *
+ * Usage: GameBoyTraceDecoder [trace file] [first record] [record count]
+ */
+public class GameBoyTraceDecoder {
+
+    public static void main(String[] args) throws Exception {
+        String traceFile = args.length > 0 ? args[0] : "trace.gbt";
+        long first = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        long count = args.length > 2 ? Long.parseLong(args[2]) : Long.MAX_VALUE;
+
+        try (TraceReader trace = new TraceReader(Paths.get(traceFile));
+             PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16))) {
+            decode(trace, first, count, out);
+        }
+    }
+
+    /**
+     * Print count records starting at record number first, or all records from there on if count is
+     * Long.MAX_VALUE.
+     */
+    static void decode(TraceReader trace, long first, long count, PrintWriter out) throws IOException {
+        // Compared as a difference, since first + count overflows for the default count
+        while (trace.next() && trace.getIndex() - first < count) {
+            if (trace.getIndex() >= first) {
+                out.println(trace.format());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Joypad input for headless runs, read from a text file. Each line names a
+ * frame number and the buttons held from that frame on, until the next line:
+ *
+ * <pre>
+ * # comment
+ * 0 none
+ * 120 start
+ * 125 none
+ * 300 a+right
+ * </pre>
+ *
+ * Lines must be in increasing frame order. Button names are right, left, up,
+ * down, a, b, select and start.
+ */
+public class InputScript {
+
+    private final int[] frames;
+    private final int[] buttons;
+
+    public InputScript(String fileName) throws IOException {
+        this(Files.readAllLines(Paths.get(fileName), StandardCharsets.US_ASCII));
+    }
+
+    public InputScript(List<String> lines) {
+        int[] parsedFrames = new int[lines.size()];
+        int[] parsedButtons = new int[lines.size()];
+        int count = 0;
+
+        for (String line : lines) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            if (fields.length != 2) {
+                throw new IllegalArgumentException("Expected '<frame> <buttons>': " + line);
+            }
+            int frame = Integer.parseInt(fields[0]);
+            if (count > 0 && frame <= parsedFrames[count - 1]) {
+                throw new IllegalArgumentException("Frames must increase: " + line);
+            }
+            parsedFrames[count] = frame;
+            parsedButtons[count] = parseButtons(fields[1]);
+            count++;
+        }
+
+        frames = Arrays.copyOf(parsedFrames, count);
+        buttons = Arrays.copyOf(parsedButtons, count);
+    }
+
+    private static int parseButtons(String names) {
+        int mask = 0;
+        if (names.equals("none")) {
+            return mask;
+        }
+        for (String name : names.split("\\+")) {
+            switch (name) {
+                case "right":
+                    mask |= Joypad.BUTTON_RIGHT;
+                    break;
+                case "left":
+                    mask |= Joypad.BUTTON_LEFT;
+                    break;
+                case "up":
+                    mask |= Joypad.BUTTON_UP;
+                    break;
+                case "down":
+                    mask |= Joypad.BUTTON_DOWN;
+                    break;
+                case "a":
+                    mask |= Joypad.BUTTON_A;
+                    break;
+                case "b":
+                    mask |= Joypad.BUTTON_B;
+                    break;
+                case "select":
+                    mask |= Joypad.BUTTON_SELECT;
+                    break;
+                case "start":
+                    mask |= Joypad.BUTTON_START;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown button: " + name);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @return The buttons held during the given frame, as Joypad.BUTTON_ masks.
+     */
+    public int buttonsAt(int frame) {
+        int index = Arrays.binarySearch(frames, frame);
+        if (index < 0) {
+            // Use the last change before this frame, if any
+            index = -index - 2;
+        }
+        return index < 0 ? 0 : buttons[index];
+    }
+
+}
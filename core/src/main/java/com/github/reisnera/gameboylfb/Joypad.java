@@ -0,0 +1,56 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The eight Game Boy buttons packed into one atomic word, so any thread can
+ * press and release buttons while the emulation thread samples them. A set
+ * bit means the button is held down.
+ */
+public class Joypad {
+
+    public static final int BUTTON_RIGHT = 0x01;
+    public static final int BUTTON_LEFT = 0x02;
+    public static final int BUTTON_UP = 0x04;
+    public static final int BUTTON_DOWN = 0x08;
+    public static final int BUTTON_A = 0x10;
+    public static final int BUTTON_B = 0x20;
+    public static final int BUTTON_SELECT = 0x40;
+    public static final int BUTTON_START = 0x80;
+
+    private final AtomicInteger buttons = new AtomicInteger();
+
+    public void press(int buttonMask) {
+        int current;
+        do {
+            current = buttons.get();
+        } while (!buttons.compareAndSet(current, current | buttonMask));
+    }
+
+    public void release(int buttonMask) {
+        int current;
+        do {
+            current = buttons.get();
+        } while (!buttons.compareAndSet(current, current & ~buttonMask));
+    }
+
+    public void set(int buttonMask) {
+        buttons.set(buttonMask);
+    }
+
+    /**
+     * @return The currently held buttons as a combination of the BUTTON_ masks.
+     */
+    public int get() {
+        return buttons.get();
+    }
+
+}
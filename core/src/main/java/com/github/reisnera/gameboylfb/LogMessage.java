@@ -0,0 +1,46 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The messages the emulation thread logs through {@link EmulationLog}. Each
+ * has a String.format pattern that is only applied, to the message's long
+ * arguments, on the logging thread.
+ */
+public enum LogMessage {
+
+    UNIMPLEMENTED_OPCODE(GameBoyCpu.class, Level.SEVERE, "Opcode %x at %04x is not implemented."),
+    FRAMES_DROPPED(FramePacer.class, Level.FINE, "Fell behind and dropped %d frames.");
+
+    private final Logger logger;
+    private final Level level;
+    private final String pattern;
+
+    LogMessage(Class<?> source, Level level, String pattern) {
+        this.logger = Logger.getLogger(source.getName());
+        this.level = level;
+        this.pattern = pattern;
+    }
+
+    public Logger getLogger() {
+        return logger;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public String format(long arg0, long arg1) {
+        return String.format(pattern, arg0, arg1);
+    }
+
+}
@@ -0,0 +1,153 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A recording of the joypad state for every frame of a run, so that the run
+ * can be replayed exactly. The emulator is deterministic given its input, so
+ * a replay from the same starting point produces the same frames.
+ *
+ * A movie starts either at power-on of the ROM it was recorded with, or from
+ * a save state stored in the movie. Either way it carries the ROM's CRC-32 so
+ * it is never replayed against a different ROM.
+ *
+ * The file is gzip compressed and contains, big-endian:
+ *
+ * <pre>
+ * int   magic "GBMV" (0x47424D56)
+ * int   format version (1)
+ * long  ROM CRC-32
+ * int   length of the start state, 0 to start at power-on
+ *       start state, see GameBoy.saveState()
+ * int   number of frames
+ *       one byte per frame: the Joypad.BUTTON_ masks held during that frame
+ * </pre>
+ */
+public class Movie {
+
+    static final int MAGIC = 0x47424D56;
+    static final int VERSION = 1;
+
+    private final long romCrc32;
+    private final byte[] startState;
+    private byte[] inputs;
+    private int frameCount;
+
+    /**
+     * Start recording a movie that begins at the given Game Boy's current state.
+     * @param fromPowerOn The Game Boy has not run yet, so the movie can start at power-on without a stored state.
+     */
+    public Movie(GameBoy gameBoy, boolean fromPowerOn) {
+        this(gameBoy.getRom().getCrc32(), fromPowerOn ? null : gameBoy.saveState(), new byte[3600], 0);
+    }
+
+    private Movie(long romCrc32, byte[] startState, byte[] inputs, int frameCount) {
+        this.romCrc32 = romCrc32;
+        this.startState = startState;
+        this.inputs = inputs;
+        this.frameCount = frameCount;
+    }
+
+    public static Movie read(Path file) throws IOException, MovieInvalidException {
+        try (InputStream stream = Files.newInputStream(file);
+                DataInputStream in = new DataInputStream(new GZIPInputStream(stream))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new MovieInvalidException("Not a version " + VERSION + " movie: " + file);
+            }
+            long romCrc32 = in.readLong();
+            byte[] startState = null;
+            int stateLength = in.readInt();
+            if (stateLength < 0) {
+                throw new MovieInvalidException("Invalid start state length in movie: " + file);
+            }
+            if (stateLength > 0) {
+                startState = new byte[stateLength];
+                in.readFully(startState);
+            }
+            int frameCount = in.readInt();
+            if (frameCount < 0) {
+                throw new MovieInvalidException("Invalid frame count in movie: " + file);
+            }
+            byte[] inputs = new byte[frameCount];
+            in.readFully(inputs);
+            return new Movie(romCrc32, startState, inputs, frameCount);
+        }
+    }
+
+    public void write(Path file) throws IOException {
+        try (OutputStream stream = Files.newOutputStream(file);
+                DataOutputStream out = new DataOutputStream(new GZIPOutputStream(stream))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(romCrc32);
+            if (startState != null) {
+                out.writeInt(startState.length);
+                out.write(startState);
+            } else {
+                out.writeInt(0);
+            }
+            out.writeInt(frameCount);
+            out.write(inputs, 0, frameCount);
+        }
+    }
+
+    /**
+     * Append the buttons held during the next frame.
+     */
+    public void record(int buttons) {
+        if (frameCount == inputs.length) {
+            inputs = Arrays.copyOf(inputs, inputs.length * 2);
+        }
+        inputs[frameCount++] = (byte) buttons;
+    }
+
+    /**
+     * Put a Game Boy running the movie's ROM at the movie's starting point.
+     * A power-on movie needs a Game Boy that has not run yet.
+     */
+    public void begin(GameBoy gameBoy) throws MovieInvalidException {
+        if (gameBoy.getRom().getCrc32() != romCrc32) {
+            throw new MovieInvalidException("Movie was recorded with a different ROM.");
+        }
+        if (startState != null) {
+            try {
+                gameBoy.loadState(startState);
+            } catch (StateInvalidException ex) {
+                throw new MovieInvalidException("Movie has an invalid start state.", ex);
+            }
+        }
+    }
+
+    /**
+     * @return The buttons held during the given frame, counted from the start of the movie. None after its end.
+     */
+    public int buttonsAt(int frame) {
+        return frame < frameCount ? inputs[frame] & 0xFF : 0;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public long getRomCrc32() {
+        return romCrc32;
+    }
+
+}
@@ -0,0 +1,69 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Loads each cartridge ROM and the DMG ROM from disk once and hands the same
+ * images to every instance that runs them. The cached data is never written
+ * after loading: {@link GameBoyMemory} maps the cartridge's pages read-only
+ * and copies the DMG ROM into a page of its own, so the cache is safe to
+ * share between threads.
+ */
+public class RomCache {
+
+    private final ConcurrentMap<Path, GameBoyRom> roms = new ConcurrentHashMap<>();
+    private final Path dmgRomFile;
+    private volatile byte[] dmgRom;
+
+    public RomCache() {
+        this("DMG_ROM.bin");
+    }
+
+    public RomCache(String dmgRomFile) {
+        this.dmgRomFile = Paths.get(dmgRomFile);
+    }
+
+    public GameBoyRom getRom(String fileName) throws IOException, RomInvalidFileException {
+        Path path = Paths.get(fileName).toAbsolutePath().normalize();
+        GameBoyRom rom = roms.get(path);
+        if (rom == null) {
+            // Two threads may both load the same file; only the first one is kept
+            GameBoyRom loaded = new GameBoyRom(Files.readAllBytes(path));
+            rom = roms.putIfAbsent(path, loaded);
+            if (rom == null) {
+                rom = loaded;
+            }
+        }
+        return rom;
+    }
+
+    public byte[] getDmgRom() throws IOException {
+        byte[] data = dmgRom;
+        if (data == null) {
+            data = Files.readAllBytes(dmgRomFile);
+            dmgRom = data;
+        }
+        return data;
+    }
+
+    /**
+     * @return A new instance of the given ROM, freshly reset.
+     */
+    public GameBoy newGameBoy(String fileName) throws IOException, RomInvalidFileException, MemoryBadDmgRomException {
+        return new GameBoy(getRom(fileName), getDmgRom());
+    }
+
+}
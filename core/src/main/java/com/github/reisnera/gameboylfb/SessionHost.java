@@ -0,0 +1,160 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hosts interactive sessions, each an {@link EmulationLoop} on a thread of
+ * its own. Sessions spend nearly all their time parked between frames or
+ * paused waiting for a player, so on a JVM with virtual threads (Java 21 and
+ * later) each one gets a virtual thread and ten thousand of them cost little
+ * more than their emulator state. On older JVMs the host falls back to
+ * platform threads with a small stack.
+ *
+ * A host is not thread-safe: start, setMetrics and stopAll must all be
+ * called from one thread, or be externally synchronized.
+ */
+public class SessionHost {
+
+    private static final Logger LOG = Logger.getLogger(SessionHost.class.getName());
+
+    // Frames run a few calls deep, so platform threads don't need the default stack
+    private static final long PLATFORM_STACK_SIZE = 256 * 1024;
+    // Numbers hosts, so that session names are unique across all hosts in the JVM
+    private static final AtomicInteger HOST_COUNT = new AtomicInteger();
+
+    private final ThreadFactory threadFactory;
+    private final boolean virtual;
+    private final List<EmulationLoop> sessions = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private final List<Runnable> metricsUnregistrations = new ArrayList<>();
+    private FleetMetrics metrics;
+
+    public SessionHost() {
+        this(true);
+    }
+
+    /**
+     * @param preferVirtual Use virtual threads if this JVM has them.
+     */
+    public SessionHost(boolean preferVirtual) {
+        String namePrefix = "session-" + HOST_COUNT.getAndIncrement() + "-";
+        ThreadFactory factory = preferVirtual ? virtualThreadFactory(namePrefix) : null;
+        virtual = factory != null;
+        threadFactory = virtual ? factory : platformThreadFactory(namePrefix);
+    }
+
+    /**
+     * Look up Thread.ofVirtual() reflectively so that the core still builds
+     * and runs on Java 8.
+     */
+    private static ThreadFactory virtualThreadFactory(String namePrefix) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method name = builderClass.getMethod("name", String.class, long.class);
+            builder = name.invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException ex) {
+            LOG.log(Level.FINE, "Virtual threads unavailable, using platform threads", ex);
+            return null;
+        }
+    }
+
+    private static ThreadFactory platformThreadFactory(String namePrefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(null, runnable, namePrefix + count.getAndIncrement(), PLATFORM_STACK_SIZE);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Start a new session running the given Game Boy at the DMG frame rate.
+     * @param frames Where to publish finished frames, or null if nobody watches this session.
+     */
+    public EmulationLoop start(GameBoy gameBoy, FrameTripleBuffer frames) {
+        return start(gameBoy, frames, false);
+    }
+
+    /**
+     * @param paused Start the session paused, waiting for {@link EmulationLoop#resume()}.
+     */
+    public EmulationLoop start(GameBoy gameBoy, FrameTripleBuffer frames, boolean paused) {
+        // Spinning out each deadline would cost far more CPU than all the idle sessions together
+        EmulationLoop session = new EmulationLoop(gameBoy, new Joypad(), frames, new FramePacer(0));
+        if (paused) {
+            session.pause();
+        }
+        Thread thread = threadFactory.newThread(session);
+        if (metrics != null) {
+            FleetMetrics owner = metrics;
+            FleetMetrics.Instance instance = owner.register(thread.getName());
+            session.setMetrics(instance);
+            metricsUnregistrations.add(() -> owner.unregister(instance));
+        }
+        thread.setUncaughtExceptionHandler((t, ex) -> LOG.log(Level.WARNING, t.getName() + " failed", ex));
+        sessions.add(session);
+        threads.add(thread);
+        thread.start();
+        return session;
+    }
+
+    /**
+     * Record every session started from now on into the given metrics, under
+     * its thread's name, until the sessions are stopped. Thread names are
+     * unique across hosts, so hosts may share one FleetMetrics.
+     */
+    public void setMetrics(FleetMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Stop every session, wait for their threads to exit and remove them from the metrics.
+     */
+    public void stopAll() throws InterruptedException {
+        for (EmulationLoop session : sessions) {
+            session.stop();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (Runnable unregistration : metricsUnregistrations) {
+            unregistration.run();
+        }
+        metricsUnregistrations.clear();
+    }
+
+    /**
+     * @return Whether sessions run on virtual threads.
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    public List<EmulationLoop> getSessions() {
+        return sessions;
+    }
+
+    /**
+     * @return The sessions' threads, in the order of {@link #getSessions()}.
+     */
+    List<Thread> getThreads() {
+        return threads;
+    }
+
+}
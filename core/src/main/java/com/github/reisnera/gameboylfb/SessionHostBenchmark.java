@@ -0,0 +1,96 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.util.List;
+
+/**
+ * Starts many sessions in a {@link SessionHost}, most of them paused, and
+ * reports the heap cost per session along with how late the active sessions
+ * wake up for and finish their frames.
+ *
+ * Usage: SessionHostBenchmark [rom file] [sessions] [active sessions] [seconds] [platform]
+ *
+ * With -Dgameboylfb.metrics.port=PORT the sessions' metrics are served to
+ * Prometheus on that port while the benchmark runs.
+ */
+public class SessionHostBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String romFile = args.length > 0 ? args[0] : "Alleyway.gb";
+        int sessionCount = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        int activeCount = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        boolean preferVirtual = !(args.length > 4 && args[4].equals("platform"));
+
+        RomCache romCache = new RomCache();
+        romCache.getDmgRom();
+        romCache.getRom(romFile);
+        SessionHost host = new SessionHost(preferVirtual);
+        MetricsEndpoint endpoint = null;
+        if (System.getProperty("gameboylfb.metrics.port") != null) {
+            FleetMetrics metrics = new FleetMetrics();
+            host.setMetrics(metrics);
+            endpoint = new MetricsEndpoint(metrics, Integer.getInteger("gameboylfb.metrics.port"));
+            System.out.println("Serving metrics on http://" + endpoint.getAddress().getHostString() + ":"
+                    + endpoint.getAddress().getPort() + "/metrics");
+        }
+
+        long baselineHeap = usedHeap();
+        for (int i = 0; i < sessionCount; i++) {
+            host.start(romCache.newGameBoy(romFile), null, true);
+        }
+        long sessionHeap = usedHeap() - baselineHeap;
+
+        List<EmulationLoop> sessions = host.getSessions();
+        for (EmulationLoop session : sessions.subList(0, Math.min(activeCount, sessionCount))) {
+            session.resume();
+        }
+        Thread.sleep(seconds * 1000L);
+        host.stopAll();
+        if (endpoint != null) {
+            endpoint.close();
+        }
+
+        long frames = 0;
+        double wakeLatency = 0;
+        double frameLatency = 0;
+        long maxWakeLatency = 0;
+        long maxFrameLatency = 0;
+        long missed = 0;
+        for (EmulationLoop session : sessions.subList(0, Math.min(activeCount, sessionCount))) {
+            frames += session.getFramesRun();
+            wakeLatency += session.getMeanWakeLatencyNanos() * session.getFramesRun();
+            frameLatency += session.getMeanFrameLatencyNanos() * session.getFramesRun();
+            maxWakeLatency = Math.max(maxWakeLatency, session.getMaxWakeLatencyNanos());
+            maxFrameLatency = Math.max(maxFrameLatency, session.getMaxFrameLatencyNanos());
+            missed += session.getMissedDeadlines();
+        }
+
+        System.out.println(String.format("%d sessions (%d active) on %s threads", sessionCount, activeCount,
+                host.isVirtual() ? "virtual" : "platform"));
+        System.out.println(String.format("heap per session:    %10.1f kB", sessionHeap / 1024.0 / sessionCount));
+        System.out.println(String.format("frames run:          %10d", frames));
+        System.out.println(String.format("wake latency:        %10.1f us mean, %.1f us max", wakeLatency / frames / 1000,
+                maxWakeLatency / 1000.0));
+        System.out.println(String.format("frame latency:       %10.1f us mean, %.1f us max", frameLatency / frames / 1000,
+                maxFrameLatency / 1000.0));
+        System.out.println(String.format("missed deadlines:    %10d", missed));
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
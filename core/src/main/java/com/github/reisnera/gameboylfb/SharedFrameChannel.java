@@ -0,0 +1,197 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Publishes finished frames and chosen memory regions into a memory-mapped
+ * file, so that processes outside the JVM can read them without any copy
+ * through a socket, and takes joypad input back through the same file.
+ *
+ * All values are little-endian. The file starts with a 64 byte header:
+ *
+ * <pre>
+ *  0  int   magic "GBLF" (0x464C4247)
+ *  4  int   layout version (1)
+ *  8  int   number of slots
+ * 12  int   frame size in bytes (160 * 144, one shade 0-3 per pixel)
+ * 16  int   total size of the memory regions in bytes
+ * 20  int   slot size in bytes
+ * 24  long  number of the newest complete frame, -1 before the first
+ * 32  int   joypad input, Joypad.BUTTON_ masks, written by the reader
+ * </pre>
+ *
+ * followed by a ring of slots. Frame n goes to slot n % slots, and each slot
+ * holds:
+ *
+ * <pre>
+ *  0  long  sequence: odd while the slot is being written, even when done
+ *  8  long  frame number
+ * 16  long  System.nanoTime() when the frame was published
+ * 24  long  reserved
+ * 32        frame, then the memory regions in the order they were given
+ * </pre>
+ *
+ * To read frame n without locking, read the slot's sequence, copy the slot,
+ * then read the sequence again. The copy is good if both reads return the
+ * same even value. A reader that keeps up with the newest frame has
+ * slots - 1 frames of slack before the writer laps it.
+ *
+ * Usage: SharedFrameChannel [rom file] [channel file] [start length]...
+ */
+public class SharedFrameChannel implements Closeable {
+
+    public static final int MAGIC = 0x464C4247;
+    public static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 64;
+    static final int OFFSET_SLOT_COUNT = 8;
+    static final int OFFSET_FRAME_SIZE = 12;
+    static final int OFFSET_REGION_SIZE = 16;
+    static final int OFFSET_SLOT_SIZE = 20;
+    static final int OFFSET_LATEST = 24;
+    static final int OFFSET_INPUT = 32;
+
+    static final int SLOT_HEADER_SIZE = 32;
+    static final int SLOT_SEQUENCE = 0;
+    static final int SLOT_FRAME = 8;
+    static final int SLOT_TIMESTAMP = 16;
+
+    private static final int FRAME_SIZE = GameBoyPpu.SCREEN_WIDTH * GameBoyPpu.SCREEN_HEIGHT;
+
+    private final FileChannel file;
+    private final MappedByteBuffer buffer;
+    private final int[] regions;
+    private final int slotCount;
+    private final int slotSize;
+
+    private long frameNumber;
+
+    /**
+     * Create (or truncate) the channel file.
+     * @param regions Memory regions to publish with each frame, as (start address, length) pairs that lie
+     *        within 0x0000-0xFFFF.
+     */
+    public SharedFrameChannel(Path path, int slots, int... regions) throws IOException {
+        if (slots < 2 || regions.length % 2 != 0) {
+            throw new IllegalArgumentException("Need at least two slots and (start, length) region pairs");
+        }
+        this.regions = regions.clone();
+        this.slotCount = slots;
+
+        int regionSize = 0;
+        for (int i = 0; i < regions.length; i += 2) {
+            int start = regions[i];
+            int length = regions[i + 1];
+            if (start < 0 || length < 0 || (long) start + length > 0x10000) {
+                throw new IllegalArgumentException(String.format("Region %04X+%d is outside the address space",
+                        start, length));
+            }
+            regionSize += length;
+        }
+        // Keep every slot 8 byte aligned so that sequence numbers can be read atomically
+        slotSize = (SLOT_HEADER_SIZE + FRAME_SIZE + regionSize + 7) & ~7;
+
+        file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = file.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slots * slotSize);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putInt(OFFSET_SLOT_COUNT, slots);
+        buffer.putInt(OFFSET_FRAME_SIZE, FRAME_SIZE);
+        buffer.putInt(OFFSET_REGION_SIZE, regionSize);
+        buffer.putInt(OFFSET_SLOT_SIZE, slotSize);
+        buffer.putLong(OFFSET_LATEST, -1);
+        buffer.putInt(OFFSET_INPUT, 0);
+        buffer.putInt(4, VERSION);
+        Fences.storeFence();
+        // Written last so that a reader never sees a half initialised header
+        buffer.putInt(0, MAGIC);
+    }
+
+    /**
+     * Publish the Game Boy's current frame buffer and memory regions as the next frame.
+     */
+    public void publish(GameBoy gameBoy) {
+        int slot = HEADER_SIZE + (int) (frameNumber % slotCount) * slotSize;
+        long sequence = buffer.getLong(slot + SLOT_SEQUENCE);
+
+        buffer.putLong(slot + SLOT_SEQUENCE, sequence + 1);
+        // The odd sequence must be visible before any of the slot's new contents
+        Fences.storeFence();
+
+        buffer.putLong(slot + SLOT_FRAME, frameNumber);
+        buffer.putLong(slot + SLOT_TIMESTAMP, System.nanoTime());
+        buffer.position(slot + SLOT_HEADER_SIZE);
+        buffer.put(gameBoy.getPpu().getFrameBuffer());
+        GameBoyMemory mem = gameBoy.getMemory();
+        for (int i = 0; i < regions.length; i += 2) {
+            for (int addr = regions[i]; addr < regions[i] + regions[i + 1]; addr++) {
+                buffer.put((byte) mem.readByte(addr));
+            }
+        }
+
+        // ...and all of them before the even sequence and the latest frame number
+        Fences.storeFence();
+        buffer.putLong(slot + SLOT_SEQUENCE, sequence + 2);
+        Fences.storeFence();
+        buffer.putLong(OFFSET_LATEST, frameNumber);
+        frameNumber++;
+    }
+
+    /**
+     * @return The buttons the reader currently holds down, as Joypad.BUTTON_ masks.
+     */
+    public int readInput() {
+        return buffer.getInt(OFFSET_INPUT) & 0xFF;
+    }
+
+    /**
+     * @return Number of frames published so far.
+     */
+    public long getFrameNumber() {
+        return frameNumber;
+    }
+
+    /**
+     * The mapping itself stays valid until it is garbage collected; Java 8
+     * has no way to unmap it explicitly.
+     */
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String romFile = args.length > 0 ? args[0] : "Alleyway.gb";
+        Path channelFile = Paths.get(args.length > 1 ? args[1] : "gameboylfb.frames");
+        int[] regions = new int[Math.max(0, args.length - 2)];
+        for (int i = 0; i < regions.length; i++) {
+            regions[i] = Integer.decode(args[i + 2]);
+        }
+
+        GameBoy gameBoy = new GameBoy(new GameBoyRom(romFile));
+        try (SharedFrameChannel channel = new SharedFrameChannel(channelFile, 8, regions)) {
+            EmulationLoop loop = new EmulationLoop(gameBoy, new Joypad(), null);
+            loop.setSharedChannel(channel);
+            System.out.println("Publishing " + gameBoy.getRom().getHeaderGameTitle().trim() + " to " + channelFile);
+            loop.run();
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.github.reisnera.gameboylfb.SharedFrameChannel.*;
+
+/**
+ * Reading side of a {@link SharedFrameChannel}, for consumers that run on a
+ * JVM. It also serves as the reference for readers written in other
+ * languages.
+ */
+public class SharedFrameReader implements Closeable {
+
+    private final FileChannel file;
+    private final MappedByteBuffer buffer;
+    private final int slotCount;
+    private final int frameSize;
+    private final int regionSize;
+    private final int slotSize;
+
+    public SharedFrameReader(Path path) throws IOException {
+        file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = file.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            file.close();
+            throw new IOException("Not a version " + VERSION + " frame channel: " + path);
+        }
+        // The rest of the header was written before the magic
+        Fences.loadFence();
+        slotCount = header.getInt(OFFSET_SLOT_COUNT);
+        frameSize = header.getInt(OFFSET_FRAME_SIZE);
+        regionSize = header.getInt(OFFSET_REGION_SIZE);
+        slotSize = header.getInt(OFFSET_SLOT_SIZE);
+
+        buffer = file.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slotCount * slotSize);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return Number of the newest complete frame, or -1 if none has been published yet.
+     */
+    public long getLatestFrame() {
+        return buffer.getLong(OFFSET_LATEST);
+    }
+
+    /**
+     * Copy the newest complete frame.
+     * @return Its frame number, or -1 if none has been published yet.
+     */
+    public long readLatest(byte[] frame, byte[] regions) {
+        long frameNumber;
+        do {
+            frameNumber = getLatestFrame();
+        } while (frameNumber >= 0 && !read(frameNumber, frame, regions));
+        return frameNumber;
+    }
+
+    /**
+     * Copy the given frame, if the writer has not yet reused its slot.
+     * @param frame Receives the frame buffer; may be null.
+     * @param regions Receives the memory regions; may be null.
+     * @return Whether a consistent copy of that frame was made.
+     */
+    public boolean read(long frameNumber, byte[] frame, byte[] regions) {
+        int slot = HEADER_SIZE + (int) (frameNumber % slotCount) * slotSize;
+        long sequence = buffer.getLong(slot + SLOT_SEQUENCE);
+        // The slot's contents must not be read before the opening sequence
+        Fences.loadFence();
+        if ((sequence & 1) != 0 || buffer.getLong(slot + SLOT_FRAME) != frameNumber) {
+            return false;
+        }
+
+        ByteBuffer view = buffer.duplicate();
+        view.position(slot + SLOT_HEADER_SIZE);
+        if (frame != null) {
+            view.get(frame, 0, frameSize);
+        } else {
+            view.position(view.position() + frameSize);
+        }
+        if (regions != null) {
+            view.get(regions, 0, regionSize);
+        }
+
+        // ...nor after the closing one
+        Fences.loadFence();
+        return buffer.getLong(slot + SLOT_SEQUENCE) == sequence && buffer.getLong(slot + SLOT_FRAME) == frameNumber;
+    }
+
+    /**
+     * @param buttons Buttons to hold down from the next emulated frame on, as Joypad.BUTTON_ masks.
+     */
+    public void writeInput(int buttons) {
+        buffer.putInt(OFFSET_INPUT, buttons);
+    }
+
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    public int getRegionSize() {
+        return regionSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+}
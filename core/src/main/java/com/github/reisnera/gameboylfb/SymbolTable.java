@@ -0,0 +1,78 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Labels for code addresses, read from a .sym file as written by rgblink and
+ * understood by most Game Boy debuggers. Each line holds "BB:AAAA Label" with
+ * a hexadecimal bank and address; text after ';' is a comment. Only ROM-only
+ * cartridges are supported, so the bank is ignored and the first label seen
+ * for an address wins.
+ */
+public class SymbolTable {
+
+    private final TreeMap<Integer, String> labels = new TreeMap<>();
+
+    public static SymbolTable read(Path path) throws IOException {
+        SymbolTable symbols = new SymbolTable();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            int comment = line.indexOf(';');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            String[] fields = line.trim().split("\\s+");
+            if (fields.length < 2) {
+                continue;
+            }
+            int colon = fields[0].indexOf(':');
+            try {
+                int address = Integer.parseInt(fields[0].substring(colon + 1), 16);
+                symbols.labels.putIfAbsent(address, fields[1]);
+            } catch (NumberFormatException ex) {
+                throw new IOException("Bad symbol line in " + path + ": " + line, ex);
+            }
+        }
+        return symbols;
+    }
+
+    /**
+     * @return The label at exactly this address, or null.
+     */
+    public String get(int address) {
+        return labels.get(address);
+    }
+
+    /**
+     * @return The nearest label at or before the address, plus an offset if
+     *         not exactly on it, or the bare address if there is none.
+     */
+    public String resolve(int address) {
+        Map.Entry<Integer, String> label = labels.floorEntry(address);
+        if (label == null) {
+            return format(address);
+        }
+        int offset = address - label.getKey();
+        return offset == 0 ? label.getValue() : label.getValue() + "+" + Integer.toHexString(offset);
+    }
+
+    /**
+     * @return The address as written when no symbols are available.
+     */
+    public static String format(int address) {
+        return String.format("$%04X", address);
+    }
+
+}
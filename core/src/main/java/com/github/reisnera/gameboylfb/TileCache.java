@@ -0,0 +1,116 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.util.Arrays;
+
+/**
+ * Decoded copies of the 384 tiles in VRAM tile data (0x8000-0x97FF). Each
+ * tile is stored as 64 colour numbers (0-3), row by row, in one shared array.
+ * Tiles are decoded on first use and stay valid until GameBoyMemory sees a
+ * write to one of their 16 bytes.
+ *
+ * A forked memory starts with its parent's decoded tiles. The pixel array is
+ * shared copy-on-write, so neither side copies it before it decodes a tile
+ * or renders from it.
+ */
+class TileCache {
+
+    static final int TILE_COUNT = 384;
+    static final int TILE_PIXELS = 64;
+
+    private static final int ADDR_TILE_DATA = 0x8000;
+    static final int ADDR_TILE_DATA_END = ADDR_TILE_DATA + TILE_COUNT * 16;
+
+    private final GameBoyMemory mem;
+    private byte[] pixels = new byte[TILE_COUNT * TILE_PIXELS];
+    private boolean pixelsShared;
+    private final boolean[] valid;
+
+    TileCache(GameBoyMemory memory) {
+        this.mem = memory;
+        this.valid = new boolean[TILE_COUNT];
+    }
+
+    /**
+     * Fork constructor. The child starts with the parent's decoded tiles; see {@link #fork(GameBoyMemory)}.
+     */
+    private TileCache(TileCache parent, GameBoyMemory memory) {
+        this.mem = memory;
+        this.pixels = parent.pixels;
+        this.valid = parent.valid.clone();
+        pixelsShared = true;
+        parent.pixelsShared = true;
+    }
+
+    /**
+     * @return A cache for a fork of this cache's memory, which must hold the same tile data.
+     */
+    TileCache fork(GameBoyMemory forkedMemory) {
+        return new TileCache(this, forkedMemory);
+    }
+
+    /**
+     * Mark the tile containing the given tile data address as stale.
+     */
+    void invalidate(int addr) {
+        valid[(addr - ADDR_TILE_DATA) >>> 4] = false;
+    }
+
+    /**
+     * Mark every tile as stale, e.g. after VRAM was replaced wholesale.
+     */
+    void invalidateAll() {
+        Arrays.fill(valid, false);
+    }
+
+    /**
+     * @param tile Tile index 0-383, i.e. (tile address - 0x8000) / 16.
+     * @return Offset of the tile's first pixel in {@link #getPixels()}.
+     */
+    int tileOffset(int tile) {
+        if (!valid[tile]) {
+            decode(tile);
+        }
+        return tile * TILE_PIXELS;
+    }
+
+    /**
+     * @return The decoded pixel array. Only offsets returned by {@link #tileOffset(int)} are guaranteed to be current.
+     *         The array stays the same until the memory is next forked.
+     */
+    byte[] getPixels() {
+        if (pixelsShared) {
+            unsharePixels();
+        }
+        return pixels;
+    }
+
+    private void unsharePixels() {
+        pixels = pixels.clone();
+        pixelsShared = false;
+    }
+
+    private void decode(int tile) {
+        if (pixelsShared) {
+            unsharePixels();
+        }
+        int addr = ADDR_TILE_DATA + tile * 16;
+        int offset = tile * TILE_PIXELS;
+        for (int row = 0; row < 8; row++) {
+            int low = mem.readByte(addr + row * 2);
+            int high = mem.readByte(addr + row * 2 + 1);
+            for (int bit = 7; bit >= 0; bit--) {
+                pixels[offset++] = (byte) ((((high >>> bit) & 1) << 1) | ((low >>> bit) & 1));
+            }
+        }
+        valid[tile] = true;
+    }
+
+}
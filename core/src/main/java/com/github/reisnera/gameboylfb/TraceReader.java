@@ -0,0 +1,133 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.github.reisnera.gameboylfb.TraceRecorder.*;
+
+/**
+ * Reads a trace written by {@link TraceRecorder} one record at a time. The
+ * getters describe the current record, i.e. the one last read by
+ * {@link #next()}.
+ */
+public class TraceReader implements Closeable {
+
+    private static final int READ_RECORDS = 1 << 14;
+
+    private final FileChannel file;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(READ_RECORDS * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private int record = -RECORD_SIZE;
+    private long index = -1;
+
+    public TraceReader(Path path) throws IOException {
+        file = FileChannel.open(path, StandardOpenOption.READ);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining() && file.read(header) >= 0) {
+            // Keep reading
+        }
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt(0) != MAGIC || header.getInt(4) != VERSION
+                || header.getInt(8) != RECORD_SIZE) {
+            file.close();
+            throw new IOException("Not a version " + VERSION + " trace: " + path);
+        }
+        buffer.limit(0);
+    }
+
+    /**
+     * Move to the next record.
+     * @return False at the end of the trace.
+     */
+    public boolean next() throws IOException {
+        if (buffer.remaining() < RECORD_SIZE) {
+            buffer.compact();
+            while (buffer.position() < RECORD_SIZE && file.read(buffer) >= 0) {
+                // Fill at least one record
+            }
+            buffer.flip();
+            if (buffer.remaining() < RECORD_SIZE) {
+                return false;
+            }
+        }
+        record = buffer.position();
+        buffer.position(record + RECORD_SIZE);
+        index++;
+        return true;
+    }
+
+    /**
+     * @return Position of the current record in the trace, counting from 0.
+     */
+    public long getIndex() {
+        return index;
+    }
+
+    public int getPC() {
+        return buffer.getShort(record) & 0xFFFF;
+    }
+
+    public int getOpcode() {
+        return buffer.get(record + 2) & 0xFF;
+    }
+
+    /**
+     * @return The byte after the opcode: an operand, or the opcode of a CB-prefixed instruction.
+     */
+    public int getNextByte() {
+        return buffer.get(record + 3) & 0xFF;
+    }
+
+    public int getAF() {
+        return buffer.getShort(record + 4) & 0xFFFF;
+    }
+
+    public int getBC() {
+        return buffer.getShort(record + 6) & 0xFFFF;
+    }
+
+    public int getDE() {
+        return buffer.getShort(record + 8) & 0xFFFF;
+    }
+
+    public int getHL() {
+        return buffer.getShort(record + 10) & 0xFFFF;
+    }
+
+    public int getSP() {
+        return buffer.getShort(record + 12) & 0xFFFF;
+    }
+
+    /**
+     * @return Cycles the machine had run before this instruction.
+     */
+    public long getCycles() {
+        return buffer.getLong(record + 16);
+    }
+
+    /**
+     * @return The current record as one line of text.
+     */
+    public String format() {
+        return String.format("%12d PC=%04X %02X %02X AF=%04X BC=%04X DE=%04X HL=%04X SP=%04X",
+                getCycles(), getPC(), getOpcode(), getNextByte(), getAF(), getBC(), getDE(), getHL(), getSP());
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+}
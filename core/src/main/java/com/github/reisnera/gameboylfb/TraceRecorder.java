@@ -0,0 +1,185 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Records every instruction a {@link GameBoy} executes into a binary trace
+ * file, for debugging and for comparing engines instruction by instruction.
+ *
+ * Each instruction becomes one fixed-size little-endian record holding the
+ * machine state just before it executes:
+ *
+ *   0  u16 PC        2  u8 opcode     3  u8 byte after the opcode
+ *   4  u16 AF        6  u16 BC        8  u16 DE       10  u16 HL
+ *  12  u16 SP       14  u16 zero     16  i64 cycles run so far
+ *
+ * after a 16-byte header of the magic "GBTR", the version, the record size and
+ * zero. Records are packed into large direct buffers on the emulation thread;
+ * full buffers are swapped for empty ones and written out by a background
+ * thread in large sequential writes. Emulation only waits if all buffers are
+ * still waiting to be written, so no record is ever lost.
+ *
+ * {@link TraceReader} reads the files back, and GameBoyTraceDecoder prints them as text.
+ */
+public class TraceRecorder implements Closeable {
+
+    static final int MAGIC = 0x52544247; // "GBTR" in little-endian
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 24;
+
+    private static final int DEFAULT_BUFFER_RECORDS = 1 << 18; // 6 MB per buffer
+    private static final int BUFFER_COUNT = 3;
+
+    private final FileChannel file;
+    private final BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<>(BUFFER_COUNT + 1);
+    private final BlockingQueue<ByteBuffer> empty = new ArrayBlockingQueue<>(BUFFER_COUNT);
+    // Handed to the writer to tell it to finish
+    private final ByteBuffer endMarker = ByteBuffer.allocate(0);
+    private final Thread writer;
+    private volatile IOException writeFailure;
+
+    private ByteBuffer buffer;
+    private long records;
+
+    public TraceRecorder(Path path) throws IOException {
+        this(path, DEFAULT_BUFFER_RECORDS);
+    }
+
+    /**
+     * @param bufferRecords Records per buffer.
+     */
+    public TraceRecorder(Path path, int bufferRecords) throws IOException {
+        file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(0).flip();
+        while (header.hasRemaining()) {
+            file.write(header);
+        }
+
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            empty.add(ByteBuffer.allocateDirect(bufferRecords * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN));
+        }
+        buffer = empty.remove();
+
+        writer = new Thread(this::writeBuffers, "trace-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Record the instruction the CPU is about to execute.
+     * @param cycles Cycles the machine has run so far.
+     */
+    void record(GameBoyCpu cpu, GameBoyMemory mem, long cycles) {
+        if (!buffer.hasRemaining()) {
+            swapBuffer();
+        }
+        GameBoyCpu.CpuRegisters reg = cpu.reg;
+        int pc = reg.getPC();
+        ByteBuffer buffer = this.buffer;
+        int position = buffer.position();
+        buffer.putShort(position, (short) pc);
+        // Peeked, so that recording never looks like an access by the program
+        buffer.put(position + 2, (byte) mem.peekByte(pc));
+        buffer.put(position + 3, (byte) mem.peekByte((pc + 1) & GameBoyCpu.MASK_WORD));
+        buffer.putShort(position + 4, (short) reg.getAF());
+        buffer.putShort(position + 6, (short) reg.getBC());
+        buffer.putShort(position + 8, (short) reg.getDE());
+        buffer.putShort(position + 10, (short) reg.getHL());
+        buffer.putShort(position + 12, (short) reg.getSP());
+        buffer.putShort(position + 14, (short) 0);
+        buffer.putLong(position + 16, cycles);
+        buffer.position(position + RECORD_SIZE);
+        records++;
+    }
+
+    private void swapBuffer() {
+        checkWriter();
+        buffer.flip();
+        try {
+            full.put(buffer);
+            buffer = empty.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the trace writer", ex);
+        }
+    }
+
+    private void checkWriter() {
+        if (writeFailure != null) {
+            throw new IllegalStateException("Writing the trace failed", writeFailure);
+        }
+    }
+
+    private void writeBuffers() {
+        try {
+            while (true) {
+                ByteBuffer next = full.take();
+                if (next == endMarker) {
+                    return;
+                }
+                if (writeFailure == null) {
+                    try {
+                        while (next.hasRemaining()) {
+                            file.write(next);
+                        }
+                    } catch (IOException ex) {
+                        writeFailure = ex;
+                    }
+                }
+                next.clear();
+                empty.put(next);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return Number of instructions recorded.
+     */
+    public long getRecordCount() {
+        return records;
+    }
+
+    /**
+     * Write out everything recorded and close the file. Must be called from
+     * the thread that records, once it has stopped recording.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            buffer.flip();
+            full.put(buffer);
+            full.put(endMarker);
+            writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while finishing the trace", ex);
+        } finally {
+            file.close();
+        }
+        if (writeFailure != null) {
+            throw writeFailure;
+        }
+    }
+
+}
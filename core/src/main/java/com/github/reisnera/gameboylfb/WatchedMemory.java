@@ -0,0 +1,105 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+/**
+ * Memory that notices reads and writes of watched addresses, for the
+ * {@link Debugger}. Accesses are only checked while the debugger has armed
+ * it, i.e. while the CPU executes an instruction, so the PPU's own register
+ * updates and host-side calls never trigger a watchpoint. Instruction
+ * fetches are reads like any other. Addresses in echo RAM (0xE000-0xFDFF)
+ * are the same bytes as 0xC000-0xDDFF, so a watch on either address catches
+ * accesses through both.
+ *
+ * Only debug machines use this class. As long as it is never loaded, calls
+ * on GameBoyMemory stay monomorphic and the rest of the emulator pays
+ * nothing for watchpoints.
+ */
+final class WatchedMemory extends GameBoyMemory {
+
+    private final AddressSet readWatches = new AddressSet();
+    private final AddressSet writeWatches = new AddressSet();
+    private boolean armed;
+
+    // The first watched access since the last clearHit()
+    private boolean hit;
+    private int hitAddress;
+    private int hitValue;
+    private boolean hitWrite;
+
+    WatchedMemory(GameBoyRom rom, byte[] dmgRom) throws MemoryBadDmgRomException {
+        super(rom, dmgRom);
+    }
+
+    @Override
+    public int readByte(int addr) {
+        int data8 = super.readByte(addr);
+        if (armed && readWatches.contains(unmirror(addr))) {
+            recordHit(addr, data8, false);
+        }
+        return data8;
+    }
+
+    @Override
+    public void writeByte(int data8, int addr) {
+        if (armed && writeWatches.contains(unmirror(addr))) {
+            recordHit(addr, data8 & GameBoyCpu.MASK_BYTE, true);
+        }
+        super.writeByte(data8, addr);
+    }
+
+    /**
+     * @return The address with echo RAM folded onto the WRAM it mirrors, as GameBoyMemory does.
+     */
+    static int unmirror(int addr) {
+        return addr >= 0xE000 && addr < 0xFE00 ? addr - 0x2000 : addr;
+    }
+
+    private void recordHit(int addr, int data8, boolean write) {
+        if (!hit) {
+            hit = true;
+            hitAddress = addr;
+            hitValue = data8;
+            hitWrite = write;
+        }
+    }
+
+    AddressSet getReadWatches() {
+        return readWatches;
+    }
+
+    AddressSet getWriteWatches() {
+        return writeWatches;
+    }
+
+    void setArmed(boolean armed) {
+        this.armed = armed;
+    }
+
+    void clearHit() {
+        hit = false;
+    }
+
+    boolean isHit() {
+        return hit;
+    }
+
+    int getHitAddress() {
+        return hitAddress;
+    }
+
+    int getHitValue() {
+        return hitValue;
+    }
+
+    boolean isHitWrite() {
+        return hitWrite;
+    }
+
+}
@@ -0,0 +1,47 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+/**
+ * Builds in-memory ROM images so that tests don't depend on DMG_ROM.bin or a
+ * cartridge dump being present in the working directory.
+ */
+final class RomFixtures {
+
+    private RomFixtures() {
+    }
+
+    /**
+     * @return A stand-in for the internal DMG ROM that simply jumps to the cartridge entry point.
+     */
+    static byte[] dmgRom() {
+        byte[] dmgRom = new byte[256];
+        dmgRom[0] = (byte) 0xC3; // JP 0x0100
+        dmgRom[1] = (byte) 0x00;
+        dmgRom[2] = (byte) 0x01;
+        return dmgRom;
+    }
+
+    /**
+     * @param program Code placed at the cartridge entry point (0x0100).
+     * @return A valid 32kB ROM-only cartridge image.
+     */
+    static byte[] romData(int... program) {
+        byte[] romData = new byte[0x8000];
+        for (int i = 0; i < program.length; i++) {
+            romData[0x100 + i] = (byte) program[i];
+        }
+        return romData;
+    }
+
+    static GameBoy gameBoy(int... program) throws Exception {
+        return new GameBoy(new GameBoyRom(romData(program)), dmgRom());
+    }
+
+}
@@ -0,0 +1,109 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+@Test
+public class TestBatchEnvironment {
+
+    private static final int WRAM_ADDR = 0xC000;
+
+    // loop: LD A,(FF00); LD (C000),A; JR loop
+    private static final int[] ECHO_JOYPAD = {0xF0, 0x00, 0xEA, 0x00, 0xC0, 0x18, 0xF9};
+
+    public void observationsFollowEachEnvironmentsAction() throws Exception {
+        GameBoy template = RomFixtures.gameBoy(ECHO_JOYPAD);
+        template.getMemory().writeByte(0x10, 0xFF00); // select the button group
+
+        try (BatchEnvironment batch = new BatchEnvironment(template, 5, new int[] {WRAM_ADDR, 0xFF44}, 3)) {
+            int[] actions = {0, Joypad.BUTTON_A, Joypad.BUTTON_B, Joypad.BUTTON_START, Joypad.BUTTON_A};
+            byte[] observations = batch.step(actions, 2);
+
+            assertEquals(batch.getObservationSize(), 2);
+            for (int i = 0; i < actions.length; i++) {
+                assertEquals(observations[i * 2] & 0x0F, ~(actions[i] >>> 4) & 0x0F);
+                assertEquals(observations[i * 2 + 1] & 0xFF, 144); // LY at VBlank
+                assertEquals(batch.getEnvironment(i).getPpu().getFrameCount(), 2);
+            }
+            assertSame(batch.step(actions, 1), observations);
+        }
+    }
+
+    public void frameBufferObservationsMatchSequentialRun() throws Exception {
+        GameBoy sequential = RomFixtures.gameBoy(ECHO_JOYPAD);
+        for (int i = 0; i < 3; i++) {
+            sequential.runFrame();
+        }
+
+        try (BatchEnvironment batch = new BatchEnvironment(RomFixtures.gameBoy(ECHO_JOYPAD), 4)) {
+            byte[] observations = batch.step(new int[4], 3);
+            byte[] expected = sequential.getPpu().getFrameBuffer();
+            for (int i = 0; i < 4; i++) {
+                for (int p = 0; p < expected.length; p++) {
+                    assertEquals(observations[i * expected.length + p], expected[p]);
+                }
+            }
+        }
+    }
+
+    public void resetRestoresTemplateState() throws Exception {
+        try (BatchEnvironment batch = new BatchEnvironment(RomFixtures.gameBoy(ECHO_JOYPAD), 2, null, 2)) {
+            batch.step(new int[2], 5);
+            batch.reset(1);
+
+            assertEquals(batch.getEnvironment(0).getPpu().getFrameCount(), 5);
+            assertEquals(batch.getEnvironment(1).getPpu().getFrameCount(), 0);
+        }
+    }
+
+    @Test(timeOut = 10_000)
+    public void errorsInWorkersAreReported() throws Exception {
+        GameBoyRom rom = new GameBoyRom(RomFixtures.romData(ECHO_JOYPAD));
+        try (BatchEnvironment batch = new BatchEnvironment(
+                new OverflowingGameBoy(rom, new GameBoyMemory(rom, RomFixtures.dmgRom())), 2, null, 2)) {
+            for (int i = 0; i < 2; i++) {
+                try {
+                    batch.step(new int[2], 1);
+                    fail("step() returned");
+                } catch (IllegalStateException ex) {
+                    assertTrue(ex.getCause() instanceof StackOverflowError, ex.toString());
+                }
+            }
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class, timeOut = 10_000)
+    public void stepAfterCloseFails() throws Exception {
+        BatchEnvironment batch = new BatchEnvironment(RomFixtures.gameBoy(ECHO_JOYPAD), 2, null, 2);
+        batch.close();
+        batch.step(new int[2], 1);
+    }
+
+    // Fails every frame the way a runaway program overflowing the host stack would
+    private static final class OverflowingGameBoy extends GameBoy {
+
+        OverflowingGameBoy(GameBoyRom rom, GameBoyMemory mem) {
+            super(rom, mem);
+        }
+
+        @Override
+        public GameBoy fork() {
+            return new OverflowingGameBoy(getRom(), getMemory().fork());
+        }
+
+        @Override
+        public void runFrame() {
+            throw new StackOverflowError();
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+@Test
+public class TestControlServer {
+
+    private static final int WRAM_ADDR = 0xC000;
+
+    private Path dir;
+    private Path romFile;
+    private ControlServer server;
+    private ControlClient client;
+
+    @BeforeMethod
+    public void beforeMethod() throws Exception {
+        dir = Files.createTempDirectory("gameboylfb");
+        Path dmgFile = Files.write(dir.resolve("DMG_ROM.bin"), RomFixtures.dmgRom());
+        // loop: INC A; LD (C000),A; JR loop
+        romFile = Files.write(dir.resolve("test.gb"), RomFixtures.romData(0x3C, 0xEA, 0x00, 0xC0, 0x18, 0xFA));
+
+        server = new ControlServer(dir.resolve("control.sock"), new RomCache(dmgFile.toString()));
+        Thread serverThread = new Thread(server, "control-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        client = new ControlClient(server.getAddress());
+    }
+
+    @AfterMethod
+    public void afterMethod() throws Exception {
+        client.close();
+        server.close();
+        for (Path file : Files.newDirectoryStream(dir)) {
+            Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+
+    public void stepAndObserve() throws Exception {
+        client.loadRom(romFile.toString());
+        assertEquals(client.step(3), 3);
+
+        byte[] frame = new byte[GameBoyPpu.SCREEN_WIDTH * GameBoyPpu.SCREEN_HEIGHT];
+        client.stepAndGetFrame(1, frame);
+        assertEquals(client.step(0), 4);
+    }
+
+    public void memoryAndStateRoundTrip() throws Exception {
+        client.loadRom(romFile.toString());
+        client.step(1);
+        client.writeMemory(WRAM_ADDR + 1, new byte[] {0x11, 0x22});
+        byte[] state = client.saveState();
+        byte[] saved = client.readMemory(WRAM_ADDR, 3);
+        assertEquals(saved[1], 0x11);
+        assertEquals(saved[2], 0x22);
+
+        client.step(2);
+        client.writeMemory(WRAM_ADDR + 1, new byte[] {0x00});
+        assertNotEquals(client.readMemory(WRAM_ADDR, 3), saved);
+
+        client.loadState(state);
+        assertEquals(client.readMemory(WRAM_ADDR, 3), saved);
+        assertEquals(client.step(0), 1);
+    }
+
+    public void pressedButtonsReachTheJoypadRegister() throws Exception {
+        client.loadRom(romFile.toString());
+        client.writeMemory(0xFF00, new byte[] {0x10}); // select the button group
+        client.press(Joypad.BUTTON_A | Joypad.BUTTON_START);
+        client.release(Joypad.BUTTON_A);
+
+        assertEquals(client.readMemory(0xFF00, 1)[0] & 0x0F, 0x07);
+    }
+
+    public void errorsAreReportedWithoutDroppingTheConnection() throws Exception {
+        try {
+            client.step(1);
+            fail("Expected an error before a ROM is loaded");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().contains("No ROM loaded"));
+        }
+        assertFalse(client.loadRom(romFile.toString()).contains("No ROM"));
+    }
+
+}
@@ -0,0 +1,94 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+@Test
+public class TestCpuProfiler {
+
+    public void disabledByDefault() throws Exception {
+        assertFalse(CpuProfiler.ENABLED);
+        assertNull(RomFixtures.gameBoy().getCpu().getProfiler());
+    }
+
+    public void reportSortsByCycles() {
+        CpuProfiler profiler = new CpuProfiler();
+        for (int i = 0; i < 10; i++) {
+            profiler.countOpcode(0x150, 0x00, 0);
+            profiler.addCycles(0x00, 0, 4);
+        }
+        profiler.countOpcode(0x150, 0xCD, 0);
+        profiler.addCycles(0xCD, 0, 24);
+        profiler.countOpcode(0x150, 0xCB, 0x37);
+        profiler.countOpcode(0x150, 0xCB, 0x37);
+        profiler.addCycles(0xCB, 0x37, 8);
+
+        assertEquals(profiler.getCount(0x00), 10);
+        assertEquals(profiler.getCycles(0x00), 40);
+        assertEquals(profiler.getCount(0xCB), 0);
+        assertEquals(profiler.getCbCount(0x37), 2);
+        assertEquals(profiler.getCbCycles(0x37), 8);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        profiler.writeReport(new PrintStream(bytes, true));
+        String[] lines = bytes.toString().split("\\R");
+        assertTrue(lines[1].startsWith("00 "), lines[1]);
+        assertTrue(lines[2].startsWith("CD "), lines[2]);
+        assertTrue(lines[3].startsWith("CB 37 "), lines[3]);
+        assertTrue(lines[4].startsWith("total"), lines[4]);
+    }
+
+    public void collapsedStacksFollowCallsAndReturns() throws Exception {
+        CpuProfiler profiler = new CpuProfiler();
+        execute(profiler, 0x150, 4);
+        profiler.enterCall(0x200, 0xFFFC);
+        execute(profiler, 0x200, 8);
+        profiler.enterCall(0x300, 0xFFFA);
+        execute(profiler, 0x300, 16);
+        assertEquals(profiler.getCallStack(), new int[] {0x200, 0x300});
+
+        // 0x300 drops its return address and returns straight to 0x150
+        profiler.exitCall(0xFFFC);
+        assertEquals(profiler.getCallStack(), new int[0]);
+        execute(profiler, 0x150, 4);
+        assertEquals(profiler.getAddressCycles(0x150), 8);
+
+        Path sym = Files.createTempFile("gameboylfb", ".sym");
+        try {
+            Files.write(sym, Arrays.asList("; rgblink", "00:0200 Update", "00:0300 Draw"));
+            SymbolTable symbols = SymbolTable.read(sym);
+            assertEquals(symbols.resolve(0x302), "Draw+2");
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            profiler.writeCollapsedStacks(new PrintStream(bytes, true), symbols);
+            assertEquals(bytes.toString().split("\\R"), new String[] {
+                    "top 8",
+                    "top;Update 8",
+                    "top;Update;Draw 16",
+            });
+        } finally {
+            Files.delete(sym);
+        }
+    }
+
+    private static void execute(CpuProfiler profiler, int address, int cycles) {
+        profiler.countOpcode(address, 0x00, 0);
+        profiler.addCycles(0x00, 0, cycles);
+    }
+
+}
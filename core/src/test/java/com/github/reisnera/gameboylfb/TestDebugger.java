@@ -0,0 +1,109 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+@Test
+public class TestDebugger {
+
+    private Debugger debugger;
+    private GameBoyCpu.CpuRegisters reg;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        byte[] romData = RomFixtures.romData(
+                0x3E, 0x05,         // 0100 LD A,5
+                0xCD, 0x10, 0x01,   // 0102 CALL 0110
+                0xEA, 0x00, 0xC0,   // 0105 LD (C000),A
+                0x18, 0xFE);        // 0108 JR 0108
+        romData[0x110] = 0x3C;      // 0110 INC A
+        romData[0x111] = (byte) 0xC9; // 0111 RET
+        debugger = new Debugger(new GameBoyRom(romData), RomFixtures.dmgRom());
+        reg = debugger.getGameBoy().getCpu().reg;
+    }
+
+    public void breakpointStopsBeforeInstruction() {
+        debugger.addBreakpoint(0x0105);
+        assertEquals(debugger.run(1000), Debugger.Stop.BREAKPOINT);
+        assertEquals(reg.getPC(), 0x0105);
+        assertEquals(reg.getA(), 6);
+
+        // Resuming executes the instruction at the breakpoint
+        assertEquals(debugger.run(1000), Debugger.Stop.LIMIT);
+        assertEquals(reg.getPC(), 0x0108);
+    }
+
+    public void stepOverRunsWholeCall() {
+        assertEquals(debugger.runTo(0x0102, 1000), Debugger.Stop.DONE);
+        assertEquals(debugger.stepOver(1000), Debugger.Stop.DONE);
+        assertEquals(reg.getPC(), 0x0105);
+        assertEquals(reg.getA(), 6);
+
+        // Anything else is a single step
+        assertEquals(debugger.stepOver(1000), Debugger.Stop.DONE);
+        assertEquals(reg.getPC(), 0x0108);
+    }
+
+    public void writeWatchpointReportsAccess() {
+        debugger.watchWrites(0xC000);
+        assertEquals(debugger.run(1000), Debugger.Stop.WATCHPOINT);
+        assertEquals(reg.getPC(), 0x0108);
+        assertEquals(debugger.getWatchAddress(), 0xC000);
+        assertEquals(debugger.getWatchValue(), 6);
+        assertTrue(debugger.isWatchWrite());
+    }
+
+    public void echoRamAccessTriggersWatchpoint() throws Exception {
+        // LD A,7; LD (E001),A; LD A,(C001); JR -2
+        Debugger echo = new Debugger(new GameBoyRom(RomFixtures.romData(
+                0x3E, 0x07, 0xEA, 0x01, 0xE0, 0xFA, 0x01, 0xC0, 0x18, 0xFE)), RomFixtures.dmgRom());
+        echo.watchWrites(0xC001);
+        echo.watchReads(0xE001);
+        assertEquals(echo.run(1000), Debugger.Stop.WATCHPOINT);
+        assertEquals(echo.getWatchAddress(), 0xE001);
+        assertTrue(echo.isWatchWrite());
+        assertEquals(echo.run(1000), Debugger.Stop.WATCHPOINT);
+        assertEquals(echo.getWatchAddress(), 0xC001);
+        assertEquals(echo.getWatchValue(), 7);
+        assertFalse(echo.isWatchWrite());
+    }
+
+    public void ppuAccessesDoNotTriggerWatchpoints() {
+        // The PPU reads and writes LY on every line, the program never does
+        debugger.watchReads(0xFF44);
+        debugger.watchWrites(0xFF44);
+        assertEquals(debugger.run(100_000), Debugger.Stop.LIMIT);
+        assertTrue(debugger.getGameBoy().getPpu().getFrameCount() > 0);
+
+        debugger.removeWatchpoint(0xFF44);
+        debugger.watchReads(0x0108);
+        assertEquals(debugger.step(), Debugger.Stop.WATCHPOINT);
+        assertFalse(debugger.isWatchWrite());
+    }
+
+    public void tracingDoesNotTriggerWatchpoints() throws Exception {
+        // Tracing reads the byte after every instruction, but the CPU never reads the one after RET
+        debugger.watchReads(0x0112);
+        Path file = Files.createTempFile("gameboylfb", ".gbt");
+        try (TraceRecorder trace = new TraceRecorder(file)) {
+            debugger.getGameBoy().setTrace(trace);
+            assertEquals(debugger.runTo(0x0105, 1000), Debugger.Stop.DONE);
+            debugger.getGameBoy().setTrace(null);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+}
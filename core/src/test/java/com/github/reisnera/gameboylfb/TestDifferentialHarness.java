@@ -0,0 +1,92 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+@Test
+public class TestDifferentialHarness {
+
+    // Gets INC A wrong by flipping the carry flag
+    private static final DifferentialHarness.Engine BROKEN_INC_A = gameBoy -> {
+        int opcode = gameBoy.getMemory().readByte(gameBoy.getCpu().reg.getPC());
+        gameBoy.step();
+        if (opcode == 0x3C) {
+            gameBoy.getCpu().reg.setAF(gameBoy.getCpu().reg.getAF() ^ 0x10);
+        }
+    };
+
+    // Gets INC A wrong by also writing A to WRAM, leaving the registers alone
+    private static final DifferentialHarness.Engine STRAY_WRITE = gameBoy -> {
+        int opcode = gameBoy.getMemory().readByte(gameBoy.getCpu().reg.getPC());
+        gameBoy.step();
+        if (opcode == 0x3C) {
+            gameBoy.getMemory().writeByte(gameBoy.getCpu().reg.getA(), 0xC123);
+        }
+    };
+
+    // Gets LDH (a8),A wrong by dropping writes to the I/O registers below HRAM
+    private static final DifferentialHarness.Engine DROPPED_LDH_WRITE = gameBoy -> {
+        int pc = gameBoy.getCpu().reg.getPC();
+        int opcode = gameBoy.getMemory().readByte(pc);
+        int addr = 0xFF00 | gameBoy.getMemory().readByte(pc + 1);
+        int old = gameBoy.getMemory().readByte(addr);
+        gameBoy.step();
+        if (opcode == 0xE0 && addr < 0xFF80) {
+            gameBoy.getMemory().writeByte(old, addr);
+        }
+    };
+
+    public void referenceAgreesWithItself() throws Exception {
+        DifferentialHarness.FuzzResult result =
+                DifferentialHarness.fuzz(DifferentialHarness.REFERENCE, DifferentialHarness.REFERENCE, 20_000, 1, 2);
+        assertNull(result.getDivergence());
+        assertEquals(result.getTrials(), 20_000);
+    }
+
+    public void fuzzingFindsBrokenInstruction() throws Exception {
+        DifferentialHarness.FuzzResult result =
+                DifferentialHarness.fuzz(DifferentialHarness.REFERENCE, BROKEN_INC_A, 100_000, 1, 1);
+        assertNotNull(result.getDivergence());
+        assertTrue(result.getDivergence().toString().contains("instruction 3C"), result.getDivergence().toString());
+    }
+
+    public void fuzzingComparesIoRegisterWrites() throws Exception {
+        DifferentialHarness.FuzzResult result =
+                DifferentialHarness.fuzz(DifferentialHarness.REFERENCE, DROPPED_LDH_WRITE, 100_000, 1, 1);
+        assertNotNull(result.getDivergence());
+        assertTrue(result.getDivergence().toString().contains("instruction E0"), result.getDivergence().toString());
+    }
+
+    public void lockstepFindsBrokenInstruction() throws Exception {
+        // NOP; NOP; INC A; JR -3
+        GameBoy expected = RomFixtures.gameBoy(0x00, 0x00, 0x3C, 0x18, 0xFD);
+        GameBoy actual = expected.fork();
+        DifferentialHarness.Divergence divergence = DifferentialHarness.runLockstep(
+                expected, DifferentialHarness.REFERENCE, actual, BROKEN_INC_A, 1000);
+        assertNotNull(divergence);
+        // The JP to the cartridge and the two NOPs agree
+        assertTrue(divergence.toString().startsWith("Step 3: instruction 3C 18 FD at 0102"), divergence.toString());
+
+        // A difference only in memory is found at the instruction that made it, not at the end of the frame
+        expected = RomFixtures.gameBoy(0x00, 0x00, 0x3C, 0x18, 0xFD);
+        divergence = DifferentialHarness.runLockstep(
+                expected, DifferentialHarness.REFERENCE, expected.fork(), STRAY_WRITE, 100_000);
+        assertNotNull(divergence);
+        assertTrue(divergence.toString().startsWith("Step 3: instruction 3C 18 FD at 0102"), divergence.toString());
+        assertTrue(divergence.toString().contains("memory C123"), divergence.toString());
+
+        GameBoy again = RomFixtures.gameBoy(0x00, 0x00, 0x3C, 0x18, 0xFD);
+        assertNull(DifferentialHarness.runLockstep(again, DifferentialHarness.REFERENCE,
+                again.fork(), DifferentialHarness.REFERENCE, 100_000));
+    }
+
+}
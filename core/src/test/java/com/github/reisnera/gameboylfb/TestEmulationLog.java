@@ -0,0 +1,63 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+@Test
+public class TestEmulationLog {
+
+    public void recordsAreWrittenOnTheLoggingThread() throws Exception {
+        List<LogRecord> records = new CopyOnWriteArrayList<>();
+        List<String> threads = new CopyOnWriteArrayList<>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+                threads.add(Thread.currentThread().getName());
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Logger logger = LogMessage.UNIMPLEMENTED_OPCODE.getLogger();
+        logger.addHandler(handler);
+        try {
+            GameBoy gameBoy = RomFixtures.gameBoy(0xD3);
+            try {
+                gameBoy.step();
+                gameBoy.step();
+                fail("0xD3 should not execute");
+            } catch (CpuUnimplementedOpcodeException ex) {
+                assertEquals(ex.getMessage(), "Opcode d3 is not implemented.");
+            }
+            assertTrue(EmulationLog.flush());
+        } finally {
+            logger.removeHandler(handler);
+        }
+
+        assertEquals(records.size(), 1);
+        assertEquals(records.get(0).getMessage(), "Opcode d3 at 0100 is not implemented.");
+        assertEquals(threads.get(0), "emulation-log");
+    }
+
+}
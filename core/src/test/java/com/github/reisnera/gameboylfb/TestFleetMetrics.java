@@ -0,0 +1,86 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+@Test
+public class TestFleetMetrics {
+
+    public void scrapeSumsInstances() throws Exception {
+        FleetMetrics metrics = new FleetMetrics();
+        FleetMetrics.Instance first = metrics.register("first");
+        FleetMetrics.Instance second = metrics.register("second");
+
+        Thread other = new Thread(() -> {
+            for (int i = 0; i < 5; i++) {
+                second.recordFrame(3_000_000, 10_000, false);
+            }
+        });
+        other.start();
+        first.recordFrame(700_000, 200_000, true);
+        first.recordFrame(20_000_000, 0, false);
+        other.join();
+
+        List<String> lines;
+        try (MetricsEndpoint endpoint = new MetricsEndpoint(metrics, 0)) {
+            URL url = new URL("http", "127.0.0.1", endpoint.getAddress().getPort(), "/metrics");
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            assertEquals(connection.getResponseCode(), 200);
+            assertEquals(connection.getContentType(), MetricsEndpoint.CONTENT_TYPE);
+            try (BufferedReader in = new BufferedReader(
+                    new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+                lines = in.lines().collect(Collectors.toList());
+            }
+        }
+
+        assertTrue(lines.contains("gameboylfb_frames_total 7"), lines.toString());
+        assertTrue(lines.contains("gameboylfb_late_frames_total 1"));
+        assertTrue(lines.contains("gameboylfb_instances 2"));
+        assertTrue(lines.contains("# TYPE gameboylfb_frame_host_seconds histogram"));
+        assertTrue(lines.contains("gameboylfb_frame_host_seconds_bucket{instance=\"first\",le=\"0.001\"} 1"));
+        assertTrue(lines.contains("gameboylfb_frame_host_seconds_bucket{instance=\"first\",le=\"+Inf\"} 2"));
+        assertTrue(lines.contains("gameboylfb_frame_host_seconds_bucket{instance=\"second\",le=\"0.004\"} 5"));
+        assertTrue(lines.contains("gameboylfb_frame_host_seconds_count{instance=\"second\"} 5"));
+        assertTrue(lines.contains("gameboylfb_scheduler_lag_seconds_bucket{instance=\"first\",le=\"5.0E-5\"} 1"));
+    }
+
+    public void hostsSharingMetricsRegisterAndUnregisterSessions() throws Exception {
+        FleetMetrics metrics = new FleetMetrics();
+        SessionHost first = new SessionHost(false);
+        SessionHost second = new SessionHost(false);
+        first.setMetrics(metrics);
+        second.setMetrics(metrics);
+        first.start(RomFixtures.gameBoy(0x18, 0xFE), null, true);
+        second.start(RomFixtures.gameBoy(0x18, 0xFE), null, true);
+
+        StringWriter out = new StringWriter();
+        metrics.write(out);
+        assertTrue(out.toString().contains("gameboylfb_instances 2\n"), out.toString());
+
+        first.stopAll();
+        second.stopAll();
+        out = new StringWriter();
+        metrics.write(out);
+        assertTrue(out.toString().contains("gameboylfb_instances 0\n"), out.toString());
+        assertFalse(out.toString().contains("instance=\"session-"), out.toString());
+    }
+
+}
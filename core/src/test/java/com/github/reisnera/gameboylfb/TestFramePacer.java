@@ -0,0 +1,67 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+@Test
+public class TestFramePacer {
+
+    private static final double PERIOD_NANOS = 1e9 / GameBoyCpu.VBLANK_FREQ_HZ;
+
+    public void fixedRatioKeepsToSchedule() {
+        FramePacer pacer = new FramePacer();
+        pacer.setRatio(4);
+        long start = System.nanoTime();
+        pacer.reset();
+        for (int i = 0; i < 8; i++) {
+            pacer.awaitNextFrame();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        assertTrue(elapsed >= (long) (8 * PERIOD_NANOS / 4), "ran ahead of schedule: " + elapsed);
+        assertEquals(pacer.getFrameCount(), 8);
+    }
+
+    public void turboNeverWaits() {
+        FramePacer pacer = new FramePacer();
+        pacer.setTurbo();
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            pacer.awaitNextFrame();
+        }
+
+        assertTrue(System.nanoTime() - start < PERIOD_NANOS * 10);
+        assertEquals(pacer.getLateFrames(), 0);
+        assertEquals(pacer.getDriftNanos(), 0);
+    }
+
+    public void fallingFarBehindDropsFrames() throws Exception {
+        FramePacer pacer = new FramePacer();
+        pacer.setRatio(8);
+        pacer.reset();
+        Thread.sleep(100); // about 48 frame periods at 8x
+
+        pacer.awaitNextFrame();
+        assertEquals(pacer.getLateFrames(), 1);
+        assertTrue(pacer.getDroppedFrames() > 4);
+
+        // Pacing restarted from now, so the next frame is on time again
+        pacer.awaitNextFrame();
+        assertEquals(pacer.getLateFrames(), 1);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void ratioMustBePositive() {
+        new FramePacer().setRatio(0);
+    }
+
+}
@@ -0,0 +1,89 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+@Test
+public class TestFrameTripleBuffer {
+
+    private FrameTripleBuffer frames;
+
+    private void publish(int value) {
+        frames.getBackBuffer()[0] = (byte) value;
+        frames.publish();
+    }
+
+    @BeforeMethod
+    public void beforeMethod() {
+        frames = new FrameTripleBuffer(1);
+    }
+
+    public void nothingPublished() {
+        assertFalse(frames.hasNewFrame());
+        assertEquals(frames.acquire()[0], 0);
+    }
+
+    public void acquireReturnsPublishedFrame() {
+        publish(1);
+
+        assertTrue(frames.hasNewFrame());
+        assertEquals(frames.acquire()[0], 1);
+        assertFalse(frames.hasNewFrame());
+    }
+
+    public void acquireSkipsToNewestFrame() {
+        publish(1);
+        publish(2);
+        publish(3);
+
+        assertEquals(frames.acquire()[0], 3);
+    }
+
+    public void frontBufferIsStableWhileProducing() {
+        publish(1);
+        byte[] front = frames.acquire();
+
+        publish(2);
+        publish(3);
+        publish(4);
+
+        assertEquals(front[0], 1);
+        assertEquals(frames.acquire()[0], 4);
+    }
+
+    public void framesCrossThreadsInOrder() throws Exception {
+        final int count = 100000;
+        final FrameTripleBuffer frames = new FrameTripleBuffer(3);
+        Thread producer = new Thread(() -> {
+            for (int i = 1; i <= count; i++) {
+                byte[] back = frames.getBackBuffer();
+                back[0] = (byte) (i >>> 16);
+                back[1] = (byte) (i >>> 8);
+                back[2] = (byte) i;
+                frames.publish();
+            }
+        });
+        producer.start();
+
+        int last = 0;
+        while (producer.isAlive() || frames.hasNewFrame()) {
+            byte[] front = frames.acquire();
+            int value = ((front[0] & 0xFF) << 16) | ((front[1] & 0xFF) << 8) | (front[2] & 0xFF);
+            // Frames may be skipped but never go backwards
+            assertTrue(value >= last);
+            last = value;
+        }
+        producer.join();
+        assertEquals(last, count);
+    }
+
+}
@@ -0,0 +1,222 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+@Test
+public class TestGameBoyBatchRunner {
+
+    private Path dir;
+    private RomCache romCache;
+
+    @BeforeMethod
+    public void beforeMethod() throws Exception {
+        dir = Files.createTempDirectory("gameboylfb");
+        Path dmgFile = Files.write(dir.resolve("DMG_ROM.bin"), RomFixtures.dmgRom());
+        romCache = new RomCache(dmgFile.toString());
+    }
+
+    @AfterMethod
+    public void afterMethod() throws Exception {
+        for (Path file : Files.newDirectoryStream(dir)) {
+            Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+
+    public void failingRomsDoNotStopTheBatch() throws Exception {
+        String good = Files.write(dir.resolve("good.gb"), RomFixtures.romData(0x18, 0xFE)).toString();
+        String truncated = Files.write(dir.resolve("truncated.gb"), new byte[0x100]).toString();
+        String missing = dir.resolve("missing.gb").toString();
+
+        List<GameBoyBatchRunner.Result> results =
+                GameBoyBatchRunner.runAll(romCache, Arrays.asList(missing, truncated, good), 3);
+
+        assertEquals(results.size(), 3);
+        assertNotNull(results.get(0).error);
+        assertTrue(results.get(0).error.contains("missing.gb"), results.get(0).error);
+        assertEquals(results.get(0).frames, 0);
+        assertNotNull(results.get(1).error);
+        assertEquals(results.get(1).frames, 0);
+        assertNull(results.get(2).error);
+        assertEquals(results.get(2).frames, 3);
+        assertTrue(results.get(2).cycles > 0);
+    }
+
+    public void jsonIsValidAndEscaped() {
+        GameBoyBatchRunner.Result ok = new GameBoyBatchRunner.Result();
+        ok.romFile = "C:\\roms\\\"odd\".gb";
+        ok.title = "A\tB\u0001";
+        ok.frames = 60;
+        ok.instructions = 1_000_000;
+        ok.cycles = 4_194_304;
+        ok.nanos = 500_000_000;
+        ok.peakHeapBytes = 2048;
+        GameBoyBatchRunner.Result failed = new GameBoyBatchRunner.Result();
+        failed.romFile = "missing.gb";
+        failed.error = "java.nio.file.NoSuchFileException: missing.gb";
+
+        List<Object> rows = asList(new JsonParser(GameBoyBatchRunner.toJson(Arrays.asList(ok, failed))).parse());
+
+        assertEquals(rows.size(), 2);
+        Map<String, Object> row = asMap(rows.get(0));
+        assertEquals(row.get("rom"), ok.romFile);
+        assertEquals(row.get("title"), ok.title);
+        assertEquals(row.get("frames"), 60.0);
+        assertEquals(row.get("instructions"), 1_000_000.0);
+        assertEquals(row.get("cycles"), 4_194_304.0);
+        assertEquals(row.get("nanos"), 500_000_000.0);
+        assertEquals((Double) row.get("emulatedMhz"), 8.3886, 1e-4);
+        assertEquals((Double) row.get("fps"), 120.0, 1e-2);
+        assertEquals((Double) row.get("nsPerInstruction"), 500.0, 1e-3);
+        assertEquals(row.get("peakHeapBytes"), 2048.0);
+        assertTrue(row.containsKey("error"));
+        assertNull(row.get("error"));
+
+        row = asMap(rows.get(1));
+        assertNull(row.get("title"));
+        assertEquals(row.get("error"), failed.error);
+        assertEquals(row.get("emulatedMhz"), 0.0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> asList(Object value) {
+        assertTrue(value instanceof List, String.valueOf(value));
+        return (List<Object>) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asMap(Object value) {
+        assertTrue(value instanceof Map, String.valueOf(value));
+        return (Map<String, Object>) value;
+    }
+
+    /**
+     * Strict parser for the JSON subset toJson() may emit: arrays, objects,
+     * strings, numbers and null. Anything malformed fails the test.
+     */
+    private static final class JsonParser {
+        private final String text;
+        private int pos;
+
+        JsonParser(String text) {
+            this.text = text;
+        }
+
+        Object parse() {
+            Object value = value();
+            skipWhitespace();
+            assertEquals(pos, text.length(), "Trailing characters in " + text);
+            return value;
+        }
+
+        private Object value() {
+            skipWhitespace();
+            assertTrue(pos < text.length(), "Unexpected end of " + text);
+            char c = text.charAt(pos);
+            if (c == '[') {
+                List<Object> list = new ArrayList<>();
+                pos++;
+                if (!consume(']')) {
+                    do {
+                        list.add(value());
+                    } while (consume(','));
+                    expect(']');
+                }
+                return list;
+            }
+            if (c == '{') {
+                Map<String, Object> map = new LinkedHashMap<>();
+                pos++;
+                if (!consume('}')) {
+                    do {
+                        skipWhitespace();
+                        String key = string();
+                        expect(':');
+                        assertNull(map.put(key, value()), "Duplicate key " + key);
+                    } while (consume(','));
+                    expect('}');
+                }
+                return map;
+            }
+            if (c == '"') {
+                return string();
+            }
+            if (text.startsWith("null", pos)) {
+                pos += 4;
+                return null;
+            }
+            int start = pos;
+            while (pos < text.length() && "+-.0123456789eE".indexOf(text.charAt(pos)) >= 0) {
+                pos++;
+            }
+            String number = text.substring(start, pos);
+            assertTrue(number.matches("-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?"),
+                    "Bad number '" + number + "' at " + start);
+            return Double.parseDouble(number);
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                assertTrue(pos < text.length(), "Unterminated string in " + text);
+                char c = text.charAt(pos++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                assertTrue(c >= 0x20, "Unescaped control character at " + (pos - 1));
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                char escape = text.charAt(pos++);
+                int index = "\"\\/bfnrt".indexOf(escape);
+                if (escape == 'u') {
+                    value.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                    pos += 4;
+                } else {
+                    assertTrue(index >= 0, "Bad escape \\" + escape);
+                    value.append("\"\\/\b\f\n\r\t".charAt(index));
+                }
+            }
+        }
+
+        private void skipWhitespace() {
+            while (pos < text.length() && " \t\r\n".indexOf(text.charAt(pos)) >= 0) {
+                pos++;
+            }
+        }
+
+        private boolean consume(char c) {
+            skipWhitespace();
+            if (pos < text.length() && text.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            assertTrue(consume(c), "Expected '" + c + "' at " + pos + " in " + text);
+        }
+    }
+
+}
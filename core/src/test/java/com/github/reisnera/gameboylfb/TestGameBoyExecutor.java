@@ -0,0 +1,69 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+@Test
+public class TestGameBoyExecutor {
+
+    private static final int[] SPIN = {0x3C, 0x18, 0xFD}; // loop: INC A; JR loop
+
+    private ForkJoinPool pool;
+
+    @BeforeMethod
+    public void beforeMethod() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterMethod
+    public void afterMethod() {
+        pool.shutdown();
+    }
+
+    public void parallelRunMatchesSequentialRun() throws Exception {
+        GameBoy sequential = RomFixtures.gameBoy(SPIN);
+        for (int i = 0; i < 20; i++) {
+            sequential.runFrame();
+        }
+
+        GameBoyExecutor executor = new GameBoyExecutor(pool);
+        for (int i = 0; i < 8; i++) {
+            executor.add(RomFixtures.gameBoy(SPIN));
+        }
+        executor.runFrames(20);
+
+        assertEquals(executor.getFramesRun(), 8 * 20);
+        assertTrue(executor.getAggregateFramesPerSecond() > 0);
+        for (int i = 0; i < 8; i++) {
+            GameBoy gameBoy = executor.getInstance(i);
+            assertEquals(gameBoy.getPpu().getFrameCount(), 20);
+            assertEquals(gameBoy.getCycleCount(), sequential.getCycleCount());
+            assertEquals(gameBoy.getCpu().reg.getA(), sequential.getCpu().reg.getA());
+        }
+    }
+
+    public void failingInstanceDoesNotStopOthers() throws Exception {
+        GameBoyExecutor executor = new GameBoyExecutor(pool);
+        executor.add(RomFixtures.gameBoy(SPIN));
+        int broken = executor.add(RomFixtures.gameBoy(0xD3)); // unused opcode
+        executor.runFrames(5);
+        executor.runFrames(5);
+
+        assertNull(executor.getFailure(0));
+        assertEquals(executor.getInstance(0).getPpu().getFrameCount(), 10);
+        assertTrue(executor.getFailure(broken) instanceof CpuUnimplementedOpcodeException);
+        assertEquals(executor.getFramesRun(), 10);
+    }
+
+}
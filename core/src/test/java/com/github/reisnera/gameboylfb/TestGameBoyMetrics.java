@@ -0,0 +1,76 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import javax.management.MBeanServer;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+@Test
+public class TestGameBoyMetrics {
+
+    // JR -2: spins forever
+    private static final int[] SPIN = {0x18, 0xFE};
+
+    public void mbeanReportsRunningInstance() throws Exception {
+        GameBoy gameBoy = RomFixtures.gameBoy(SPIN);
+        EmulationLoop loop = new EmulationLoop(gameBoy, new Joypad(), null);
+        try (GameBoyMetrics metrics = GameBoyMetrics.register(loop, "test")) {
+            for (int i = 0; i < 10; i++) {
+                gameBoy.runFrame();
+            }
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertTrue(server.isRegistered(metrics.getObjectName()));
+            assertEquals(server.getAttribute(metrics.getObjectName(), "FramesRun"), 10L);
+            assertEquals(server.getAttribute(metrics.getObjectName(), "Paused"), false);
+            assertTrue((Long) server.getAttribute(metrics.getObjectName(), "PrivateMemoryBytes") > 0);
+        }
+    }
+
+    public void framesAndStatesAreRecorded() throws Exception {
+        GameBoy gameBoy = RomFixtures.gameBoy(SPIN);
+        Path file = Files.createTempFile("gameboylfb", ".jfr");
+        try {
+            try (Recording recording = new Recording()) {
+                recording.enable("com.github.reisnera.gameboylfb.Frame");
+                recording.enable("com.github.reisnera.gameboylfb.State");
+                recording.start();
+                for (int i = 0; i < 3; i++) {
+                    gameBoy.runFrame();
+                }
+                gameBoy.loadState(gameBoy.saveState());
+                recording.stop();
+                recording.dump(file);
+            }
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            long frames = events.stream().filter(e -> e.getEventType().getName().endsWith(".Frame")).count();
+            long states = events.stream().filter(e -> e.getEventType().getName().endsWith(".State")).count();
+            assertEquals(frames, 3);
+            assertEquals(states, 2);
+            RecordedEvent frame = events.stream().filter(e -> e.getEventType().getName().endsWith(".Frame"))
+                    .findFirst().get();
+            assertTrue(frame.getLong("instructions") > 0);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+}
@@ -0,0 +1,40 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.util.Arrays;
+
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+@Test
+public class TestInputScript {
+
+    public void buttonsHoldUntilNextLine() {
+        InputScript script = new InputScript(Arrays.asList(
+                "# title screen",
+                "10 start",
+                "",
+                "12 none",
+                "20 a+right"));
+
+        assertEquals(script.buttonsAt(0), 0);
+        assertEquals(script.buttonsAt(10), Joypad.BUTTON_START);
+        assertEquals(script.buttonsAt(11), Joypad.BUTTON_START);
+        assertEquals(script.buttonsAt(12), 0);
+        assertEquals(script.buttonsAt(500), Joypad.BUTTON_A | Joypad.BUTTON_RIGHT);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void unknownButtonIsRejected() {
+        new InputScript(Arrays.asList("0 turbo"));
+    }
+
+}
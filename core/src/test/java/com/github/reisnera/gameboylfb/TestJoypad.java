@@ -0,0 +1,62 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+@Test
+public class TestJoypad {
+
+    private static final int ADDR_P1 = 0xFF00;
+
+    private GameBoyMemory mem;
+
+    @BeforeMethod
+    public void beforeMethod() throws Exception {
+        mem = new GameBoyMemory(new GameBoyRom(RomFixtures.romData(0x00)), RomFixtures.dmgRom());
+    }
+
+    public void pressAndRelease() {
+        Joypad joypad = new Joypad();
+        joypad.press(Joypad.BUTTON_A | Joypad.BUTTON_UP);
+        joypad.release(Joypad.BUTTON_UP);
+
+        assertEquals(joypad.get(), Joypad.BUTTON_A);
+    }
+
+    public void directionsReadBackWhenSelected() {
+        mem.setJoypadState(Joypad.BUTTON_LEFT | Joypad.BUTTON_START);
+        mem.writeByte(0x20, ADDR_P1); // select directions
+
+        assertEquals(mem.readByte(ADDR_P1), 0xE0 | 0x0D);
+    }
+
+    public void buttonsReadBackWhenSelected() {
+        mem.setJoypadState(Joypad.BUTTON_LEFT | Joypad.BUTTON_START);
+        mem.writeByte(0x10, ADDR_P1); // select buttons
+
+        assertEquals(mem.readByte(ADDR_P1), 0xD0 | 0x07);
+    }
+
+    public void nothingSelectedReadsReleased() {
+        mem.setJoypadState(0xFF);
+        mem.writeByte(0x30, ADDR_P1);
+
+        assertEquals(mem.readByte(ADDR_P1), 0xFF);
+    }
+
+    public void pressRequestsInterrupt() {
+        mem.setJoypadState(Joypad.BUTTON_B);
+
+        assertEquals(mem.readByte(0xFF0F) & 0x10, 0x10);
+    }
+
+}
@@ -0,0 +1,120 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+@Test
+public class TestMemoryFork {
+
+    private static final int WRAM_ADDR = 0xC123;
+
+    private GameBoyMemory mem;
+
+    @BeforeMethod
+    public void beforeMethod() throws Exception {
+        mem = new GameBoyMemory(new GameBoyRom(RomFixtures.romData(0x00)), RomFixtures.dmgRom());
+    }
+
+    public void forkSeesParentState() {
+        mem.writeByte(0x42, WRAM_ADDR);
+        GameBoyMemory child = mem.fork();
+
+        assertEquals(child.readByte(WRAM_ADDR), 0x42);
+        assertEquals(child.readByte(0xFF47), 0xFC); // BGP from initialize()
+    }
+
+    public void childWriteDoesNotLeakToParent() {
+        mem.writeByte(0x42, WRAM_ADDR);
+        GameBoyMemory child = mem.fork();
+
+        child.writeByte(0x24, WRAM_ADDR);
+
+        assertEquals(child.readByte(WRAM_ADDR), 0x24);
+        assertEquals(mem.readByte(WRAM_ADDR), 0x42);
+    }
+
+    public void parentWriteDoesNotLeakToChild() {
+        mem.writeByte(0x42, WRAM_ADDR);
+        GameBoyMemory child = mem.fork();
+
+        mem.writeByte(0x24, WRAM_ADDR);
+
+        assertEquals(child.readByte(WRAM_ADDR), 0x42);
+        assertEquals(mem.readByte(WRAM_ADDR), 0x24);
+    }
+
+    public void siblingsAreIndependent() {
+        GameBoyMemory first = mem.fork();
+        GameBoyMemory second = mem.fork();
+
+        first.writeByte(0x11, WRAM_ADDR);
+        second.writeByte(0x22, WRAM_ADDR + 1);
+
+        assertEquals(first.readByte(WRAM_ADDR), 0x11);
+        assertEquals(first.readByte(WRAM_ADDR + 1), 0x00);
+        assertEquals(second.readByte(WRAM_ADDR), 0x00);
+        assertEquals(second.readByte(WRAM_ADDR + 1), 0x22);
+    }
+
+    public void disableDmgRomOnForkIsLocal() {
+        GameBoyMemory child = mem.fork();
+
+        child.disableDmgRom();
+
+        assertEquals(child.readByte(0), 0x00);
+        assertEquals(mem.readByte(0), 0xC3);
+    }
+
+    public void forkedGameBoysStepIndependently() throws Exception {
+        // LD A,d8 0x5A ; LD (a16),A 0xC000 ; JR -2
+        GameBoy parent = RomFixtures.gameBoy(0x3E, 0x5A, 0xEA, 0x00, 0xC0, 0x18, 0xFE);
+        parent.step(); // JP 0x0100 in the DMG ROM stand-in
+
+        GameBoy child = parent.fork();
+        child.step();
+        child.step();
+
+        assertEquals(child.getCpu().reg.getA(), 0x5A);
+        assertEquals(child.getMemory().readByte(0xC000), 0x5A);
+        assertEquals(parent.getCpu().reg.getPC(), 0x0100);
+        assertEquals(parent.getMemory().readByte(0xC000), 0x00);
+    }
+
+    public void forkStartsWithDecodedTilesAndCopiesOnWrite() {
+        mem.writeByte(0xFF, 0x8000);
+        TileCache parentTiles = mem.getTileCache();
+        int offset = parentTiles.tileOffset(0);
+        GameBoyMemory child = mem.fork();
+        TileCache childTiles = child.getTileCache();
+        assertEquals(childTiles.tileOffset(0), offset);
+        assertEquals(childTiles.getPixels()[offset], 1);
+
+        child.writeByte(0x00, 0x8000);
+        assertEquals(childTiles.getPixels()[childTiles.tileOffset(0)], 0);
+        assertEquals(parentTiles.getPixels()[parentTiles.tileOffset(0)], 1);
+    }
+
+    public void forkSharesFrameBufferUntilItRenders() throws Exception {
+        GameBoy parent = RomFixtures.gameBoy(0x18, 0xFE); // JR -2
+        parent.runFrame();
+        byte[] rendered = parent.getPpu().getFrameBuffer().clone();
+
+        GameBoy child = parent.fork();
+        assertSame(child.getPpu().getFrameBuffer(), parent.getPpu().getFrameBuffer());
+        child.getMemory().writeByte(0x00, 0xFF47); // BGP: every shade 0
+        child.runFrame();
+
+        assertNotSame(child.getPpu().getFrameBuffer(), parent.getPpu().getFrameBuffer());
+        assertEquals(parent.getPpu().getFrameBuffer(), rendered);
+    }
+
+}
@@ -0,0 +1,95 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+@Test
+public class TestMovie {
+
+    private static final int WRAM_ADDR = 0xC000;
+
+    // loop: LD A,(FF00); LD B,A; LD A,(C000); ADD A,B; LD (C000),A; JR loop
+    private static final int[] SUM_JOYPAD = {0xF0, 0x00, 0x47, 0xFA, 0x00, 0xC0, 0x80, 0xEA, 0x00, 0xC0, 0x18, 0xF3};
+
+    private Path file;
+
+    @BeforeMethod
+    public void beforeMethod() throws Exception {
+        file = Files.createTempFile("gameboylfb", ".gbm");
+    }
+
+    @AfterMethod
+    public void afterMethod() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    private static GameBoy gameBoy() throws Exception {
+        GameBoy gameBoy = RomFixtures.gameBoy(SUM_JOYPAD);
+        gameBoy.getMemory().writeByte(0x10, 0xFF00); // select the button group
+        return gameBoy;
+    }
+
+    private static void run(GameBoy gameBoy, Movie movie, int from) {
+        for (int frame = from; frame < movie.getFrameCount(); frame++) {
+            gameBoy.getMemory().setJoypadState(movie.buttonsAt(frame));
+            gameBoy.runFrame();
+        }
+    }
+
+    public void replayFromFileMatchesRecording() throws Exception {
+        GameBoy recorded = gameBoy();
+        Movie movie = new Movie(recorded, false);
+        for (int frame = 0; frame < 20; frame++) {
+            movie.record(frame % 3 == 0 ? Joypad.BUTTON_A : Joypad.BUTTON_START | Joypad.BUTTON_B);
+        }
+        run(recorded, movie, 0);
+        movie.write(file);
+
+        Movie loaded = Movie.read(file);
+        GameBoy replayed = RomFixtures.gameBoy(SUM_JOYPAD);
+        loaded.begin(replayed); // restores the selected button group from the start state
+        run(replayed, loaded, 0);
+
+        assertEquals(loaded.getFrameCount(), 20);
+        assertEquals(loaded.buttonsAt(3), Joypad.BUTTON_A);
+        assertEquals(loaded.buttonsAt(20), 0);
+        assertEquals(replayed.getMemory().readByte(WRAM_ADDR), recorded.getMemory().readByte(WRAM_ADDR));
+        assertEquals(replayed.getCycleCount(), recorded.getCycleCount());
+    }
+
+    @Test(expectedExceptions = MovieInvalidException.class)
+    public void differentRomIsRejected() throws Exception {
+        Movie movie = new Movie(gameBoy(), true);
+        movie.write(file);
+
+        Movie.read(file).begin(RomFixtures.gameBoy(0x00));
+    }
+
+    @Test(expectedExceptions = MovieInvalidException.class)
+    public void negativeStateLengthIsRejected() throws Exception {
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(Movie.MAGIC);
+            out.writeInt(Movie.VERSION);
+            out.writeLong(gameBoy().getRom().getCrc32());
+            out.writeInt(-1);
+            out.writeInt(0);
+        }
+
+        Movie.read(file);
+    }
+
+}
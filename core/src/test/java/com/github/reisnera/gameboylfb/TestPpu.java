@@ -0,0 +1,171 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+@Test
+public class TestPpu {
+
+    private static final int WIDTH = GameBoyPpu.SCREEN_WIDTH;
+
+    private GameBoy gameBoy;
+    private GameBoyMemory mem;
+
+    // Test helper functions
+
+    private void writeTile(int tileNumber, int low, int high) {
+        for (int row = 0; row < 8; row++) {
+            mem.writeByte(low, 0x8000 + tileNumber * 16 + row * 2);
+            mem.writeByte(high, 0x8000 + tileNumber * 16 + row * 2 + 1);
+        }
+    }
+
+    private int pixel(int x, int y) {
+        return gameBoy.getPpu().getFrameBuffer()[y * WIDTH + x];
+    }
+
+    @BeforeMethod
+    public void beforeMethod() throws Exception {
+        gameBoy = RomFixtures.gameBoy(0x18, 0xFE); // JR -2
+        mem = gameBoy.getMemory();
+
+        writeTile(1, 0xFF, 0xFF); // colour 3
+        writeTile(2, 0xFF, 0x00); // colour 1
+        mem.writeByte(1, 0x9800); // top left map entry uses tile 1
+    }
+
+    public void frameEndsAtVblank() {
+        gameBoy.runFrame();
+
+        assertEquals(gameBoy.getPpu().getFrameCount(), 1);
+        assertEquals(gameBoy.getPpu().getLine(), GameBoyPpu.SCREEN_HEIGHT);
+        assertEquals(mem.readByte(0xFF44), GameBoyPpu.SCREEN_HEIGHT);
+        assertEquals(mem.readByte(0xFF41) & 0x03, 1);
+        assertEquals(mem.readByte(0xFF0F) & 0x01, 1);
+    }
+
+    public void backgroundUsesPalette() {
+        gameBoy.runFrame();
+
+        // BGP 0xFC maps colour 3 to shade 3 and colour 0 to shade 0
+        assertEquals(pixel(0, 0), 3);
+        assertEquals(pixel(7, 7), 3);
+        assertEquals(pixel(8, 0), 0);
+        assertEquals(pixel(0, 8), 0);
+    }
+
+    public void backgroundScrolls() {
+        mem.writeByte(4, 0xFF43); // SCX
+        mem.writeByte(2, 0xFF42); // SCY
+        gameBoy.runFrame();
+
+        assertEquals(pixel(3, 5), 3);
+        assertEquals(pixel(4, 5), 0);
+        assertEquals(pixel(3, 6), 0);
+    }
+
+    public void spritesDrawOverBackground() {
+        mem.writeByte(0x93, 0xFF40); // LCDC with sprites enabled
+        mem.writeByte(0xE4, 0xFF48); // OBP0 identity mapping
+        mem.writeByte(16, 0xFE00); // Y
+        mem.writeByte(8 + 20, 0xFE01); // X
+        mem.writeByte(2, 0xFE02); // tile
+        mem.writeByte(0, 0xFE03); // attributes
+        gameBoy.runFrame();
+
+        assertEquals(pixel(20, 0), 1);
+        assertEquals(pixel(27, 7), 1);
+        assertEquals(pixel(28, 0), 0);
+        assertEquals(pixel(20, 8), 0);
+    }
+
+    public void hiddenSpriteHidesLowerPrioritySprites() {
+        mem.writeByte(0x93, 0xFF40); // LCDC with sprites enabled
+        mem.writeByte(0xE4, 0xFF48); // OBP0 identity mapping
+        mem.writeByte(0x08, 0xFF49); // OBP1 maps colour 1 to shade 2
+        // Two sprites at the same X; the first in OAM has priority and is behind the background
+        mem.writeByte(16, 0xFE00);
+        mem.writeByte(8 + 4, 0xFE01);
+        mem.writeByte(2, 0xFE02);
+        mem.writeByte(0x80, 0xFE03);
+        mem.writeByte(16, 0xFE04);
+        mem.writeByte(8 + 4, 0xFE05);
+        mem.writeByte(2, 0xFE06);
+        mem.writeByte(0x10, 0xFE07);
+        gameBoy.runFrame();
+
+        // Over background colour 3 the background shows, not the sprite underneath
+        assertEquals(pixel(4, 0), 3);
+        assertEquals(pixel(7, 7), 3);
+        // Over background colour 0 the top sprite shows
+        assertEquals(pixel(8, 0), 1);
+        assertEquals(pixel(11, 7), 1);
+    }
+
+    public void tileWritesInvalidateDecodedTiles() {
+        gameBoy.runFrame();
+        assertEquals(pixel(0, 0), 3);
+
+        writeTile(1, 0x00, 0xFF); // colour 2
+        mem.writeByte(0xE4, 0xFF47); // BGP identity mapping
+        gameBoy.runFrame();
+
+        assertEquals(pixel(0, 0), 2);
+    }
+
+    public void signedTileAddressing() {
+        // Tile number 0xFF with LCDC bit 4 clear is the tile at 0x8FF0
+        writeTile(255, 0xFF, 0x00);
+        mem.writeByte(0x81, 0xFF40);
+        mem.writeByte(0xE4, 0xFF47);
+        mem.writeByte(0xFF, 0x9801);
+        gameBoy.runFrame();
+
+        assertEquals(pixel(8, 0), 1);
+        assertEquals(pixel(0, 0), 0); // tile 1 now means 0x9010, which is empty
+    }
+
+    public void staticBackgroundLinesAreReused() {
+        gameBoy.runFrame();
+        gameBoy.runFrame();
+
+        assertEquals(gameBoy.getPpu().getLastFrameCachedLines(), GameBoyPpu.SCREEN_HEIGHT);
+        assertEquals(pixel(0, 0), 3);
+    }
+
+    public void scrollingInvalidatesLineCache() {
+        gameBoy.runFrame();
+        mem.writeByte(4, 0xFF43); // SCX
+        gameBoy.runFrame();
+
+        assertEquals(gameBoy.getPpu().getLastFrameCachedLines(), 0);
+        assertEquals(pixel(3, 0), 3);
+        assertEquals(pixel(4, 0), 0);
+    }
+
+    public void tileMapWriteInvalidatesLineCache() {
+        gameBoy.runFrame();
+        mem.writeByte(1, 0x9801);
+        gameBoy.runFrame();
+
+        assertEquals(gameBoy.getPpu().getLastFrameCachedLines(), 0);
+        assertEquals(pixel(8, 0), 3);
+    }
+
+    public void lcdOffBlanksScreen() {
+        mem.writeByte(0x11, 0xFF40);
+        gameBoy.runFrame();
+
+        assertEquals(pixel(0, 0), 0);
+    }
+
+}
@@ -0,0 +1,97 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.util.Arrays;
+
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+@Test
+public class TestSaveState {
+
+    private GameBoy gameBoy;
+    private byte[] state;
+
+    @BeforeMethod
+    public void beforeMethod() throws Exception {
+        gameBoy = RomFixtures.gameBoy(0x3C, 0x18, 0xFD); // INC A; JR -3
+        gameBoy.runFrame();
+        gameBoy.getMemory().writeByte(0x42, 0xC000);
+        state = gameBoy.saveState();
+    }
+
+    public void loadRestoresSavedState() throws Exception {
+        int af = gameBoy.getCpu().reg.getAF();
+        long instructions = gameBoy.getInstructionCount();
+        gameBoy.runFrame();
+        gameBoy.getMemory().writeByte(0x00, 0xC000);
+
+        gameBoy.loadState(state);
+        assertEquals(gameBoy.getCpu().reg.getAF(), af);
+        assertEquals(gameBoy.getInstructionCount(), instructions);
+        assertEquals(gameBoy.getMemory().readByte(0xC000), 0x42);
+        assertEquals(gameBoy.saveState(), state);
+    }
+
+    public void loadKeepsUnchangedPagesShared() throws Exception {
+        GameBoy fork = gameBoy.fork();
+        assertEquals(fork.getMemory().getPrivateBytes(), 0);
+        fork.loadState(state);
+        assertEquals(fork.getMemory().getPrivateBytes(), 0);
+
+        // Only pages whose contents differ are copied
+        GameBoy fresh = RomFixtures.gameBoy(0x3C, 0x18, 0xFD);
+        int freshBytes = fresh.getMemory().getPrivateBytes();
+        fresh.getMemory().writeByte(0x42, 0xD000);
+        fresh.loadState(state);
+        assertTrue(fresh.getMemory().getPrivateBytes() <= freshBytes + GameBoyMemory.PAGE_SIZE,
+                "Private bytes: " + fresh.getMemory().getPrivateBytes());
+    }
+
+    public void forksAndStatesKeepHaltCount() throws Exception {
+        GameBoy halting = RomFixtures.gameBoy(0x76, 0x18, 0xFD); // HALT; JR -3
+        for (int i = 0; i < 11; i++) {
+            halting.step();
+        }
+        assertEquals(halting.getCpu().getHaltCount(), 5);
+        assertEquals(halting.fork().getCpu().getHaltCount(), 5);
+
+        GameBoy restored = RomFixtures.gameBoy(0x76, 0x18, 0xFD);
+        restored.loadState(halting.saveState());
+        assertEquals(restored.getCpu().getHaltCount(), 5);
+    }
+
+    public void truncatedStateLeavesMachineUnchanged() {
+        gameBoy.runFrame();
+        byte[] before = gameBoy.saveState();
+        try {
+            gameBoy.loadState(Arrays.copyOf(state, state.length - 100));
+            fail("Truncated state should not load");
+        } catch (StateInvalidException ex) {
+            assertEquals(ex.getMessage(), "Save state is truncated or corrupt.");
+        }
+        assertEquals(gameBoy.saveState(), before);
+    }
+
+    public void corruptStateLeavesMachineUnchanged() {
+        gameBoy.runFrame();
+        byte[] before = gameBoy.saveState();
+        state[state.length / 2] ^= 1;
+        try {
+            gameBoy.loadState(state);
+            fail("Corrupt state should not load");
+        } catch (StateInvalidException ex) {
+            assertEquals(ex.getMessage(), "Save state is truncated or corrupt.");
+        }
+        assertEquals(gameBoy.saveState(), before);
+    }
+
+}
@@ -0,0 +1,88 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+@Test(timeOut = 10_000)
+public class TestSessionHost {
+
+    private static final int[] SPIN = {0x18, 0xFE}; // JR -2
+
+    public void sessionsRunAndStopAllJoinsTheirThreads() throws Exception {
+        SessionHost host = new SessionHost(false);
+        EmulationLoop running = host.start(RomFixtures.gameBoy(SPIN), null);
+        EmulationLoop paused = host.start(RomFixtures.gameBoy(SPIN), null, true);
+        awaitFrames(running);
+
+        assertTrue(paused.isPaused());
+        assertEquals(paused.getFramesRun(), 0);
+        paused.resume();
+        awaitFrames(paused);
+
+        host.stopAll();
+        assertEquals(host.getThreads().size(), 2);
+        for (Thread thread : host.getThreads()) {
+            assertFalse(thread.isAlive(), thread.getName());
+        }
+    }
+
+    public void platformHostUsesDaemonPlatformThreads() throws Exception {
+        SessionHost host = new SessionHost(false);
+        assertFalse(host.isVirtual());
+        host.start(RomFixtures.gameBoy(SPIN), null, true);
+
+        Thread thread = host.getThreads().get(0);
+        assertTrue(thread.isDaemon());
+        assertTrue(thread.getName().startsWith("session-"), thread.getName());
+        host.stopAll();
+    }
+
+    public void defaultHostsNameSessionsUniquely() throws Exception {
+        SessionHost first = new SessionHost();
+        SessionHost second = new SessionHost();
+        // Virtual threads exactly when this JVM has them, otherwise the platform fallback
+        assertEquals(first.isVirtual(), hasVirtualThreads());
+
+        Set<String> names = new HashSet<>();
+        for (SessionHost host : new SessionHost[] {first, second}) {
+            for (int i = 0; i < 2; i++) {
+                host.start(RomFixtures.gameBoy(SPIN), null, true);
+            }
+            for (Thread thread : host.getThreads()) {
+                names.add(thread.getName());
+            }
+        }
+        assertEquals(names.size(), 4, names.toString());
+        first.stopAll();
+        second.stopAll();
+    }
+
+    private static boolean hasVirtualThreads() {
+        try {
+            // Also fails where virtual threads are only a disabled preview
+            Thread.class.getMethod("ofVirtual").invoke(null);
+            return true;
+        } catch (ReflectiveOperationException ex) {
+            return false;
+        }
+    }
+
+    private static void awaitFrames(EmulationLoop session) throws InterruptedException {
+        while (session.getFramesRun() == 0) {
+            Thread.sleep(1);
+        }
+    }
+
+}
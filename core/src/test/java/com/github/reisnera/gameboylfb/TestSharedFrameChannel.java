@@ -0,0 +1,92 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+@Test
+public class TestSharedFrameChannel {
+
+    private static final int WRAM_ADDR = 0xC000;
+
+    private Path file;
+
+    @BeforeMethod
+    public void beforeMethod() throws Exception {
+        file = Files.createTempFile("gameboylfb", ".frames");
+    }
+
+    @AfterMethod
+    public void afterMethod() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    public void readerSeesPublishedFrameAndRegions() throws Exception {
+        GameBoy gameBoy = RomFixtures.gameBoy(0x18, 0xFE); // JR -2
+        try (SharedFrameChannel channel = new SharedFrameChannel(file, 4, WRAM_ADDR, 2, 0xFF47, 1);
+                SharedFrameReader reader = new SharedFrameReader(file)) {
+            byte[] frame = new byte[reader.getFrameSize()];
+            byte[] regions = new byte[reader.getRegionSize()];
+            assertEquals(reader.readLatest(frame, regions), -1);
+
+            gameBoy.getMemory().writeByte(0x12, WRAM_ADDR);
+            gameBoy.getMemory().writeByte(0x34, WRAM_ADDR + 1);
+            gameBoy.getPpu().getFrameBuffer()[5] = 3;
+            gameBoy.runFrame();
+            channel.publish(gameBoy);
+
+            assertEquals(reader.readLatest(frame, regions), 0);
+            assertEquals(frame.length, GameBoyPpu.SCREEN_WIDTH * GameBoyPpu.SCREEN_HEIGHT);
+            assertEquals(frame, gameBoy.getPpu().getFrameBuffer());
+            assertEquals(regions, new byte[] {0x12, 0x34, (byte) 0xFC});
+        }
+    }
+
+    public void regionsOutsideTheAddressSpaceAreRejected() throws Exception {
+        int[][] badRegions = {{-1, 2}, {WRAM_ADDR, -1}, {0xFFFF, 2}, {1, Integer.MAX_VALUE}};
+        for (int[] region : badRegions) {
+            try {
+                new SharedFrameChannel(file, 2, region).close();
+                fail("Accepted region " + Arrays.toString(region));
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        new SharedFrameChannel(file, 2, 0xFF00, 0x100).close();
+    }
+
+    public void lappedFrameCannotBeRead() throws Exception {
+        GameBoy gameBoy = RomFixtures.gameBoy(0x18, 0xFE);
+        try (SharedFrameChannel channel = new SharedFrameChannel(file, 2);
+                SharedFrameReader reader = new SharedFrameReader(file)) {
+            for (int i = 0; i < 3; i++) {
+                channel.publish(gameBoy);
+            }
+
+            assertFalse(reader.read(0, null, null));
+            assertTrue(reader.read(1, null, null));
+            assertEquals(reader.getLatestFrame(), 2);
+        }
+    }
+
+    public void inputComesBackThroughTheChannel() throws Exception {
+        try (SharedFrameChannel channel = new SharedFrameChannel(file, 2);
+                SharedFrameReader reader = new SharedFrameReader(file)) {
+            reader.writeInput(Joypad.BUTTON_START | Joypad.BUTTON_UP);
+
+            assertEquals(channel.readInput(), Joypad.BUTTON_START | Joypad.BUTTON_UP);
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.lang.management.ManagementFactory;
+
+import org.testng.SkipException;
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+/**
+ * Emulated frames must not allocate once warmed up, so the garbage collector
+ * never has a reason to run in the middle of one.
+ */
+@Test
+public class TestSteadyStateAllocation {
+
+    private static final int WARMUP_FRAMES = 300;
+    private static final int MEASURED_FRAMES = 600;
+
+    // Exercises the ALU helpers with register, (HL) and immediate operands,
+    // writes to WRAM, VRAM, OAM and HRAM, and reads the I/O registers, while
+    // the PPU renders the background and a sprite.
+    private static final int[] PROGRAM = {
+            0x31, 0xFE, 0xFF,       // LD SP,0xFFFE
+            0x21, 0x00, 0xFE,       // LD HL,0xFE00
+            0x3E, 0x20,             // LD A,0x20
+            0x22, 0x22, 0x22,       // LD (HL+),A x3
+            0x3E, 0x93,             // LD A,0x93
+            0xE0, 0x40,             // LDH (LCDC),A
+            // loop: 0x010F
+            0x21, 0x00, 0xC0,       // LD HL,0xC000
+            0x7E,                   // LD A,(HL)
+            0x80, 0x89, 0x92, 0x9B, // ADD A,B; ADC A,C; SUB D; SBC A,E
+            0xA4, 0xAD, 0xB0,       // AND H; XOR L; OR B
+            0xA6, 0xAE, 0xB6,       // AND (HL); XOR (HL); OR (HL)
+            0xCE, 0x03, 0xDE, 0x01, // ADC A,3; SBC A,1
+            0xE6, 0x7F, 0xEE, 0x55, // AND 0x7F; XOR 0x55
+            0x77, 0x04, 0x0C,       // LD (HL),A; INC B; INC C
+            0xEA, 0x10, 0x80,       // LD (0x8010),A
+            0xEA, 0x01, 0xFE,       // LD (0xFE01),A
+            0xE0, 0x80,             // LDH (0x80),A
+            0xF0, 0x00,             // LDH A,(P1)
+            0xF0, 0x44,             // LDH A,(LY)
+            0xF0, 0x43, 0x3C,       // LDH A,(SCX); INC A
+            0xE0, 0x43,             // LDH (SCX),A
+            0xC3, 0x0F, 0x01,       // JP loop
+    };
+
+    public void framesDoNotAllocateAfterWarmup() throws Exception {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            throw new SkipException("Per-thread allocation counters are not available on this JVM");
+        }
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            throw new SkipException("Per-thread allocation counters are not available on this JVM");
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+
+        GameBoy gameBoy = RomFixtures.gameBoy(PROGRAM);
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            gameBoy.getMemory().setJoypadState(i & 0xFF);
+            gameBoy.runFrame();
+        }
+
+        // Reading the counter can itself allocate; measure that separately
+        long overhead = threads.getThreadAllocatedBytes(thread);
+        overhead = threads.getThreadAllocatedBytes(thread) - overhead;
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            gameBoy.getMemory().setJoypadState(i & 0xFF);
+            gameBoy.runFrame();
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+
+        assertTrue(gameBoy.getInstructionCount() > MEASURED_FRAMES * 1000L, "program did not run");
+        assertEquals(allocated, 0, allocated + " bytes allocated over " + MEASURED_FRAMES + " frames");
+    }
+
+}
@@ -0,0 +1,97 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.testng.annotations.*;
+
+import static org.testng.Assert.*;
+
+@Test
+public class TestTraceRecorder {
+
+    public void traceReadsBackEveryInstruction() throws Exception {
+        // INC A; JR -3
+        GameBoy gameBoy = RomFixtures.gameBoy(0x3C, 0x18, 0xFD);
+        Path file = Files.createTempFile("gameboylfb", ".gbt");
+        try {
+            // Small buffers, so that they are swapped many times
+            try (TraceRecorder trace = new TraceRecorder(file, 100)) {
+                gameBoy.setTrace(trace);
+                gameBoy.runFrame();
+                gameBoy.setTrace(null);
+                assertEquals(trace.getRecordCount(), gameBoy.getInstructionCount());
+            }
+
+            try (TraceReader trace = new TraceReader(file)) {
+                assertTrue(trace.next());
+                assertEquals(trace.getPC(), 0x0000);
+                assertEquals(trace.getOpcode(), 0xC3);
+                assertEquals(trace.getSP(), 0xFFFE);
+
+                assertTrue(trace.next());
+                assertEquals(trace.getPC(), 0x0100);
+                assertEquals(trace.getOpcode(), 0x3C);
+                int a = trace.getAF() >>> 8;
+                long cycles = trace.getCycles();
+
+                assertTrue(trace.next());
+                assertEquals(trace.getPC(), 0x0101);
+                assertEquals(trace.getNextByte(), 0xFD);
+                assertEquals(trace.getAF() >>> 8, (a + 1) & 0xFF);
+                assertEquals(trace.getCycles(), cycles + 4);
+                assertEquals(trace.format().trim(),
+                        String.format("%d PC=0101 18 FD AF=%04X BC=0013 DE=00D8 HL=014D SP=FFFE", cycles + 4, trace.getAF()));
+
+                while (trace.next()) {
+                    // Count the rest
+                }
+                assertEquals(trace.getIndex() + 1, gameBoy.getInstructionCount());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    public void decoderStartsAtFirstRecord() throws Exception {
+        GameBoy gameBoy = RomFixtures.gameBoy(0x3C, 0x18, 0xFD); // INC A; JR -3
+        Path file = Files.createTempFile("gameboylfb", ".gbt");
+        try {
+            try (TraceRecorder trace = new TraceRecorder(file)) {
+                gameBoy.setTrace(trace);
+                for (int i = 0; i < 10; i++) {
+                    gameBoy.step();
+                }
+            }
+
+            StringWriter text = new StringWriter();
+            try (TraceReader trace = new TraceReader(file); PrintWriter out = new PrintWriter(text)) {
+                GameBoyTraceDecoder.decode(trace, 3, Long.MAX_VALUE, out);
+            }
+            String[] lines = text.toString().split("\\R");
+            assertEquals(lines.length, 7);
+            assertTrue(lines[0].contains("PC=0100 3C"), lines[0]);
+
+            text = new StringWriter();
+            try (TraceReader trace = new TraceReader(file); PrintWriter out = new PrintWriter(text)) {
+                GameBoyTraceDecoder.decode(trace, 4, 2, out);
+            }
+            lines = text.toString().split("\\R");
+            assertEquals(lines.length, 2);
+            assertTrue(lines[0].contains("PC=0101 18 FD"), lines[0]);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+}
@@ -0,0 +1,347 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>,
+   Stephen Thompson <stephen at chomadoma dot net>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.util.logging.Logger;
+
+import static org.lwjgl.glfw.Callbacks.*;
+import static org.lwjgl.glfw.GLFW.*;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.glfw.GLFWErrorCallback;
+import org.lwjgl.glfw.GLFWKeyCallback;
+import org.lwjgl.glfw.GLFWvidmode;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL21;
+import org.lwjgl.opengl.GLContext;
+import org.lwjgl.system.MemoryUtil;
+
+public class App {
+    private static final Logger LOG = Logger.getLogger(App.class.getName());
+    private GLFWErrorCallback errorCallback;
+    private GLFWKeyCallback keyCallback;
+    private long window;
+    private static final int WIDTH = GameBoyPpu.SCREEN_WIDTH;
+    private static final int HEIGHT = GameBoyPpu.SCREEN_HEIGHT;
+
+    // Expands the 2-bit shades in the frame texture to colours, so only one
+    // byte per pixel has to be uploaded.
+    private static final String PALETTE_SHADER_SOURCE = ""
+            + "#version 110\n"
+            + "uniform sampler2D frame;\n"
+            + "uniform vec4 palette[4];\n"
+            + "void main() {\n"
+            + "    float shade = texture2D(frame, gl_TexCoord[0].st).r * 255.0;\n"
+            + "    if (shade < 0.5) gl_FragColor = palette[0];\n"
+            + "    else if (shade < 1.5) gl_FragColor = palette[1];\n"
+            + "    else if (shade < 2.5) gl_FragColor = palette[2];\n"
+            + "    else gl_FragColor = palette[3];\n"
+            + "}\n";
+
+    // Game Boy LCD shades, lightest to darkest, as RGB
+    private static final float[][] PALETTE = {
+            {0.605f, 0.734f, 0.059f},
+            {0.545f, 0.675f, 0.059f},
+            {0.188f, 0.384f, 0.188f},
+            {0.059f, 0.220f, 0.059f}
+    };
+
+    private static final int PRESENT_LOG_INTERVAL = 600;
+
+    private int frameTexture;
+    private int paletteProgram;
+    // Two pixel unpack buffers used alternately, so that filling one never
+    // waits for the driver to finish reading the other.
+    private final int[] pixelBuffers = new int[2];
+    private int nextPixelBuffer;
+    private ByteBuffer mappedPixelBuffer;
+    // The frame as last uploaded, used to find the rows that changed
+    private final byte[] shownFrame = new byte[WIDTH * HEIGHT];
+
+    private long uploadNanos;
+    private long lastPresentNanos;
+    private long presentNanosTotal;
+    private int presentCount;
+
+    private final Joypad joypad;
+    private final FramePacer pacer;
+    // Speed to go back to when the turbo key is released
+    private double speedBeforeTurbo = 1;
+
+    public App(Joypad joypad, FramePacer pacer) {
+        this.joypad = joypad;
+        this.pacer = pacer;
+
+        // Set up error callback
+        glfwSetErrorCallback(errorCallback = errorCallbackPrint(System.err));
+
+        if (glfwInit() != GL11.GL_TRUE) {
+            throw new IllegalStateException("Unable to initialize GLFW");
+        }
+        glfwDefaultWindowHints();
+        glfwWindowHint(GLFW_VISIBLE, GL11.GL_FALSE); // the window will stay hidden after creation
+        glfwWindowHint(GLFW_RESIZABLE, GL11.GL_FALSE);
+
+        window = glfwCreateWindow(WIDTH, HEIGHT, "gameboylfb", MemoryUtil.NULL, MemoryUtil.NULL);
+        if (window == MemoryUtil.NULL) {
+            throw new RuntimeException("Failed to create the GLFW window");
+        }
+
+        // Setup a key callback. It will be called every time a key is pressed, repeated or released.
+        // It needs a window handle before it can be set
+        glfwSetKeyCallback(window, keyCallback = new GLFWKeyCallback() {
+            @Override
+            public void invoke(long window, int key, int scancode, int action, int mods) {
+                if (key == GLFW_KEY_ESCAPE && action == GLFW_RELEASE)
+                    glfwSetWindowShouldClose(window, GL11.GL_TRUE); // We will detect this in our rendering loop
+
+                if (action == GLFW_PRESS || action == GLFW_RELEASE) {
+                    changeSpeed(key, action == GLFW_PRESS);
+                }
+
+                int button = buttonForKey(key);
+                if (button != 0 && action == GLFW_PRESS) {
+                    App.this.joypad.press(button);
+                } else if (button != 0 && action == GLFW_RELEASE) {
+                    App.this.joypad.release(button);
+                }
+            }
+        });
+
+        // Get the resolution of the primary monitor
+        ByteBuffer vidmode = glfwGetVideoMode(glfwGetPrimaryMonitor());
+        // Center our window
+        glfwSetWindowPos(
+                window,
+                (GLFWvidmode.width(vidmode) - WIDTH) / 2,
+                (GLFWvidmode.height(vidmode) - HEIGHT) / 2
+        );
+
+        // Make the OpenGL context current
+        glfwMakeContextCurrent(window);
+        // Enable v-sync. This only paces presenting; the emulation thread's
+        // FramePacer sets the emulation speed.
+        glfwSwapInterval(1);
+
+        // Make the window visible
+        glfwShowWindow(window);
+        //GL.createCapabilities(true); // Load LWJGL's current context without deprecated functions
+        GLContext.createFromCurrent(); // use this line instead with the 3.0.0a build
+
+        // Clear buffer to Game Boy off-state display color
+        GL11.glClearColor(PALETTE[0][0], PALETTE[0][1], PALETTE[0][2], 1.0f);
+
+        createFrameTexture();
+        createPaletteProgram();
+        pixelBuffers[0] = GL15.glGenBuffers();
+        pixelBuffers[1] = GL15.glGenBuffers();
+    }
+
+    /**
+     * Tab runs uncapped while held; 1 to 4 select 1x to 4x speed.
+     */
+    private void changeSpeed(int key, boolean pressed) {
+        if (key == GLFW_KEY_TAB) {
+            if (pressed) {
+                speedBeforeTurbo = pacer.getSpeed();
+                pacer.setTurbo();
+            } else if (speedBeforeTurbo == 1) {
+                pacer.setAccurate();
+            } else {
+                pacer.setRatio(speedBeforeTurbo);
+            }
+        } else if (pressed && key >= GLFW_KEY_1 && key <= GLFW_KEY_4) {
+            int ratio = key - GLFW_KEY_1 + 1;
+            if (ratio == 1) {
+                pacer.setAccurate();
+            } else {
+                pacer.setRatio(ratio);
+            }
+        }
+    }
+
+    private static int buttonForKey(int key) {
+        switch (key) {
+            case GLFW_KEY_RIGHT:
+                return Joypad.BUTTON_RIGHT;
+            case GLFW_KEY_LEFT:
+                return Joypad.BUTTON_LEFT;
+            case GLFW_KEY_UP:
+                return Joypad.BUTTON_UP;
+            case GLFW_KEY_DOWN:
+                return Joypad.BUTTON_DOWN;
+            case GLFW_KEY_X:
+                return Joypad.BUTTON_A;
+            case GLFW_KEY_Z:
+                return Joypad.BUTTON_B;
+            case GLFW_KEY_BACKSPACE:
+                return Joypad.BUTTON_SELECT;
+            case GLFW_KEY_ENTER:
+                return Joypad.BUTTON_START;
+            default:
+                return 0;
+        }
+    }
+
+    private void createFrameTexture() {
+        frameTexture = GL11.glGenTextures();
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, frameTexture);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+        GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 1);
+        // Allocate texture storage once, matching the all-zero shownFrame;
+        // frames only ever update it in place
+        GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_LUMINANCE, WIDTH, HEIGHT, 0,
+                GL11.GL_LUMINANCE, GL11.GL_UNSIGNED_BYTE, BufferUtils.createByteBuffer(WIDTH * HEIGHT));
+    }
+
+    private void createPaletteProgram() {
+        int shader = GL20.glCreateShader(GL20.GL_FRAGMENT_SHADER);
+        GL20.glShaderSource(shader, PALETTE_SHADER_SOURCE);
+        GL20.glCompileShader(shader);
+        if (GL20.glGetShaderi(shader, GL20.GL_COMPILE_STATUS) != GL11.GL_TRUE) {
+            throw new RuntimeException("Failed to compile palette shader: " + GL20.glGetShaderInfoLog(shader));
+        }
+
+        paletteProgram = GL20.glCreateProgram();
+        GL20.glAttachShader(paletteProgram, shader);
+        GL20.glLinkProgram(paletteProgram);
+        if (GL20.glGetProgrami(paletteProgram, GL20.GL_LINK_STATUS) != GL11.GL_TRUE) {
+            throw new RuntimeException("Failed to link palette shader: " + GL20.glGetProgramInfoLog(paletteProgram));
+        }
+        GL20.glDeleteShader(shader);
+
+        GL20.glUseProgram(paletteProgram);
+        GL20.glUniform1i(GL20.glGetUniformLocation(paletteProgram, "frame"), 0);
+        for (int i = 0; i < PALETTE.length; i++) {
+            GL20.glUniform4f(GL20.glGetUniformLocation(paletteProgram, "palette[" + i + "]"),
+                    PALETTE[i][0], PALETTE[i][1], PALETTE[i][2], 1.0f);
+        }
+        GL20.glUseProgram(0);
+    }
+
+    /**
+     * Upload a finished frame to the frame texture. Only the band of rows
+     * that differ from the previously presented frame is sent to the GPU.
+     * @param frameBuffer SCREEN_WIDTH * SCREEN_HEIGHT shades as produced by GameBoyPpu.
+     */
+    public void present(byte[] frameBuffer) {
+        long start = System.nanoTime();
+
+        int firstRow = -1;
+        int lastRow = -1;
+        for (int row = 0; row < HEIGHT; row++) {
+            if (!rowMatches(frameBuffer, row)) {
+                if (firstRow < 0) {
+                    firstRow = row;
+                }
+                lastRow = row;
+            }
+        }
+
+        if (firstRow >= 0) {
+            int offset = firstRow * WIDTH;
+            int length = (lastRow - firstRow + 1) * WIDTH;
+            System.arraycopy(frameBuffer, offset, shownFrame, offset, length);
+
+            GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, pixelBuffers[nextPixelBuffer]);
+            nextPixelBuffer ^= 1;
+            // Orphan the old storage so mapping never stalls on a pending upload
+            GL15.glBufferData(GL21.GL_PIXEL_UNPACK_BUFFER, length, GL15.GL_STREAM_DRAW);
+            mappedPixelBuffer = GL15.glMapBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, GL15.GL_WRITE_ONLY, length,
+                    mappedPixelBuffer);
+            mappedPixelBuffer.clear();
+            mappedPixelBuffer.put(frameBuffer, offset, length);
+            GL15.glUnmapBuffer(GL21.GL_PIXEL_UNPACK_BUFFER);
+
+            GL11.glBindTexture(GL11.GL_TEXTURE_2D, frameTexture);
+            GL11.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, 0, firstRow, WIDTH, lastRow - firstRow + 1,
+                    GL11.GL_LUMINANCE, GL11.GL_UNSIGNED_BYTE, 0L);
+            GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, 0);
+        }
+
+        uploadNanos = System.nanoTime() - start;
+    }
+
+    private boolean rowMatches(byte[] frameBuffer, int row) {
+        for (int i = row * WIDTH, end = i + WIDTH; i < end; i++) {
+            if (frameBuffer[i] != shownFrame[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void drawFrame() {
+        GL20.glUseProgram(paletteProgram);
+        GL11.glEnable(GL11.GL_TEXTURE_2D);
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, frameTexture);
+        GL11.glBegin(GL11.GL_QUADS);
+        GL11.glTexCoord2f(0, 0);
+        GL11.glVertex2f(-1, 1);
+        GL11.glTexCoord2f(1, 0);
+        GL11.glVertex2f(1, 1);
+        GL11.glTexCoord2f(1, 1);
+        GL11.glVertex2f(1, -1);
+        GL11.glTexCoord2f(0, 1);
+        GL11.glVertex2f(-1, -1);
+        GL11.glEnd();
+        GL20.glUseProgram(0);
+    }
+
+    /**
+     * @return Host nanoseconds spent uploading and drawing the last frame, not counting the wait for v-sync.
+     */
+    public long getLastPresentNanos() {
+        return lastPresentNanos;
+    }
+
+    /**
+     * @return Returns 0 if everything ran fine, otherwise returns 1 if the program should exit
+     */
+    public int tick() {
+        if (glfwWindowShouldClose(window) == GL11.GL_TRUE) {
+            GL15.glDeleteBuffers(pixelBuffers[0]);
+            GL15.glDeleteBuffers(pixelBuffers[1]);
+            GL20.glDeleteProgram(paletteProgram);
+            GL11.glDeleteTextures(frameTexture);
+            glfwTerminate();
+            errorCallback.release();
+            // TODO: Notify someone that this should close in another way?
+            return 1;
+        } else {
+            long start = System.nanoTime();
+            GL11.glClear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT); // clear the framebuffer
+            drawFrame();
+            lastPresentNanos = uploadNanos + (System.nanoTime() - start);
+            uploadNanos = 0;
+            logPresentTime();
+            glfwSwapBuffers(window); // swap the color buffers
+
+            // Poll for window events. The key callback above will only be
+            // invoked during this call.
+            glfwPollEvents();
+            return 0;
+        }
+    }
+
+    private void logPresentTime() {
+        presentNanosTotal += lastPresentNanos;
+        if (++presentCount == PRESENT_LOG_INTERVAL) {
+            LOG.fine(String.format("Average present time: %.3f ms", presentNanosTotal / 1e6 / presentCount));
+            presentNanosTotal = 0;
+            presentCount = 0;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/* This file is part of the GameBoyLFB project.
+   GameBoyLFB - A Java Game Boy emulator.
+   Copyright (C) 2015 Alex Reisner <thearcher at gmail dot com>
+
+   This project is licensed under the GNU GPL v2 license and comes with
+   absolutely no warranty of any kind. The full license can be found at:
+   http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt */
+
+package com.github.reisnera.gameboylfb;
+
+import java.util.logging.Logger;
+import java.util.logging.Level;
+import java.util.logging.FileHandler;
+import java.util.logging.SimpleFormatter;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Usage: GameBoyAppLauncher [--record movie file]
+ */
+public class GameBoyAppLauncher {
+    private static final Logger LOG = Logger.getLogger(GameBoyAppLauncher.class.getName());
+    // Held so that the handler attached to it is not lost along with the logger
+    private static final Logger PACKAGE_LOG = Logger.getLogger(GameBoyAppLauncher.class.getPackage().getName());
+
+    public static void main(String[] args) throws Exception {
+        configureLogging();
+
+        GameBoyRom rom;
+        GameBoy gameBoy;
+        App app;
+
+        // Load a Game Boy ROM
+        try {
+            rom = new GameBoyRom("Alleyway.gb");
+        } catch (Exception ex) {
+            LOG.log(Level.SEVERE, ex.toString(), ex);
+            throw new Exception(ex);
+        }
+
+        System.out.println(rom.getHeaderGameTitle());
+
+        try {
+            gameBoy = new GameBoy(rom);
+        } catch (Exception ex) {
+            LOG.log(Level.SEVERE, ex.toString(), ex);
+            throw new Exception(ex);
+        }
+
+        Joypad joypad = new Joypad();
+        FrameTripleBuffer frames = new FrameTripleBuffer(GameBoyPpu.SCREEN_WIDTH * GameBoyPpu.SCREEN_HEIGHT);
+        FramePacer pacer = new FramePacer();
+        EmulationLoop emulation = new EmulationLoop(gameBoy, joypad, frames, pacer);
+        GameBoyMetrics.register(emulation, "desktop");
+
+        Movie recording = null;
+        if (args.length > 1 && args[0].equals("--record")) {
+            recording = new Movie(gameBoy, true);
+            emulation.setRecording(recording);
+        }
+
+        app = new App(joypad, pacer);
+
+        // Emulate on a separate thread so that v-sync in the window never
+        // stalls the core and a slow emulated frame never delays presenting.
+        Thread emulationThread = new Thread(emulation, "emulation");
+        emulationThread.setDaemon(true);
+        emulationThread.setUncaughtExceptionHandler((thread, ex) -> {
+            LOG.log(Level.SEVERE, ex.toString(), ex);
+            EmulationLog.flush();
+            System.exit(1);
+        });
+        emulationThread.start();
+
+        run(frames, app);
+
+        emulation.stop();
+        emulationThread.join();
+        LOG.info(String.format("Paced %d frames: %d late, %d dropped, worst lateness %.2f ms, drift %.2f ms",
+                pacer.getFrameCount(), pacer.getLateFrames(), pacer.getDroppedFrames(),
+                pacer.getMaxLatenessNanos() / 1e6, pacer.getDriftNanos() / 1e6));
+
+        if (CpuProfiler.ENABLED) {
+            gameBoy.getCpu().getProfiler().writeReports(System.out);
+        }
+
+        EmulationLog.flush();
+
+        if (recording != null) {
+            recording.write(Paths.get(args[1]));
+            System.out.println(String.format("Recorded %d frames to %s", recording.getFrameCount(), args[1]));
+        }
+    }
+
+    /**
+     * Send everything the emulator logs to LogFile.txt. The file is written
+     * synchronously, so the emulation thread only logs through EmulationLog,
+     * which hands records to this handler on its own thread.
+     */
+    private static void configureLogging() {
+        LOG.setLevel(Level.INFO);
+        try {
+            FileHandler fh = new FileHandler("./LogFile.txt");
+            PACKAGE_LOG.addHandler(fh);
+            fh.setFormatter(new SimpleFormatter());
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "Unable to open log file for writing!");
+        }
+    }
+
+    private static void run(FrameTripleBuffer frames, App app) {
+        do {
+            if (frames.hasNewFrame()) {
+                app.present(frames.acquire());
+            }
+        } while (app.tick() == 0);
+    }
+}